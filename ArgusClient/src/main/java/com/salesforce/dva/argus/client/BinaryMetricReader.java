@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.client;
+
+import com.salesforce.dva.argus.entity.Metric;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes metric query responses returned in the binary columnar format by the metrics web service when the <tt>application/x-argus-metrics</tt>
+ * media type is requested. Values are transferred as doubles, hence numeric datapoint values are reconstructed from their double representation
+ * and <tt>NaN</tt> values are decoded as null.
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+public final class BinaryMetricReader {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The media type of the binary format. */
+    public static final String MEDIA_TYPE = "application/x-argus-metrics";
+    private static final int MAGIC = 0x41524742;
+    private static final byte VERSION = 1;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    private BinaryMetricReader() { }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Reads all metrics from the given stream. The stream is consumed up to the end of stream marker but is not closed.
+     *
+     * @param   in  The stream to read from. Cannot be null.
+     *
+     * @return  The decoded metrics in the order they were written. Never null.
+     *
+     * @throws  IOException  If the stream cannot be read or is not a valid binary metric stream.
+     */
+    public static List<Metric> read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a binary metric stream.");
+        }
+
+        byte version = data.readByte();
+
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary metric stream version " + version + ".");
+        }
+
+        List<String> dictionary = new ArrayList<>();
+        List<Metric> metrics = new ArrayList<>();
+        byte marker;
+
+        while ((marker = data.readByte()) != 0) {
+            if (marker != 1) {
+                throw new IOException("Unexpected series marker " + marker + ".");
+            }
+            metrics.add(_readMetric(data, dictionary));
+        }
+        return metrics;
+    }
+
+    private static Metric _readMetric(DataInputStream data, List<String> dictionary) throws IOException {
+        String scope = _readRef(data, dictionary);
+        String name = _readRef(data, dictionary);
+        Metric metric = new Metric(scope, name);
+
+        metric.setNamespace(_readRef(data, dictionary));
+        metric.setDisplayName(_readRef(data, dictionary));
+        metric.setUnits(_readRef(data, dictionary));
+
+        int tagCount = _readSize(data);
+        Map<String, String> tags = new HashMap<>(tagCount * 2);
+
+        for (int i = 0; i < tagCount; i++) {
+            tags.put(_readRef(data, dictionary), _readRef(data, dictionary));
+        }
+        metric.setTags(tags);
+
+        int size = _readSize(data);
+        long[] timestamps = new long[size];
+        long previous = 0;
+
+        for (int i = 0; i < size; i++) {
+            previous += _unzigzag(_readVarLong(data));
+            timestamps[i] = previous;
+        }
+        for (int i = 0; i < size; i++) {
+            double value = data.readDouble();
+
+            metric.addDatapoint(timestamps[i], Double.isNaN(value) ? null : String.valueOf(value));
+        }
+        return metric;
+    }
+
+    private static String _readRef(DataInputStream data, List<String> dictionary) throws IOException {
+        long ref = _readVarLong(data);
+
+        if (ref == 0) {
+            return null;
+        }
+        if (ref <= dictionary.size()) {
+            return dictionary.get((int) ref - 1);
+        }
+        if (ref != dictionary.size() + 1) {
+            throw new IOException("Invalid dictionary reference " + ref + ".");
+        }
+
+        byte[] bytes = new byte[_readSize(data)];
+
+        data.readFully(bytes);
+
+        String value = new String(bytes, StandardCharsets.UTF_8);
+
+        dictionary.add(value);
+        return value;
+    }
+
+    private static int _readSize(DataInputStream data) throws IOException {
+        long size = _readVarLong(data);
+
+        if (size < 0 || size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid length " + size + ".");
+        }
+        return (int) size;
+    }
+
+    private static long _readVarLong(DataInputStream data) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = data.readUnsignedByte();
+
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer.");
+    }
+
+    private static long _unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
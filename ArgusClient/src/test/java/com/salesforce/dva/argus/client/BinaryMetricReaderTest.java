@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.client;
+
+import com.salesforce.dva.argus.entity.Metric;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BinaryMetricReaderTest {
+
+    @Test
+    public void testRead() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(0x41524742);
+        out.writeByte(1);
+        out.writeByte(1);
+        _writeEntry(out, 1, "scope");
+        _writeEntry(out, 2, "metric");
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(1);
+        _writeEntry(out, 3, "host");
+        _writeEntry(out, 4, "a");
+        out.writeByte(3);
+        out.writeByte(0xD0);
+        out.writeByte(0x0F);
+        out.writeByte(0x02);
+        out.writeByte(0x04);
+        out.writeDouble(1.5);
+        out.writeDouble(Double.NaN);
+        out.writeDouble(-2.0);
+        out.writeByte(1);
+        out.writeByte(1);
+        out.writeByte(2);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(1);
+        out.writeByte(3);
+        _writeEntry(out, 5, "b");
+        out.writeByte(0);
+        out.writeByte(0);
+
+        List<Metric> metrics = BinaryMetricReader.read(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertEquals(2, metrics.size());
+
+        Metric first = metrics.get(0);
+
+        assertEquals("scope", first.getScope());
+        assertEquals("metric", first.getMetric());
+        assertNull(first.getNamespace());
+        assertEquals("a", first.getTags().get("host"));
+        assertEquals(3, first.getDatapoints().size());
+        assertEquals("1.5", first.getDatapoints().get(1000L));
+        assertNull(first.getDatapoints().get(1001L));
+        assertEquals("-2.0", first.getDatapoints().get(1003L));
+        assertEquals("b", metrics.get(1).getTags().get("host"));
+        assertTrue(metrics.get(1).getDatapoints().isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadInvalidMagic() throws IOException {
+        BinaryMetricReader.read(new ByteArrayInputStream(new byte[] { 0, 0, 0, 0, 1, 0 }));
+    }
+
+    private void _writeEntry(DataOutputStream out, int ref, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        out.writeByte(ref);
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
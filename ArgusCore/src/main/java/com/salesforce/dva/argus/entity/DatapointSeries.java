@@ -0,0 +1,520 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.entity;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Columnar storage for the data points of a time series. Timestamps are held in a sorted primitive <tt>long</tt> array alongside a parallel value
+ * array, replacing the boxed key and tree node overhead of a <tt>TreeMap</tt>. Values retain their original textual form so that existing
+ * consumers observe exactly the values they stored, while a primitive <tt>double</tt> column is materialized lazily for numeric consumers.
+ *
+ * <p>Series created from another series share the underlying arrays until either of them is modified (copy on write). The {@link #asMap()} view
+ * exposes the data points through the legacy <tt>Map&lt;Long, String&gt;</tt> API without copying them.</p>
+ *
+ * <p>Read access is public. Mutation is restricted to the owning {@link Metric}.</p>
+ *
+ * @author  Tom Valine (tvaline@salesforce.com), Bhinav Sura (bhinav.sura@salesforce.com)
+ */
+public final class DatapointSeries implements Serializable {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final long serialVersionUID = 1L;
+    private static final long[] EMPTY_TIMESTAMPS = new long[0];
+    private static final String[] EMPTY_VALUES = new String[0];
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private long[] _timestamps = EMPTY_TIMESTAMPS;
+    private String[] _values = EMPTY_VALUES;
+    private int _size;
+    private boolean _shared;
+    private transient double[] _doubles;
+    private transient SortedMap<Long, String> _view;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /** Creates a new empty series. */
+    DatapointSeries() { }
+
+    /**
+     * Creates a new series that shares the data of the given series until either one is modified.
+     *
+     * @param  other  The series to copy. Cannot be null.
+     */
+    DatapointSeries(DatapointSeries other) {
+        requireArgument(other != null, "Series to copy cannot be null.");
+        _timestamps = other._timestamps;
+        _values = other._values;
+        _size = other._size;
+        _shared = true;
+        other._shared = true;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Returns the number of data points in the series.
+     *
+     * @return  The number of data points.
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Indicates whether the series contains any data points.
+     *
+     * @return  True if the series is empty.
+     */
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Returns the timestamp at the given position. Positions are ordered by ascending timestamp.
+     *
+     * @param   index  The position of the data point. Must be between zero and <tt>size() - 1</tt>.
+     *
+     * @return  The timestamp of the data point.
+     */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return _timestamps[index];
+    }
+
+    /**
+     * Returns the value at the given position exactly as it was stored.
+     *
+     * @param   index  The position of the data point. Must be between zero and <tt>size() - 1</tt>.
+     *
+     * @return  The value of the data point. May be null.
+     */
+    public String getValue(int index) {
+        checkIndex(index);
+        return _values[index];
+    }
+
+    /**
+     * Returns the numeric value at the given position. The numeric column is parsed once on first access and reused until the series changes.
+     *
+     * @param   index  The position of the data point. Must be between zero and <tt>size() - 1</tt>.
+     *
+     * @return  The numeric value of the data point or <tt>NaN</tt> if the stored value is null.
+     *
+     * @throws  NumberFormatException  If a stored value is not numeric.
+     */
+    public double getDoubleValue(int index) {
+        checkIndex(index);
+
+        double[] doubles = _doubles;
+
+        if (doubles == null) {
+            doubles = new double[_size];
+            for (int i = 0; i < _size; i++) {
+                doubles[i] = _values[i] == null ? Double.NaN : Double.parseDouble(_values[i]);
+            }
+            _doubles = doubles;
+        }
+        return doubles[index];
+    }
+
+    /**
+     * Returns the position of the data point having the given timestamp.
+     *
+     * @param   timestamp  The timestamp to search for.
+     *
+     * @return  The position of the data point if it exists, otherwise <tt>(-(insertion point) - 1)</tt> as defined by
+     *          {@link Arrays#binarySearch(long[], int, int, long)}.
+     */
+    public int indexOf(long timestamp) {
+        return Arrays.binarySearch(_timestamps, 0, _size, timestamp);
+    }
+
+    /**
+     * Returns an unmodifiable sorted map view of the series. The view is backed by the series and reflects subsequent changes to it.
+     *
+     * @return  The map view. Will never be null.
+     */
+    public SortedMap<Long, String> asMap() {
+        SortedMap<Long, String> view = _view;
+
+        if (view == null) {
+            view = new RangeView(null, null);
+            _view = view;
+        }
+        return view;
+    }
+
+    /**
+     * Replaces the contents of the series with the given data points.
+     *
+     * @param  datapoints  The new data points. May be null.
+     */
+    void set(Map<Long, String> datapoints) {
+        if (datapoints == null || datapoints.isEmpty()) {
+            clear();
+            return;
+        }
+
+        DatapointSeries source = fromMap(datapoints);
+
+        _timestamps = source._timestamps;
+        _values = source._values;
+        _size = source._size;
+        _shared = source._shared;
+        _doubles = null;
+    }
+
+    /**
+     * Adds the given data points to the series. Values for timestamps that already exist are replaced.
+     *
+     * @param  datapoints  The data points to add. May be null.
+     */
+    void addAll(Map<Long, String> datapoints) {
+        if (datapoints == null || datapoints.isEmpty()) {
+            return;
+        }
+        if (_size == 0) {
+            set(datapoints);
+            return;
+        }
+
+        DatapointSeries source = fromMap(datapoints);
+
+        if (source._timestamps[0] > _timestamps[_size - 1]) {
+            ensureWritable(_size + source._size);
+            System.arraycopy(source._timestamps, 0, _timestamps, _size, source._size);
+            System.arraycopy(source._values, 0, _values, _size, source._size);
+            _size += source._size;
+        } else {
+            merge(source);
+        }
+        _doubles = null;
+    }
+
+    /**
+     * Adds a single data point to the series, replacing the value of an existing data point with the same timestamp. Appending in ascending
+     * timestamp order runs in amortized constant time.
+     *
+     * @param  timestamp  The timestamp of the data point.
+     * @param  value      The value of the data point. May be null.
+     */
+    void put(long timestamp, String value) {
+        int index = _size == 0 || timestamp > _timestamps[_size - 1] ? -_size - 1 : indexOf(timestamp);
+
+        if (index >= 0) {
+            ensureWritable(_size);
+            _values[index] = value;
+        } else {
+            index = -index - 1;
+            ensureWritable(_size + 1);
+            System.arraycopy(_timestamps, index, _timestamps, index + 1, _size - index);
+            System.arraycopy(_values, index, _values, index + 1, _size - index);
+            _timestamps[index] = timestamp;
+            _values[index] = value;
+            _size++;
+        }
+        _doubles = null;
+    }
+
+    /** Removes all data points from the series. */
+    void clear() {
+        _timestamps = EMPTY_TIMESTAMPS;
+        _values = EMPTY_VALUES;
+        _size = 0;
+        _shared = false;
+        _doubles = null;
+    }
+
+    /* Builds sorted columns from a map, avoiding a sort when the map already iterates in timestamp order. */
+    private static DatapointSeries fromMap(Map<Long, String> datapoints) {
+        DatapointSeries result = new DatapointSeries();
+
+        if (datapoints instanceof RangeView) {
+            RangeView view = (RangeView) datapoints;
+
+            result._timestamps = view.owner()._timestamps;
+            result._values = view.owner()._values;
+            result._size = view.owner()._size;
+            if (view.from() > 0 || view.to() < result._size) {
+                result._timestamps = Arrays.copyOfRange(result._timestamps, view.from(), view.to());
+                result._values = Arrays.copyOfRange(result._values, view.from(), view.to());
+                result._size = result._timestamps.length;
+            } else {
+                view.owner()._shared = true;
+                result._shared = true;
+            }
+            return result;
+        }
+
+        int size = datapoints.size();
+        long[] timestamps = new long[size];
+        String[] values = new String[size];
+        boolean sorted = true;
+        int index = 0;
+
+        for (Map.Entry<Long, String> entry : datapoints.entrySet()) {
+            long timestamp = entry.getKey();
+
+            if (index > 0 && timestamp <= timestamps[index - 1]) {
+                sorted = false;
+            }
+            timestamps[index] = timestamp;
+            values[index++] = entry.getValue();
+        }
+        if (!sorted) {
+            Arrays.sort(timestamps);
+            for (int i = 0; i < size; i++) {
+                values[i] = datapoints.get(timestamps[i]);
+            }
+        }
+        result._timestamps = timestamps;
+        result._values = values;
+        result._size = size;
+        return result;
+    }
+
+    /* Merges a sorted series into this one. Values from the source win on equal timestamps. */
+    private void merge(DatapointSeries source) {
+        long[] timestamps = new long[_size + source._size];
+        String[] values = new String[timestamps.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+
+        while (i < _size && j < source._size) {
+            long left = _timestamps[i];
+            long right = source._timestamps[j];
+
+            if (left < right) {
+                timestamps[k] = left;
+                values[k++] = _values[i++];
+            } else {
+                if (left == right) {
+                    i++;
+                }
+                timestamps[k] = right;
+                values[k++] = source._values[j++];
+            }
+        }
+        while (i < _size) {
+            timestamps[k] = _timestamps[i];
+            values[k++] = _values[i++];
+        }
+        while (j < source._size) {
+            timestamps[k] = source._timestamps[j];
+            values[k++] = source._values[j++];
+        }
+        _timestamps = timestamps;
+        _values = values;
+        _size = k;
+        _shared = false;
+    }
+
+    /* Makes the arrays private to this series with room for at least the given capacity. */
+    private void ensureWritable(int capacity) {
+        if (_shared || capacity > _timestamps.length) {
+            int length = Math.max(Math.max(capacity, 8), _shared ? _size : _timestamps.length + (_timestamps.length >> 1));
+
+            _timestamps = Arrays.copyOf(_timestamps, length);
+            _values = Arrays.copyOf(_values, length);
+            _shared = false;
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= _size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + _size);
+        }
+    }
+
+    /* Returns the first position having a timestamp greater than or equal to the given one. */
+    private int lowerBound(long timestamp) {
+        int index = indexOf(timestamp);
+
+        return index >= 0 ? index : -index - 1;
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * Unmodifiable sorted map view over a range of the series. Bounds are resolved on each access so that the view tracks changes to the series.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com), Bhinav Sura (bhinav.sura@salesforce.com)
+     */
+    private final class RangeView extends AbstractMap<Long, String> implements SortedMap<Long, String> {
+
+        private final Long _fromKey;
+        private final Long _toKey;
+
+        RangeView(Long fromKey, Long toKey) {
+            _fromKey = fromKey;
+            _toKey = toKey;
+        }
+
+        DatapointSeries owner() {
+            return DatapointSeries.this;
+        }
+
+        int from() {
+            return _fromKey == null ? 0 : lowerBound(_fromKey);
+        }
+
+        int to() {
+            return _toKey == null ? _size : lowerBound(_toKey);
+        }
+
+        @Override
+        public int size() {
+            return Math.max(0, to() - from());
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOfKey(key) >= 0;
+        }
+
+        @Override
+        public String get(Object key) {
+            int index = indexOfKey(key);
+
+            return index >= 0 ? _values[index] : null;
+        }
+
+        @Override
+        public Comparator<? super Long> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedMap<Long, String> subMap(Long fromKey, Long toKey) {
+            requireArgument(fromKey <= toKey, "From key cannot be greater than to key.");
+            return new RangeView(_fromKey == null ? fromKey : Math.max(_fromKey, fromKey), _toKey == null ? toKey : Math.min(_toKey, toKey));
+        }
+
+        @Override
+        public SortedMap<Long, String> headMap(Long toKey) {
+            return new RangeView(_fromKey, _toKey == null ? toKey : Math.min(_toKey, toKey));
+        }
+
+        @Override
+        public SortedMap<Long, String> tailMap(Long fromKey) {
+            return new RangeView(_fromKey == null ? fromKey : Math.max(_fromKey, fromKey), _toKey);
+        }
+
+        @Override
+        public Long firstKey() {
+            int from = from();
+
+            if (from >= to()) {
+                throw new NoSuchElementException();
+            }
+            return _timestamps[from];
+        }
+
+        @Override
+        public Long lastKey() {
+            int to = to();
+
+            if (from() >= to) {
+                throw new NoSuchElementException();
+            }
+            return _timestamps[to - 1];
+        }
+
+        @Override
+        public Set<Map.Entry<Long, String>> entrySet() {
+            return new AbstractSet<Map.Entry<Long, String>>() {
+
+                    @Override
+                    public Iterator<Map.Entry<Long, String>> iterator() {
+                        final int to = to();
+                        final long[] timestamps = _timestamps;
+                        final String[] values = _values;
+
+                        return new Iterator<Map.Entry<Long, String>>() {
+
+                            private int _index = from();
+
+                            @Override
+                            public boolean hasNext() {
+                                return _index < to;
+                            }
+
+                            @Override
+                            public Map.Entry<Long, String> next() {
+                                if (_index >= to) {
+                                    throw new NoSuchElementException();
+                                }
+
+                                int index = _index++;
+
+                                return new SimpleImmutableEntry<>(timestamps[index], values[index]);
+                            }
+                        };
+                    }
+
+                    @Override
+                    public int size() {
+                        return RangeView.this.size();
+                    }
+                };
+        }
+
+        private int indexOfKey(Object key) {
+            if (!(key instanceof Long)) {
+                return -1;
+            }
+
+            long timestamp = (Long) key;
+
+            if ((_fromKey != null && timestamp < _fromKey) || (_toKey != null && timestamp >= _toKey)) {
+                return -1;
+            }
+            return indexOf(timestamp);
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -37,7 +37,6 @@ import com.salesforce.dva.argus.system.SystemAssert;
 
 import java.io.Serializable;
 import java.text.MessageFormat;
-import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -63,13 +62,14 @@ public class Metric extends TSDBEntity implements Serializable {
     private String _namespace;
     private String _displayName;
     private String _units;
-    private final Map<Long, String> _datapoints;
+    private final DatapointSeries _datapoints;
     private MetricQuery _query;
 
     //~ Constructors *********************************************************************************************************************************
 
     /**
-     * Creates a new Metric object by performing a shallow copy of the given Metric object.
+     * Creates a new Metric object by performing a shallow copy of the given Metric object. The data points are shared with the given metric until
+     * either of them is modified.
      *
      * @param  metric  The metric object to clone. Cannot be null.
      */
@@ -78,8 +78,7 @@ public class Metric extends TSDBEntity implements Serializable {
         setScope(metric.getScope());
         setMetric(metric.getMetric());
         setTags(metric.getTags());
-        _datapoints = new TreeMap<>();
-        setDatapoints(metric.getDatapoints());
+        _datapoints = new DatapointSeries(metric._datapoints);
         setNamespace(metric.getNamespace());
         setDisplayName(metric.getDisplayName());
         setUnits(metric.getUnits());
@@ -101,7 +100,7 @@ public class Metric extends TSDBEntity implements Serializable {
     /** Creates a new Metric object. */
     protected Metric() {
         super(null, null);
-        _datapoints = new TreeMap<>();
+        _datapoints = new DatapointSeries();
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -142,7 +141,18 @@ public class Metric extends TSDBEntity implements Serializable {
      * @return  The map of time series data points. Will never be null, but may be empty.
      */
     public Map<Long, String> getDatapoints() {
-        return Collections.unmodifiableMap(_datapoints);
+        return _datapoints.asMap();
+    }
+
+    /**
+     * Returns the columnar representation of the time series data points which is backed by the entity objects internal data. This is the
+     * preferred way to iterate over the data points since it avoids boxing the timestamps and values.
+     *
+     * @return  The data point series. Will never be null, but may be empty.
+     */
+    @JsonIgnore
+    public DatapointSeries getDatapointSeries() {
+        return _datapoints;
     }
 
     /**
@@ -151,10 +161,7 @@ public class Metric extends TSDBEntity implements Serializable {
      * @param  datapoints  The new set of data points. If null or empty, only the deletion of the current set of data points is performed.
      */
     public void setDatapoints(Map<Long, String> datapoints) {
-        _datapoints.clear();
-        if (datapoints != null) {
-            _datapoints.putAll(datapoints);
-        }
+        _datapoints.set(datapoints);
     }
 
     /**
@@ -163,9 +170,18 @@ public class Metric extends TSDBEntity implements Serializable {
      * @param  datapoints  The set of data points to add. If null or empty, only the deletion of the current set of data points is performed.
      */
     public void addDatapoints(Map<Long, String> datapoints) {
-        if (datapoints != null) {
-            _datapoints.putAll(datapoints);
-        }
+        _datapoints.addAll(datapoints);
+    }
+
+    /**
+     * Adds a single data point to the current set, replacing any existing value for the same timestamp. Adding data points in ascending timestamp
+     * order is the most efficient way to populate a metric.
+     *
+     * @param  timestamp  The timestamp of the data point.
+     * @param  value      The value of the data point.
+     */
+    public void addDatapoint(long timestamp, String value) {
+        _datapoints.put(timestamp, value);
     }
 
     /**
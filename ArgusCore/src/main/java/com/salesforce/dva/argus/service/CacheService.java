@@ -186,6 +186,16 @@ public interface CacheService extends Service {
      */
     <V> void append(String key, V value, int ttl);
 
+    /**
+     * Appends a list of values to each of the given keys, creating keys that do not exist, and sets the timeout of each key. Implementations should
+     * perform the whole batch using as few round trips as possible.
+     *
+     * @param  <V>      The value type.
+     * @param  entries  A map of cache keys to the values to append to them.  Cannot be null, but may be empty.
+     * @param  ttl      The timeout in seconds.  Must be greater than zero.
+     */
+    <V> void append(Map<String, List<V>> entries, int ttl);
+
     /**
      * Returns the map of key-values, for value list between <tt>startOffset</tt> to <tt>endOffset</tt> for a set of keys. To get all values in key entry startOffset=0
      * and endOffset=-1.
@@ -199,6 +209,27 @@ public interface CacheService extends Service {
      */
     <V> Map<String, V> getRange(Set<String> keys, int startOffset, int endOffset);
 
+    /**
+     * Appends a list of binary values to each of the given keys, creating keys that do not exist, and sets the timeout of each key. Implementations
+     * should perform the whole batch using as few round trips as possible.
+     *
+     * @param  entries  A map of cache keys to the binary values to append to them.  Cannot be null, but may be empty.
+     * @param  ttl      The timeout in seconds.  Must be greater than zero.
+     */
+    void appendBytes(Map<String, List<byte[]>> entries, int ttl);
+
+    /**
+     * Returns the binary values between <tt>startOffset</tt> and <tt>endOffset</tt> for a set of keys. To get all values in key entry startOffset=0
+     * and endOffset=-1.
+     *
+     * @param   keys         The cache keys.  Cannot be null, but may be empty.
+     * @param   startOffset  Start of offset. First index is from 0.
+     * @param   endOffset    End of offset.
+     *
+     * @return  The corresponding cache entries, or null if the cache could not be read.  Keys that do not exist map to an empty list.
+     */
+    Map<String, List<byte[]>> getBytesRange(Set<String> keys, int startOffset, int endOffset);
+
     /**
      * Return the global cache expiration time in seconds.
      *
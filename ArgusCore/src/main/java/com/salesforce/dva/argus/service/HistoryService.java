@@ -123,5 +123,14 @@ public interface HistoryService extends Service {
      * @return  updated job history object.
      */
     History appendMessageAndUpdate(BigInteger id, String message, JobStatus jobStatus, long waitTime, long executionTime);
+
+    /**
+     * Creates or updates a batch of job history records within a single transaction. Records that do not have an ID yet are created and are
+     * assigned their ID. All records are detached from the persistence context once written. The records must not be changed by other threads
+     * until this method returns.
+     *
+     * @param  histories  The job history records to create or update. Cannot be null.
+     */
+    void updateHistories(List<History> histories);
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -70,6 +70,18 @@ public interface SchemaService extends Service {
      */
     List<MetricSchemaRecord> get(MetricSchemaRecordQuery query, int limit, int page);
 
+    /**
+     * Returns a list of schema records matched by the given query, continuing a previous scan. Unlike offset based paging, the scan resumes directly
+     * after the given record instead of re-reading and skipping the records of all previous pages.
+     *
+     * @param   query       The query to evaluate.  Cannot be null.
+     * @param   limit       The maximum number of records to return.  Must be a positive integer.
+     * @param   startAfter  The last record returned by the previous call for the same query, or null to start from the first matching record.
+     *
+     * @return  The list of matching schema records.  Will never return null, but is empty once all matching records have been returned.
+     */
+    List<MetricSchemaRecord> get(MetricSchemaRecordQuery query, int limit, MetricSchemaRecord startAfter);
+
     /**
      * Returns a list of unique names for the given record type.
      *
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.entity.Metric;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A short lived cache of alert metric queries. Queries are keyed by their normalized expression and the minute in which the alert was scheduled,
+ * so that alerts sharing an expression in the same minute are evaluated against the result of a single query. Entries are retained for the
+ * current and the previous minute only. The cached results must not be modified by consumers. The cache is safe for use by multiple threads.
+ *
+ * <p>Every lookup must be followed by either {@link #release(Lookup)} or {@link #invalidate(Lookup)}. A query is only cancelled once no lookup
+ * still waits for its result.</p>
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+final class AlertEvaluationCache {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    static final long BUCKET_SIZE = 60000L;
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final ConcurrentMap<String, CachedQuery> _queries = new ConcurrentHashMap<>();
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Returns the cache key of an expression evaluated at the given time. Whitespace is not significant to the metric expression grammar and is
+     * removed.
+     *
+     * @param   expression      The metric expression. Cannot be null.
+     * @param   evaluationTime  The epoch timestamp at which the alert was scheduled.
+     *
+     * @return  The cache key.
+     */
+    static String getKey(String expression, long evaluationTime) {
+        StringBuilder key = new StringBuilder().append(evaluationTime / BUCKET_SIZE).append(':');
+
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+
+            if (c != ' ' && c != '\r' && c != '\n') {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the cached query for the given key or executes the given query and caches it if none exists.
+     *
+     * @param   key       The cache key as obtained by {@link #getKey(String, long)}. Cannot be null.
+     * @param   query     The query to execute if the key is not cached. Cannot be null.
+     * @param   executor  The executor to run the query on. Cannot be null.
+     *
+     * @return  The cached query result and whether it was shared with a previously cached query.
+     */
+    Lookup lookup(String key, Callable<List<Metric>> query, Executor executor) {
+        while (true) {
+            CachedQuery cached = _queries.get(key);
+
+            if (cached == null) {
+                cached = new CachedQuery(_getBucket(key), new FutureTask<>(query));
+
+                CachedQuery existing = _queries.putIfAbsent(key, cached);
+
+                if (existing == null) {
+                    executor.execute(cached.future);
+                    return new Lookup(key, cached, false);
+                }
+                cached = existing;
+            }
+            if (cached.acquire()) {
+                return new Lookup(key, cached, true);
+            }
+            _queries.remove(key, cached);
+        }
+    }
+
+    /**
+     * Indicates that the result of a looked up query is no longer awaited. The query remains cached.
+     *
+     * @param  lookup  The lookup. Cannot be null.
+     */
+    void release(Lookup lookup) {
+        lookup.cached.release();
+    }
+
+    /**
+     * Removes a looked up query from the cache if it is still cached and indicates that its result is no longer awaited. Used for queries that
+     * failed or did not complete in time. The query is cancelled if no other lookup still waits for its result.
+     *
+     * @param  lookup  The lookup. Cannot be null.
+     */
+    void invalidate(Lookup lookup) {
+        _queries.remove(lookup.key, lookup.cached);
+        if (lookup.cached.close()) {
+            lookup.cached.future.cancel(true);
+        }
+    }
+
+    /**
+     * Removes all queries that were scheduled before the minute preceding the given time.
+     *
+     * @param  time  The current epoch timestamp.
+     */
+    void expire(long time) {
+        long oldest = time / BUCKET_SIZE - 1;
+
+        for (Iterator<Map.Entry<String, CachedQuery>> iter = _queries.entrySet().iterator(); iter.hasNext();) {
+            if (iter.next().getValue().bucket < oldest) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of cached queries.
+     *
+     * @return  The number of cached queries.
+     */
+    int size() {
+        return _queries.size();
+    }
+
+    private static long _getBucket(String key) {
+        return Long.parseLong(key.substring(0, key.indexOf(':')));
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The result of a cache lookup.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    static final class Lookup {
+
+        final Future<List<Metric>> query;
+        final boolean shared;
+        private final String key;
+        private final CachedQuery cached;
+
+        private Lookup(String key, CachedQuery cached, boolean shared) {
+            this.query = cached.future;
+            this.shared = shared;
+            this.key = key;
+            this.cached = cached;
+        }
+    }
+
+    /* Counts the lookups waiting for the result. A query whose last waiter invalidates it is closed to further lookups and cancelled. */
+    private static final class CachedQuery {
+
+        private final long bucket;
+        private final FutureTask<List<Metric>> future;
+        private final AtomicInteger waiters = new AtomicInteger(1);
+
+        private CachedQuery(long bucket, FutureTask<List<Metric>> future) {
+            this.bucket = bucket;
+            this.future = future;
+        }
+
+        private boolean acquire() {
+            while (true) {
+                int count = waiters.get();
+
+                if (count < 0) {
+                    return false;
+                }
+                if (waiters.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            waiters.decrementAndGet();
+        }
+
+        /* Releases the caller and returns true if it was the last waiter, in which case the query is closed to further lookups. */
+        private boolean close() {
+            while (true) {
+                int count = waiters.get();
+
+                if (count == 1 ? waiters.compareAndSet(1, -1) : waiters.compareAndSet(count, count - 1)) {
+                    return count == 1;
+                }
+            }
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
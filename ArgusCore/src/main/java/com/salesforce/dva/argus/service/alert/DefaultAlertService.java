@@ -52,24 +52,34 @@ import com.salesforce.dva.argus.service.MetricService;
 import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.MonitorService.Counter;
 import com.salesforce.dva.argus.service.NotifierFactory;
+import com.salesforce.dva.argus.service.history.BufferedHistoryWriter;
 import com.salesforce.dva.argus.service.jpa.DefaultJPAService;
 import com.salesforce.dva.argus.service.metric.transform.MissingDataException;
 import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.system.SystemException;
 import org.slf4j.Logger;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.persistence.EntityManager;
 
 import static com.salesforce.dva.argus.service.MQService.MQQueue.ALERT;
@@ -96,6 +106,16 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
             }
         };
 
+    private static final String QUERIES_COUNTER = "alerts.evaluation.queries";
+    private static final String SHARED_QUERIES_COUNTER = "alerts.evaluation.queries.shared";
+    private static final String INCREMENTAL_QUERIES_COUNTER = "alerts.evaluation.queries.incremental";
+
+    /** Shared by all alert service instances of the process, as every alert client thread obtains its own instance. */
+    private static final AlertEvaluationCache EVALUATION_CACHE = new AlertEvaluationCache();
+
+    /** Shared for the same reason, keyed by the configured overlap, so that retained series are reused by whichever instance evaluates next. */
+    private static final ConcurrentMap<Long, IncrementalQueryCache> INCREMENTAL_QUERIES = new ConcurrentHashMap<>();
+
     //~ Instance fields ******************************************************************************************************************************
 
     @SLF4JTypeListener.InjectLogger
@@ -107,9 +127,12 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
     private final AnnotationService _annotationService;
     private final MailService _mailService;
     private final SystemConfiguration _configuration;
-    private final HistoryService _historyService;
+    private final BufferedHistoryWriter _historyWriter;
     private final MonitorService _monitorService;
     private final NotifierFactory _notifierFactory;
+    private final long _evaluationTimeout;
+    private final IncrementalQueryCache _incrementalQueries;
+    private final ExecutorService _evaluationExecutor;
 
     //~ Constructors *********************************************************************************************************************************
 
@@ -128,19 +151,59 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
     @Inject
     public DefaultAlertService(MQService mqService, MetricService metricService, AnnotationService annotationService, AuditService auditService,
         MailService mailService, SystemConfiguration configuration, HistoryService historyService, MonitorService monitorService, NotifierFactory notifierFactory) {
+        this(mqService, metricService, annotationService, auditService, mailService, configuration, historyService, monitorService, notifierFactory,
+            _createEvaluationExecutor(configuration));
+    }
+
+    /**
+     * Creates a new DefaultAlertService object that runs the metric queries of alerts on the given executor.
+     *
+     * @param  mqService           The MQ service instance to use. Cannot be null.
+     * @param  metricService       The Metric service instance to use. Cannot be null.
+     * @param  annotationService   The Annotation service instance to use. Cannot be null.
+     * @param  auditService        The audit service instance to use. Cannot be null.
+     * @param  mailService         The mail service instance to use. Cannot be null.
+     * @param  configuration       The system configuration instance to use. Cannot be null.
+     * @param  historyService      The job history service instance to use. Cannot be null.
+     * @param  monitorService      The monitor service instance to use. Cannot be null.
+     * @param  notifierFactory     The notifier factory to use.
+     * @param  evaluationExecutor  The executor to run metric queries on. The service shuts it down when disposed. Cannot be null.
+     */
+    DefaultAlertService(MQService mqService, MetricService metricService, AnnotationService annotationService, AuditService auditService,
+        MailService mailService, SystemConfiguration configuration, HistoryService historyService, MonitorService monitorService,
+        NotifierFactory notifierFactory, ExecutorService evaluationExecutor) {
         super(auditService, configuration);
         requireArgument(mqService != null, "MQ service cannot be null.");
         requireArgument(metricService != null, "Metric service cannot be null.");
         requireArgument(annotationService != null, "Annotation service cannot be null.");
+        requireArgument(evaluationExecutor != null, "Evaluation executor cannot be null.");
         _mqService = mqService;
         _metricService = metricService;
         _annotationService = annotationService;
         _mailService = mailService;
         _configuration = configuration;
-        _historyService = historyService;
         _monitorService = monitorService;
         _notifierFactory = notifierFactory;
-        
+        _evaluationExecutor = evaluationExecutor;
+        _evaluationTimeout = Long.parseLong(configuration.getValue(Property.ALERT_EVALUATION_TIMEOUT.getName(),
+                Property.ALERT_EVALUATION_TIMEOUT.getDefaultValue()));
+        requireArgument(_evaluationTimeout > 0, "Alert evaluation timeout must be greater than zero.");
+
+        int historyBufferSize = Integer.parseInt(configuration.getValue(Property.ALERT_HISTORY_BUFFER_SIZE.getName(),
+                Property.ALERT_HISTORY_BUFFER_SIZE.getDefaultValue()));
+        long historyFlushInterval = Long.parseLong(configuration.getValue(Property.ALERT_HISTORY_FLUSH_INTERVAL.getName(),
+                Property.ALERT_HISTORY_FLUSH_INTERVAL.getDefaultValue()));
+
+        _historyWriter = new BufferedHistoryWriter(historyService, historyBufferSize, historyFlushInterval);
+        if (Boolean.parseBoolean(configuration.getValue(Property.ALERT_INCREMENTAL_EVALUATION.getName(),
+                    Property.ALERT_INCREMENTAL_EVALUATION.getDefaultValue()))) {
+            long overlap = Long.parseLong(configuration.getValue(Property.ALERT_INCREMENTAL_OVERLAP.getName(),
+                    Property.ALERT_INCREMENTAL_OVERLAP.getDefaultValue()));
+
+            _incrementalQueries = INCREMENTAL_QUERIES.computeIfAbsent(overlap, IncrementalQueryCache::new);
+        } else {
+            _incrementalQueries = null;
+        }
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -258,43 +321,47 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
         List<History> historyList = new ArrayList<>();
         List<AlertIdWithTimestamp> alertIdWithTimestampList = _mqService.dequeue(ALERT.getQueueName(), AlertIdWithTimestamp.class, timeout,
             alertCount);
+        List<AlertEvaluation> evaluations = startAlertEvaluations(alertIdWithTimestampList);
         EntityManager em = emf.get();
         int failedNotificationsCount = 0;
+        int sharedQueriesCount = 0;
         String logMessage = null;
         long jobEndTime = 0;
 
-        for (AlertIdWithTimestamp alertIdWithTimestamp : alertIdWithTimestampList) {
-            long jobStartTime = System.currentTimeMillis();
-            BigInteger alertID = alertIdWithTimestamp.alertId;
-            Long enqueuedTimestamp = alertIdWithTimestamp.alertEnqueueTime;
-
-            failedNotificationsCount = 0;
-
-            Alert alert = findAlertByPrimaryKey(alertID);
-
-            if (alert == null) {
-                logMessage = MessageFormat.format("Could not find alert ID {0}", alertID);
-                _logger.warn(logMessage);
-                continue;
+        EVALUATION_CACHE.expire(System.currentTimeMillis());
+        if (_incrementalQueries != null) {
+            _incrementalQueries.expire(System.currentTimeMillis());
+        }
+        for (AlertEvaluation evaluation : evaluations) {
+            if (_submitMetricQuery(evaluation)) {
+                sharedQueriesCount++;
             }
+        }
+        _countMetricQueries(evaluations.size(), sharedQueriesCount);
+        for (AlertEvaluation evaluation : evaluations) {
+            Alert alert = evaluation.alert;
+            History history = evaluation.history;
+            long jobStartTime = evaluation.startTime;
 
-            History history = _historyService.createHistory(addDateToMessage(JobStatus.STARTED.getDescription()), alert, JobStatus.STARTED, 0, 0);
-
+            failedNotificationsCount = 0;
             try {
-                List<Metric> metrics = _metricService.getMetrics(alert.getExpression(), enqueuedTimestamp - System.currentTimeMillis());
+                List<Metric> metrics = _awaitMetricQuery(evaluation);
 
                 if (metrics == null || metrics.isEmpty()) {
                     logMessage = "The metric expression associated with the alert did not return any metric data.";
                     _logger.info(logMessage);
-                    appendMessageNUpdateHistory(history.getId(), logMessage, null, 0, 0);
+                    appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
                     continue;
                 }
                 for (Metric metric : metrics) {
-                    if (!shouldEvaluateMetric(metric, alert, history.getId())) {
+                    if (!shouldEvaluateMetric(metric, alert, history)) {
                         continue;
                     }
+
+                    TriggerEvaluator evaluator = new TriggerEvaluator(metric);
+
                     for (Notification notification : alert.getNotifications()) {
-                        boolean successfullyProcessed = processNotification(notification, history.getId(), metric, alert, em);
+                        boolean successfullyProcessed = processNotification(notification, history, metric, evaluator, alert, em);
 
                         if (!successfullyProcessed) {
                             failedNotificationsCount++;
@@ -305,24 +372,24 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
                 if (failedNotificationsCount > 0) {
                     logMessage = MessageFormat.format("No.of notifications failed: {0}", failedNotificationsCount);
                     _logger.info(logMessage);
-                    appendMessageNUpdateHistory(history.getId(), logMessage, null, 0, 0);
+                    appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
                 }
-                appendMessageNUpdateHistory(history.getId(), "Alert was evaluated successfully.", JobStatus.SUCCESS, 0, jobEndTime - jobStartTime);
+                appendMessageNUpdateHistory(history, "Alert was evaluated successfully.", JobStatus.SUCCESS, 0, jobEndTime - jobStartTime);
             } catch (MissingDataException mde) {
                 jobEndTime = System.currentTimeMillis();
                 logMessage = MessageFormat.format("Failed to evaluate an alert : {0}. Reason: {1}", alert.getName(), mde.getMessage());
                 _logger.warn(logMessage);
-                appendMessageNUpdateHistory(history.getId(), mde.toString(), JobStatus.FAILURE, 0, jobEndTime - jobStartTime);
+                appendMessageNUpdateHistory(history, mde.toString(), JobStatus.FAILURE, 0, jobEndTime - jobStartTime);
                 if (alert.isMissingDataNotificationEnabled()) {
                     _sendNotifocationForMissingData(alert);
                 }
             } catch (Exception ex) {
                 jobEndTime = System.currentTimeMillis();
                 try {
-                    appendMessageNUpdateHistory(history.getId(), ex.toString(), JobStatus.FAILURE, 0, jobEndTime - jobStartTime);
+                    appendMessageNUpdateHistory(history, ex.toString(), JobStatus.FAILURE, 0, jobEndTime - jobStartTime);
                     _logger.warn("Failed to evaluate alert : {}. Reason: {}", alert, ex.getMessage());
                 } finally {
-                    sendEmailToAdmin(alert, alertID, ex);
+                    sendEmailToAdmin(alert, alert.getId(), ex);
                 }
             } finally {
                 _monitorService.modifyCounter(Counter.ALERTS_EVALUATED, 1, null);
@@ -332,35 +399,176 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
         return historyList;
     }
 
+    /**
+     * Looks up the dequeued alerts and records the start of their evaluation. Alerts that no longer exist are skipped.
+     *
+     * @param   alertIdWithTimestampList  The dequeued alert IDs. Cannot be null.
+     *
+     * @return  The evaluations to perform in dequeue order.
+     */
+    @Transactional
+    List<AlertEvaluation> startAlertEvaluations(List<AlertIdWithTimestamp> alertIdWithTimestampList) {
+        List<AlertEvaluation> evaluations = new ArrayList<>(alertIdWithTimestampList.size());
+
+        if (alertIdWithTimestampList.isEmpty()) {
+            return evaluations;
+        }
+
+        EntityManager em = emf.get();
+
+        em.getEntityManagerFactory().getCache().evictAll();
+        for (AlertIdWithTimestamp alertIdWithTimestamp : alertIdWithTimestampList) {
+            long startTime = System.currentTimeMillis();
+            BigInteger alertID = alertIdWithTimestamp.alertId;
+            Alert alert = Alert.findByPrimaryKey(em, alertID, Alert.class);
+
+            if (alert == null) {
+                _logger.warn(MessageFormat.format("Could not find alert ID {0}", alertID));
+                continue;
+            }
+
+            History history = _historyWriter.createHistory(addDateToMessage(JobStatus.STARTED.getDescription()), alert, JobStatus.STARTED, 0, 0);
+
+            evaluations.add(new AlertEvaluation(alert, history, alertIdWithTimestamp.alertEnqueueTime, startTime));
+        }
+        return evaluations;
+    }
+
+    /*
+     * Alerts having the same expression and scheduled within the same minute share a single metric query through the evaluation cache, even if
+     * they are evaluated by different alert service instances.  The
+     * relative offset of the alert that first submitted the query is used and the query runs on the executor of the instance that submitted it.
+     * Returns true if the query is shared.
+     */
+    private boolean _submitMetricQuery(AlertEvaluation evaluation) {
+        final String expression = evaluation.alert.getExpression();
+        final long offset = evaluation.enqueueTime - System.currentTimeMillis();
+
+        evaluation.lookup = EVALUATION_CACHE.lookup(AlertEvaluationCache.getKey(expression, evaluation.enqueueTime), new Callable<List<Metric>>() {
+
+                    @Override
+                    public List<Metric> call() throws Exception {
+                        if (_incrementalQueries == null) {
+                            return _metricService.getMetrics(expression, offset);
+                        }
+
+                        IncrementalQueryCache.Result result = _incrementalQueries.getMetrics(_metricService, expression, offset);
+
+                        if (result.incremental) {
+                            _monitorService.modifyCustomCounter(INCREMENTAL_QUERIES_COUNTER, 1, null);
+                        }
+                        return result.metrics;
+                    }
+                }, _evaluationExecutor);
+        return evaluation.lookup.shared;
+    }
+
+    /*
+     * A query that fails or does not complete in time is removed from the evaluation cache, but only cancelled if no other alert still waits for
+     * its result.
+     */
+    private List<Metric> _awaitMetricQuery(AlertEvaluation evaluation) throws Exception {
+        long remaining = evaluation.startTime + _evaluationTimeout - System.currentTimeMillis();
+        boolean completed = false;
+        List<Metric> metrics;
+
+        try {
+            metrics = evaluation.lookup.query.get(Math.max(remaining, 0), TimeUnit.MILLISECONDS);
+            completed = true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw ie;
+        } catch (TimeoutException te) {
+            throw new SystemException(MessageFormat.format("The metric query did not complete within {0} ms.", _evaluationTimeout), te);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+
+            throw cause instanceof Exception ? (Exception) cause : new SystemException(cause);
+        } finally {
+            if (completed) {
+                EVALUATION_CACHE.release(evaluation.lookup);
+            } else {
+                EVALUATION_CACHE.invalidate(evaluation.lookup);
+            }
+        }
+        if (metrics == null) {
+            return null;
+        }
+
+        List<Metric> result = new ArrayList<>(metrics.size());
+
+        for (Metric metric : metrics) {
+            result.add(new Metric(metric));
+        }
+        return result;
+    }
+
+    /* Idle threads time out, so instances that never evaluate alerts hold no threads. */
+    private static ExecutorService _createEvaluationExecutor(SystemConfiguration configuration) {
+        int parallelism = Integer.parseInt(configuration.getValue(Property.ALERT_EVALUATION_PARALLELISM.getName(),
+                Property.ALERT_EVALUATION_PARALLELISM.getDefaultValue()));
+
+        requireArgument(parallelism > 0, "Alert evaluation parallelism must be greater than zero.");
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+
+                private final AtomicInteger _id = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "alert-evaluation-" + _id.getAndIncrement());
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void _countMetricQueries(int queries, int shared) {
+        if (queries > 0) {
+            _monitorService.modifyCustomCounter(QUERIES_COUNTER, queries, null);
+        }
+        if (shared > 0) {
+            _monitorService.modifyCustomCounter(SHARED_QUERIES_COUNTER, shared, null);
+        }
+        _logger.debug("Alert metric queries: {} requested, {} shared.", queries, shared);
+    }
+
     /**
      * Evaluates all triggers associated with the notification and updates the job history.
      *
      * @param   notification  The notification to be evaluated
-     * @param   historyId     Job history object
+     * @param   history       Job history object
      * @param   metric        metric associated with an alert
+     * @param   evaluator     The trigger evaluator for the metric.
      * @param   alert         The alert for which the notification belongs to
      * @param   em            Entity manager.
      *
      * @return  Returns true if the notification is successfully evaluated.
      */
-    private boolean processNotification(Notification notification, BigInteger historyId, Metric metric, Alert alert, EntityManager em) {
-        if (!shouldEvaluateNotification(notification, historyId)) {
+    private boolean processNotification(Notification notification, History history, Metric metric, TriggerEvaluator evaluator, Alert alert,
+        EntityManager em) {
+        if (!shouldEvaluateNotification(notification, history)) {
             return true;
         }
 
         String logMessage = null;
 
         if (notification.isActive() && notification.getFiredTrigger() != null) {
-            Long triggerFiredTime = getTriggerFiredDatapointTime(notification.getFiredTrigger(), metric);
+            Long triggerFiredTime = evaluator.getFiredTime(notification.getFiredTrigger());
 
             if (triggerFiredTime == null) {
-                clearNotification(notification.getFiredTrigger(), metric, historyId, notification, em, alert);
+                clearNotification(notification.getFiredTrigger(), metric, history, notification, em, alert);
             }
         }
         try {
             if (!notification.onCooldown()) {
                 for (Trigger trigger : notification.getTriggers()) {
-                    boolean triggerFired = evaluateTrigger(trigger, metric, historyId, notification, em, alert);
+                    boolean triggerFired = evaluateTrigger(trigger, metric, evaluator, history, notification, em, alert);
 
                     if (triggerFired) {
                         break;
@@ -370,13 +578,13 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
                 logMessage = MessageFormat.format("The notification {0} is on cooldown until {1}.", notification.getName(),
                     getDateMMDDYYYY(notification.getCooldownExpiration()));
                 _logger.info(logMessage);
-                appendMessageNUpdateHistory(historyId, logMessage, null, 0, 0);
+                appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
             }
         } catch (Exception ex) {
             logMessage = MessageFormat.format("Exception occured while processing the notification: {0}. Reason: {1}", notification.getName(),
                 ex.toString());
             _logger.warn("Exception occured while processing the notification: {}. Reason: {}", notification, ex.toString());
-            appendMessageNUpdateHistory(historyId, logMessage, null, 0, 0);
+            appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
             return false;
         }
         return true;
@@ -387,36 +595,38 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
      *
      * @param   trigger       Trigger to be evaluated
      * @param   metric        Metric associated with the alert
-     * @param   historyId     Job history for this alert evaluation
+     * @param   evaluator     The trigger evaluator for the metric
+     * @param   history       Job history for this alert evaluation
      * @param   notification  Notification to which trigger belongs to
      * @param   em            Entity manager
      * @param   alert         The alert to which the trigger belongs to
      *
      * @return  Returns true if the trigger is fired and notification is sent otherwise false.
      */
-    private boolean evaluateTrigger(Trigger trigger, Metric metric, BigInteger historyId, Notification notification, EntityManager em, Alert alert) {
-        Long triggerFiredTime = getTriggerFiredDatapointTime(trigger, metric);
+    private boolean evaluateTrigger(Trigger trigger, Metric metric, TriggerEvaluator evaluator, History history, Notification notification,
+        EntityManager em, Alert alert) {
+        Long triggerFiredTime = evaluator.getFiredTime(trigger);
 
         if (triggerFiredTime != null) {
-            sendNotification(trigger, metric, historyId, notification, em, alert, triggerFiredTime);
+            sendNotification(trigger, metric, history, notification, em, alert, triggerFiredTime);
             return true;
         } else {
             String logMessage = MessageFormat.format("The trigger {0} was evaluated against metric {1} and it is not fired for the notification {2}.",
                 trigger.getName(), getMetricExpression(metric), notification.getName());
 
             _logger.info(logMessage);
-            _historyService.appendMessageAndUpdate(historyId, logMessage, null, 0, 0);
+            _historyWriter.appendMessageAndUpdate(history, logMessage, null, 0, 0);
         }
         return false;
     }
 
-    private void sendNotification(Trigger trigger, Metric metric, BigInteger historyId, Notification notification, EntityManager em, Alert alert,
+    private void sendNotification(Trigger trigger, Metric metric, History history, Notification notification, EntityManager em, Alert alert,
         Long triggerFiredTime) {
         String logMessage = MessageFormat.format("The trigger {0} was evaluated against metric {1} and it is fired for the notification {2}.",
             trigger.getName(), getMetricExpression(metric), notification.getName());
 
         _logger.info(logMessage);
-        appendMessageNUpdateHistory(historyId, logMessage, null, 0, 0);
+        appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
 
         String value = metric.getDatapoints().get(triggerFiredTime);
 
@@ -432,10 +642,10 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
         logMessage = MessageFormat.format("Sent alert notification and updated the cooldown: {0}",
             getDateMMDDYYYY(notification.getCooldownExpiration()));
         _logger.info(logMessage);
-        appendMessageNUpdateHistory(historyId, logMessage, null, 0, 0);
+        appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
     }
 
-    private void clearNotification(Trigger trigger, Metric metric, BigInteger historyId, Notification notification, EntityManager em, Alert alert) {
+    private void clearNotification(Trigger trigger, Metric metric, History history, Notification notification, EntityManager em, Alert alert) {
         String logMessage = null;
         String value = "0";
 
@@ -449,10 +659,10 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
         notifier.clearNotification(context);
         logMessage = MessageFormat.format("The notification {0} was cleared.", notification.getName());
         _logger.info(logMessage);
-        appendMessageNUpdateHistory(historyId, logMessage, null, 0, 0);
+        appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
     }
 
-    private boolean shouldEvaluateMetric(Metric metric, Alert alert, BigInteger historyId) {
+    private boolean shouldEvaluateMetric(Metric metric, Alert alert, History history) {
         String logMessage = null;
 
         if (metric.getDatapoints().isEmpty()) {
@@ -461,28 +671,28 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
                 logMessage = MessageFormat.format("Metric data does not exit for metric: {0}. Sent notification for missing data.",
                     getMetricExpression(metric));
                 _logger.info(logMessage);
-                appendMessageNUpdateHistory(historyId, logMessage, null, 0, 0);
+                appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
             } else {
                 logMessage = MessageFormat.format("Metric data does not exit for metric: {0}. Missing data notification was not enabled.",
                     getMetricExpression(metric));
                 _logger.info(logMessage);
-                appendMessageNUpdateHistory(historyId, logMessage, JobStatus.SUCCESS, 0, 0);
+                appendMessageNUpdateHistory(history, logMessage, JobStatus.SUCCESS, 0, 0);
             }
             return false;
         }
         return true;
     }
 
-    private History appendMessageNUpdateHistory(BigInteger historyId, String message, JobStatus jobStatus, long waitTime, long executionTime) {
-        return _historyService.appendMessageAndUpdate(historyId, addDateToMessage(message), jobStatus, waitTime, executionTime);
+    private History appendMessageNUpdateHistory(History history, String message, JobStatus jobStatus, long waitTime, long executionTime) {
+        return _historyWriter.appendMessageAndUpdate(history, addDateToMessage(message), jobStatus, waitTime, executionTime);
     }
 
-    private boolean shouldEvaluateNotification(Notification notification, BigInteger historyId) {
+    private boolean shouldEvaluateNotification(Notification notification, History history) {
         if (notification.getTriggers().isEmpty()) {
             String logMessage = MessageFormat.format("The notification {0} has no triggers.", notification.getName());
 
             _logger.info(logMessage);
-            appendMessageNUpdateHistory(historyId, logMessage, null, 0, 0);
+            appendMessageNUpdateHistory(history, logMessage, null, 0, 0);
             return false;
         }
         return true;
@@ -559,7 +769,7 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
                 _logger.warn("Could not find alert ID {}", alert.getId());
                 continue;
             }
-            _historyService.createHistory(addDateToMessage("Alert queued for evaluation"), alert, JobStatus.QUEUED, 0, 0);
+            _historyWriter.createHistory(addDateToMessage("Alert queued for evaluation"), alert, JobStatus.QUEUED, 0, 0);
         }
     }
 
@@ -626,6 +836,8 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
 
     @Override
     public void dispose() {
+        _historyWriter.close();
+        _evaluationExecutor.shutdown();
         super.dispose();
         _annotationService.dispose();
         _metricService.dispose();
@@ -640,62 +852,7 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
      * @return  The time stamp of the last data point in metric at which the trigger was decided to be fired.
      */
     public Long getTriggerFiredDatapointTime(Trigger trigger, Metric metric) {
-        List<Map.Entry<Long, String>> sortedDatapoints = new ArrayList<>(metric.getDatapoints().entrySet());
-
-        if (metric.getDatapoints().isEmpty()) {
-            return null;
-        } else if (metric.getDatapoints().size() == 1) {
-            if (trigger.getInertia().compareTo(0L) <= 0) {
-                if (Trigger.evaluateTrigger(trigger, new Double(sortedDatapoints.get(0).getValue()))) {
-                    return sortedDatapoints.get(0).getKey();
-                } else {
-                    return null;
-                }
-            } else {
-                return null;
-            }
-        }
-
-        long datapointsInterval, inertialLength;
-        int inertiaDatapointsCount, count = 0, left, right, currWindowStart;
-
-        Collections.sort(sortedDatapoints, new Comparator<Map.Entry<Long, String>>() {
-
-                @Override
-                public int compare(Entry<Long, String> e1, Entry<Long, String> e2) {
-                    return e1.getKey().compareTo(e2.getKey());
-                }
-            });
-        datapointsInterval = sortedDatapoints.get(1).getKey() - sortedDatapoints.get(0).getKey();
-        inertialLength = trigger.getInertia() / datapointsInterval;
-        if (trigger.getInertia() < datapointsInterval) {
-            inertiaDatapointsCount = 1;
-        } else if (inertialLength * datapointsInterval < trigger.getInertia()) {
-            inertiaDatapointsCount = (int) inertialLength + 2;
-        } else {
-            inertiaDatapointsCount = (int) inertialLength + 1;
-        }
-        if (inertiaDatapointsCount > sortedDatapoints.size()) {
-            return null;
-        }
-        currWindowStart = left = sortedDatapoints.size() - inertiaDatapointsCount;
-        right = sortedDatapoints.size() - 1; // -1 as index starts from 0
-        while (left <= right) {
-            if (sortedDatapoints.get(left).getValue() != null &&
-                    Trigger.evaluateTrigger(trigger, new Double(sortedDatapoints.get(left).getValue()))) {
-                count++;
-                left++;
-            } else {
-                right = currWindowStart - 1;
-                left = right - inertiaDatapointsCount + count + 1; // +1 as index starts from 0
-                count = 0;
-                currWindowStart = left;
-                if (left < 0) {
-                    return null;
-                }
-            }
-        }
-        return sortedDatapoints.get(currWindowStart + inertiaDatapointsCount - 1).getKey(); // -1 as index starts from 0
+        return new TriggerEvaluator(metric).getFiredTime(trigger);
     }
 
     @Override
@@ -724,6 +881,16 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
         em.flush();
     }
 
+    @Override
+    public Properties getServiceProperties() {
+        Properties serviceProps = new Properties();
+
+        for (Property property : Property.values()) {
+            serviceProps.put(property.getName(), property.getDefaultValue());
+        }
+        return serviceProps;
+    }
+
     private String addDateToMessage(String message) {
         return MessageFormat.format("\n {0} : {1}", DATE_FORMATTER.get().format(new Date()), message);
     }
@@ -755,8 +922,89 @@ public class DefaultAlertService extends DefaultJPAService implements AlertServi
     }
 
 
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The set of implementation specific configuration properties.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    public enum Property {
+
+        /** The maximum number of alert metric queries that are evaluated concurrently by a single alert service instance. */
+        ALERT_EVALUATION_PARALLELISM("service.property.alert.evaluation.parallelism", "8"),
+        /** The time in milliseconds after which the evaluation of a single alert is failed if its metric query has not completed. */
+        ALERT_EVALUATION_TIMEOUT("service.property.alert.evaluation.timeout", "300000"),
+        /**
+         * Indicates whether single queries without transforms and downsamplers only fetch the data points that arrived since their previous
+         * evaluation.
+         */
+        ALERT_INCREMENTAL_EVALUATION("service.property.alert.evaluation.incremental", "false"),
+        /** The period in milliseconds for which retained data points are fetched again on every incremental evaluation. */
+        ALERT_INCREMENTAL_OVERLAP("service.property.alert.evaluation.incremental.overlap", "60000"),
+        /** The number of changed job history records at which the buffered records are written. */
+        ALERT_HISTORY_BUFFER_SIZE("service.property.alert.history.buffer.size", "500"),
+        /** The time in milliseconds after the first buffered job history change at which the buffered records are written. */
+        ALERT_HISTORY_FLUSH_INTERVAL("service.property.alert.history.flush.interval", "5000");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
+
     //~ Inner Classes ********************************************************************************************************************************
 
+    /**
+     * The state of a single alert evaluation within a dequeued batch.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    static class AlertEvaluation {
+
+        private final Alert alert;
+        private final History history;
+        private final long enqueueTime;
+        private final long startTime;
+        private AlertEvaluationCache.Lookup lookup;
+
+        /**
+         * Creates a new AlertEvaluation object.
+         *
+         * @param  alert        The alert to evaluate. Cannot be null.
+         * @param  history      The job history of the evaluation. Cannot be null.
+         * @param  enqueueTime  The epoch timestamp the alert was enqueued for evaluation.
+         * @param  startTime    The epoch timestamp the evaluation started.
+         */
+        AlertEvaluation(Alert alert, History history, long enqueueTime, long startTime) {
+            this.alert = alert;
+            this.history = history;
+            this.enqueueTime = enqueueTime;
+            this.startTime = startTime;
+        }
+    }
+
     /**
      * Used to enqueue alerts to evaluate.  The timestamp is used to reconcile lag between enqueue time and evaluation time by adjusting relative
      * times in the alert metric expression being evaluated.
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.entity.DatapointSeries;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.service.metric.MetricReader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Retains the series of eligible alert expressions between evaluations so that only data points that arrived since the previous evaluation are
+ * fetched. An expression is eligible if it is a single query having a relative start time, no end time, no downsampler and no transforms. The
+ * retained series are trimmed to the query window on every evaluation, so the result is the same as that of querying the whole window.
+ *
+ * <p>Each incremental fetch starts two overlap periods before the end of the previous fetch. Data points within the last overlap period are
+ * replaced by the fetched ones, so that late arriving data points and aggregation effects at the start of the fetched range are accounted
+ * for. Data points arriving later than one overlap period after their timestamp are not reflected until the series is fetched completely
+ * again.</p>
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+final class IncrementalQueryCache {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final Pattern ELIGIBLE_EXPRESSION = Pattern.compile(
+        "-(\\d+)([smhdSMHD]):((?:-__-[^:(),{}]+:)?(?!-?\\d+[smhdSMHD]?:)[^:(),{}]+:[^:(),{}]+(?:\\{[^:(){}]+\\})?:" +
+        "(?:avg|sum|min|max|dev|zimsum|minmin|minmax))");
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final ConcurrentMap<String, Tail> _tails = new ConcurrentHashMap<>();
+    private final long _overlap;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new IncrementalQueryCache object.
+     *
+     * @param  overlap  The period in milliseconds for which retained data points are refreshed on every evaluation. Must be positive.
+     */
+    IncrementalQueryCache(long overlap) {
+        requireArgument(overlap > 0, "The overlap must be greater than zero.");
+        _overlap = overlap;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Indicates whether an expression can be evaluated incrementally.
+     *
+     * @param   expression  The metric expression. Cannot be null.
+     *
+     * @return  True if the expression is eligible for incremental evaluation.
+     */
+    static boolean isEligible(String expression) {
+        return ELIGIBLE_EXPRESSION.matcher(_normalize(expression)).matches();
+    }
+
+    /**
+     * Evaluates an expression. Eligible expressions are fetched incrementally if series were retained by a previous evaluation, all other
+     * expressions are passed to the metric service unchanged.
+     *
+     * @param   metricService  The metric service to fetch data with. Cannot be null.
+     * @param   expression     The metric expression. Cannot be null.
+     * @param   offset         The offset in milliseconds applied to the start and end time of the expression.
+     *
+     * @return  The resulting metrics. The caller owns the returned metrics.
+     */
+    Result getMetrics(MetricService metricService, String expression, long offset) {
+        String normalized = _normalize(expression);
+        Matcher matcher = ELIGIBLE_EXPRESSION.matcher(normalized);
+
+        if (!matcher.matches()) {
+            return new Result(metricService.getMetrics(expression, offset), false);
+        }
+
+        long now = System.currentTimeMillis();
+        long span = Long.parseLong(matcher.group(1)) * MetricReader.TimeUnit.fromString(matcher.group(2)).getValue();
+        long start = (now - span) / 1000 * 1000 + offset;
+        long end = now + offset;
+        String query = matcher.group(3);
+        Tail tail = new Tail(span);
+        Tail existing = _tails.putIfAbsent(normalized, tail);
+
+        tail = existing == null ? tail : existing;
+        synchronized (tail) {
+            try {
+                boolean incremental = tail.series != null && tail.end - 2 * _overlap >= start && tail.end <= end;
+
+                if (incremental) {
+                    long refreshFrom = tail.end - _overlap;
+
+                    _merge(tail.series, metricService.getMetrics((refreshFrom - _overlap) + ":" + end + ":" + query, 0), refreshFrom);
+                } else {
+                    tail.series = new LinkedHashMap<>();
+                    _merge(tail.series, metricService.getMetrics(start + ":" + end + ":" + query, 0), start);
+                }
+                _trim(tail.series, start);
+                tail.end = end;
+
+                List<Metric> result = new ArrayList<>(tail.series.size());
+
+                for (Metric metric : tail.series.values()) {
+                    result.add(new Metric(metric));
+                }
+                return new Result(result, incremental);
+            } catch (RuntimeException ex) {
+                tail.series = null;
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Removes retained series whose data points are all outside of their query window.
+     *
+     * @param  time  The current epoch timestamp.
+     */
+    void expire(long time) {
+        for (Iterator<Tail> iter = _tails.values().iterator(); iter.hasNext();) {
+            Tail tail = iter.next();
+
+            if (tail.end < time - tail.span) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of expressions for which series are retained.
+     *
+     * @return  The number of retained expressions.
+     */
+    int size() {
+        return _tails.size();
+    }
+
+    /* Replaces the data points at or after the given timestamp with the fetched ones. */
+    private static void _merge(Map<String, Metric> series, List<Metric> fetched, long from) {
+        if (fetched == null) {
+            return;
+        }
+        for (Metric metric : fetched) {
+            String key = _getIdentity(metric);
+            Metric previous = series.get(key);
+            Metric merged = new Metric(metric.getScope(), metric.getMetric());
+
+            merged.setNamespace(metric.getNamespace());
+            merged.setDisplayName(metric.getDisplayName());
+            merged.setUnits(metric.getUnits());
+            merged.setTags(metric.getTags());
+            if (previous != null) {
+                DatapointSeries datapoints = previous.getDatapointSeries();
+
+                for (int i = 0; i < datapoints.size() && datapoints.getTimestamp(i) < from; i++) {
+                    merged.addDatapoint(datapoints.getTimestamp(i), datapoints.getValue(i));
+                }
+            }
+
+            DatapointSeries datapoints = metric.getDatapointSeries();
+
+            for (int i = 0; i < datapoints.size(); i++) {
+                if (datapoints.getTimestamp(i) >= from) {
+                    merged.addDatapoint(datapoints.getTimestamp(i), datapoints.getValue(i));
+                }
+            }
+            series.put(key, merged);
+        }
+    }
+
+    /* Removes the data points before the given timestamp and drops series left without data points. */
+    private static void _trim(Map<String, Metric> series, long start) {
+        for (Iterator<Metric> iter = series.values().iterator(); iter.hasNext();) {
+            Metric metric = iter.next();
+            DatapointSeries datapoints = metric.getDatapointSeries();
+            int first = 0;
+
+            while (first < datapoints.size() && datapoints.getTimestamp(first) < start) {
+                first++;
+            }
+            if (first == datapoints.size()) {
+                iter.remove();
+            } else if (first > 0) {
+                int size = datapoints.size() - first;
+                long[] timestamps = new long[size];
+                String[] values = new String[size];
+
+                for (int i = 0; i < size; i++) {
+                    timestamps[i] = datapoints.getTimestamp(first + i);
+                    values[i] = datapoints.getValue(first + i);
+                }
+                metric.setDatapoints(null);
+                for (int i = 0; i < size; i++) {
+                    metric.addDatapoint(timestamps[i], values[i]);
+                }
+            }
+        }
+    }
+
+    private static String _getIdentity(Metric metric) {
+        return metric.getNamespace() + ":" + metric.getScope() + ":" + metric.getMetric() + new TreeMap<>(metric.getTags());
+    }
+
+    private static String _normalize(String expression) {
+        return expression.replace(" ", "").replace("\r", "").replace("\n", "");
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * The result of an evaluation.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    static final class Result {
+
+        final List<Metric> metrics;
+        final boolean incremental;
+
+        private Result(List<Metric> metrics, boolean incremental) {
+            this.metrics = metrics;
+            this.incremental = incremental;
+        }
+    }
+
+    private static final class Tail {
+
+        private final long span;
+        private Map<String, Metric> series;
+        private long end;
+
+        private Tail(long span) {
+            this.span = span;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.entity.DatapointSeries;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.entity.Trigger;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Evaluates triggers against the data points of a single metric. The series is read once into primitive columns which are then shared by all
+ * triggers evaluated against the metric. Each trigger is evaluated in a single backward pass over the series that tracks the length of the
+ * current run of matching data points, so that inertia windows are never re-examined. Results are retained per trigger instance.
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+final class TriggerEvaluator {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final long[] _timestamps;
+    private final double[] _values;
+    private final boolean[] _nulls;
+    private final String[] _invalidValues;
+    private final Map<Trigger, Long> _firedTimes = new IdentityHashMap<>();
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new evaluator for the given metric. Subsequent changes to the metric are not reflected.
+     *
+     * @param  metric  The metric to evaluate triggers against. Cannot be null.
+     */
+    TriggerEvaluator(Metric metric) {
+        DatapointSeries series = metric.getDatapointSeries();
+        int size = series.size();
+        String[] invalidValues = null;
+
+        _timestamps = new long[size];
+        _values = new double[size];
+        _nulls = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            _timestamps[i] = series.getTimestamp(i);
+            _nulls[i] = series.getValue(i) == null;
+        }
+        try {
+            for (int i = 0; i < size; i++) {
+                _values[i] = series.getDoubleValue(i);
+            }
+        } catch (NumberFormatException nfe) {
+            invalidValues = new String[size];
+            for (int i = 0; i < size; i++) {
+                String value = series.getValue(i);
+
+                try {
+                    _values[i] = value == null ? Double.NaN : Double.parseDouble(value);
+                } catch (NumberFormatException ex) {
+                    _values[i] = Double.NaN;
+                    invalidValues[i] = value;
+                }
+            }
+        }
+        _invalidValues = invalidValues;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Returns the time stamp of the last data point at which the trigger is fired. A trigger is fired at a data point if the data point and as
+     * many of its predecessors as are required to cover the inertia of the trigger meet the trigger condition. The number of data points
+     * covering the inertia is derived from the interval between the first two data points.
+     *
+     * @param   trigger  The trigger to evaluate. Cannot be null.
+     *
+     * @return  The time stamp of the last data point at which the trigger is fired or null if the trigger is not fired.
+     *
+     * @throws  NumberFormatException  If a data point that needs to be evaluated has a non-numeric value.
+     */
+    Long getFiredTime(Trigger trigger) {
+        if (_firedTimes.containsKey(trigger)) {
+            return _firedTimes.get(trigger);
+        }
+
+        Long result = _evaluate(trigger);
+
+        _firedTimes.put(trigger, result);
+        return result;
+    }
+
+    private Long _evaluate(Trigger trigger) {
+        int size = _timestamps.length;
+
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return trigger.getInertia().compareTo(0L) <= 0 && _matches(trigger, 0) ? _timestamps[0] : null;
+        }
+
+        long interval = _timestamps[1] - _timestamps[0];
+        long inertia = trigger.getInertia();
+        long inertiaLength = inertia / interval;
+        long windowSize;
+
+        if (inertia < interval) {
+            windowSize = 1;
+        } else if (inertiaLength * interval < inertia) {
+            windowSize = inertiaLength + 2;
+        } else {
+            windowSize = inertiaLength + 1;
+        }
+        if (windowSize > size) {
+            return null;
+        }
+
+        int runEnd = size - 1;
+        int run = 0;
+
+        for (int i = size - 1; i >= 0; i--) {
+            if (_matches(trigger, i)) {
+                if (++run == windowSize) {
+                    return _timestamps[runEnd];
+                }
+            } else {
+                if (i < windowSize) {
+                    return null;
+                }
+                run = 0;
+                runEnd = i - 1;
+            }
+        }
+        return null;
+    }
+
+    private boolean _matches(Trigger trigger, int index) {
+        if (_nulls[index]) {
+            return false;
+        }
+        if (_invalidValues != null && _invalidValues[index] != null) {
+            throw new NumberFormatException("For input string: \"" + _invalidValues[index] + "\"");
+        }
+        return Trigger.evaluateTrigger(trigger, _values[index]);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -130,11 +130,26 @@ public class NoOperationCacheService extends DefaultService implements CacheServ
         // This is a no operation service. This method should do nothing and result in a cache miss.
     }
 
+    @Override
+    public <V> void append(Map<String, List<V>> entries, int ttl) {
+        // This is a no operation service. This method should do nothing and result in a cache miss.
+    }
+
     @Override
     public <V> Map<String, V> getRange(Set<String> keys, int startOffset, int endOffset) {
         return Collections.emptyMap();
     }
 
+    @Override
+    public void appendBytes(Map<String, List<byte[]>> entries, int ttl) {
+        // This is a no operation service. This method should do nothing and result in a cache miss.
+    }
+
+    @Override
+    public Map<String, List<byte[]>> getBytesRange(Set<String> keys, int startOffset, int endOffset) {
+        return Collections.emptyMap();
+    }
+
     @Override
     public Set<String> getKeysByPattern(String pattern) {
         return Collections.emptySet();
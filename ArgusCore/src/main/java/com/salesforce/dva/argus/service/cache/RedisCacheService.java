@@ -42,6 +42,8 @@ import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisCluster;
 import redis.clients.jedis.JedisPool;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -296,6 +298,26 @@ public class RedisCacheService extends DefaultService implements CacheService {
         }
     }
 
+    @Override
+    public <V> void append(Map<String, List<V>> entries, int ttl) {
+        JedisCluster jc = new JedisCluster(jedisClusterNodes, poolConfig);
+
+        try {
+            for (Map.Entry<String, List<V>> entry : entries.entrySet()) {
+                List<V> values = entry.getValue();
+
+                if (values != null && !values.isEmpty()) {
+                    jc.rpush(entry.getKey(), values.toArray(new String[values.size()]));
+                    jc.expire(entry.getKey(), ttl);
+                }
+            }
+        } catch (Exception ex) {
+            _logger.error("Exception in cache service: {} ", ex.getMessage());
+        } finally {
+            jc.close();
+        }
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <V> Map<String, V> getRange(Set<String> keys, int startOffset, int endOffset) {
@@ -312,6 +334,56 @@ public class RedisCacheService extends DefaultService implements CacheService {
         return map;
     }
 
+    /* The cluster client has no binary commands, so binary values are stored as Base64 strings. */
+    @Override
+    public void appendBytes(Map<String, List<byte[]>> entries, int ttl) {
+        Base64.Encoder encoder = Base64.getEncoder();
+        Map<String, List<String>> encoded = new HashMap<>();
+
+        for (Map.Entry<String, List<byte[]>> entry : entries.entrySet()) {
+            List<byte[]> values = entry.getValue();
+
+            if (values != null && !values.isEmpty()) {
+                List<String> strings = new ArrayList<>(values.size());
+
+                for (byte[] value : values) {
+                    strings.add(encoder.encodeToString(value));
+                }
+                encoded.put(entry.getKey(), strings);
+            }
+        }
+        append(encoded, ttl);
+    }
+
+    @Override
+    public Map<String, List<byte[]>> getBytesRange(Set<String> keys, int startOffset, int endOffset) {
+        Map<String, List<String>> encoded = getRange(keys, startOffset, endOffset);
+
+        if (encoded == null) {
+            return null;
+        }
+
+        Base64.Decoder decoder = Base64.getDecoder();
+        Map<String, List<byte[]>> map = new HashMap<>();
+
+        try {
+            for (Map.Entry<String, List<String>> entry : encoded.entrySet()) {
+                List<byte[]> values = new ArrayList<>();
+
+                if (entry.getValue() != null) {
+                    for (String value : entry.getValue()) {
+                        values.add(decoder.decode(value));
+                    }
+                }
+                map.put(entry.getKey(), values);
+            }
+        } catch (IllegalArgumentException ex) {
+            _logger.error("Exception in cache service: {} ", ex.getMessage());
+            map = null;
+        }
+        return map;
+    }
+
     @Override
     public int getCacheExpirationTime() {
         return Integer.parseInt(_config.getValue(Property.REDIS_CACHE_EXPIRY_IN_SEC.getName(), Property.REDIS_CACHE_EXPIRY_IN_SEC.getDefaultValue()));
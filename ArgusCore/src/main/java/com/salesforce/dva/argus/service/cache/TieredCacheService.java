@@ -0,0 +1,592 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.inject.Inject;
+import com.salesforce.dva.argus.service.CacheService;
+import com.salesforce.dva.argus.service.DefaultService;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Two tier cache service implementation. An on-heap, size bounded L1 tier is consulted before the Redis backed L2 tier. The L1 tier holds entries
+ * read from or written through to Redis, evicts the least recently used entries once the total weight of the cached values exceeds the configured
+ * maximum and expires entries no later than the next hour boundary, which is when cached query results expire in Redis.
+ *
+ * <p>Appends invalidate the L1 entry for the key, so that the next read observes the appended values. Pattern based lookups always go to Redis.
+ * Entries are not shared across hosts, so values appended to Redis by another host become visible once the local L1 entry expires.</p>
+ *
+ * <p>Cached values are copied when they are stored and when they are returned, so callers may modify the values they pass in or receive. Every
+ * invalidation advances a generation counter for the key, and a value loaded from Redis is only cached if no invalidation of its key happened
+ * while it was loaded. Otherwise a read racing with an append could cache the value from before the append.</p>
+ *
+ * @author  Dilip Devaraj (ddevaraj@salesforce.com)
+ */
+public class TieredCacheService extends DefaultService implements CacheService {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final String HIT_COUNTER = "cache.l1.hits";
+    private static final String MISS_COUNTER = "cache.l1.misses";
+    private static final String EVICTION_COUNTER = "cache.l1.evictions";
+    private static final long HOUR_IN_MILLIS = 3600 * 1000L;
+    private static final int GENERATION_STRIPES = 1024;
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final Logger _logger = LoggerFactory.getLogger(getClass());
+    private final CacheService _delegate;
+    private final MonitorService _monitorService;
+    private final Cache<String, CachedValue> _cache;
+    private final long _maxExpiryInMillis;
+    private final long[] _generations = new long[GENERATION_STRIPES];
+    private final Object[] _locks = new Object[GENERATION_STRIPES];
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new TieredCacheService object.
+     *
+     * @param  config          The system configuration.  Cannot be null.
+     * @param  monitorService  The monitor service used to report the L1 hit, miss and eviction counters.  Cannot be null.
+     * @param  delegate        The Redis cache service used as the L2 tier.  Cannot be null.
+     */
+    @Inject
+    public TieredCacheService(SystemConfiguration config, MonitorService monitorService, RedisCacheService delegate) {
+        super(config);
+        requireArgument(monitorService != null, "Monitor service cannot be null.");
+        requireArgument(delegate != null, "Delegate cache service cannot be null.");
+        _monitorService = monitorService;
+        _delegate = delegate;
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            _locks[i] = new Object();
+        }
+
+        long maxWeight = Long.parseLong(config.getValue(Property.L1_MAX_WEIGHT.getName(), Property.L1_MAX_WEIGHT.getDefaultValue()));
+
+        _maxExpiryInMillis = 1000L * Integer.parseInt(config.getValue(Property.L1_EXPIRY_IN_SEC.getName(), Property.L1_EXPIRY_IN_SEC.getDefaultValue()));
+        requireArgument(maxWeight > 0, "Maximum L1 cache weight must be greater than 0.");
+        requireArgument(_maxExpiryInMillis > 0, "L1 cache expiry must be greater than 0.");
+        _cache = CacheBuilder.newBuilder().maximumWeight(maxWeight).weigher(new Weigher<String, CachedValue>() {
+
+                    @Override
+                    public int weigh(String key, CachedValue value) {
+                        return value._weight;
+                    }
+                }).removalListener(new RemovalListener<String, CachedValue>() {
+
+                    @Override
+                    public void onRemoval(RemovalNotification<String, CachedValue> notification) {
+                        if (notification.getCause() == RemovalCause.SIZE) {
+                            _monitorService.modifyCustomCounter(EVICTION_COUNTER, 1, null);
+                        }
+                    }
+                }).build();
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /* Approximates the footprint of a cached value by its serialized length. For cached metrics this is proportional to the datapoint count. */
+    private static int weigh(Object value) {
+        long weight;
+
+        if (value instanceof CharSequence) {
+            weight = CharSequence.class.cast(value).length();
+        } else if (value instanceof byte[]) {
+            weight = byte[].class.cast(value).length;
+        } else if (value instanceof Collection) {
+            weight = 0;
+            for (Object item : Collection.class.cast(value)) {
+                weight += weigh(item);
+            }
+        } else {
+            weight = 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, weight));
+    }
+
+    /* Copies the mutable value types stored in the cache. Strings and other values are immutable or opaque and are shared. */
+    @SuppressWarnings("unchecked")
+    private static <V> V copy(V value) {
+        Object result;
+
+        if (value instanceof byte[]) {
+            result = byte[].class.cast(value).clone();
+        } else if (value instanceof List) {
+            List<Object> list = new ArrayList<>(List.class.cast(value).size());
+
+            for (Object item : List.class.cast(value)) {
+                list.add(copy(item));
+            }
+            result = list;
+        } else if (value instanceof Set) {
+            Set<Object> set = new LinkedHashSet<>();
+
+            for (Object item : Set.class.cast(value)) {
+                set.add(copy(item));
+            }
+            result = set;
+        } else if (value instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<>();
+
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                map.put(entry.getKey(), copy(entry.getValue()));
+            }
+            result = map;
+        } else {
+            result = value;
+        }
+        return (V) result;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <V> V get(String key) {
+        CachedValue cached = getCachedValue(key);
+
+        if (cached != null) {
+            countLookups(1, 0);
+            return (V) copy(cached._value);
+        }
+        countLookups(0, 1);
+
+        long generation = getGeneration(key);
+        V value = _delegate.get(key);
+
+        cacheLoadedValue(key, value, generation);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <V> Map<String, V> get(Set<String> keys) {
+        Map<String, V> result = new HashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+
+        for (String key : keys) {
+            CachedValue cached = getCachedValue(key);
+
+            if (cached != null) {
+                result.put(key, (V) copy(cached._value));
+            } else {
+                misses.add(key);
+            }
+        }
+        countLookups(keys.size() - misses.size(), misses.size());
+        if (!misses.isEmpty()) {
+            Map<String, Long> generations = new HashMap<>();
+
+            for (String key : misses) {
+                generations.put(key, getGeneration(key));
+            }
+
+            Map<String, V> loaded = _delegate.get(misses);
+
+            if (loaded == null) {
+                return null;
+            }
+            for (Map.Entry<String, V> entry : loaded.entrySet()) {
+                Long generation = generations.get(entry.getKey());
+
+                if (generation != null) {
+                    cacheLoadedValue(entry.getKey(), entry.getValue(), generation);
+                }
+            }
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    @Override
+    public <V> void put(String key, V value, int ttl) {
+        _delegate.put(key, value, ttl);
+        replaceCachedValue(key, value, System.currentTimeMillis() + ttl * 1000L);
+    }
+
+    @Override
+    public <V> void put(Map<String, V> entries, int ttl) {
+        _delegate.put(entries, ttl);
+
+        long expiry = System.currentTimeMillis() + ttl * 1000L;
+
+        for (Map.Entry<String, V> entry : entries.entrySet()) {
+            replaceCachedValue(entry.getKey(), entry.getValue(), expiry);
+        }
+    }
+
+    @Override
+    public void clear() {
+        _delegate.clear();
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            synchronized (_locks[i]) {
+                _generations[i]++;
+            }
+        }
+        _cache.invalidateAll();
+    }
+
+    @Override
+    public boolean exist(String key) {
+        return getCachedValue(key) != null || _delegate.exist(key);
+    }
+
+    @Override
+    public <V> Map<String, V> getByPattern(String pattern) {
+        return _delegate.getByPattern(pattern);
+    }
+
+    @Override
+    public Set<String> getKeysByPattern(String pattern) {
+        return _delegate.getKeysByPattern(pattern);
+    }
+
+    @Override
+    public <V> void expire(String key, int ttl) {
+        _delegate.expire(key, ttl);
+        expireCachedValue(key, ttl);
+    }
+
+    @Override
+    public <V> void expire(Set<String> keys, int ttl) {
+        _delegate.expire(keys, ttl);
+        for (String key : keys) {
+            expireCachedValue(key, ttl);
+        }
+    }
+
+    @Override
+    public void delete(String key) {
+        _delegate.delete(key);
+        invalidate(key);
+    }
+
+    @Override
+    public void delete(Set<String> keys) {
+        _delegate.delete(keys);
+        invalidate(keys);
+    }
+
+    @Override
+    public Map<String, Boolean> exist(Set<String> keys) {
+        return _delegate.exist(keys);
+    }
+
+    @Override
+    public <V> void append(String key, V value) {
+        _delegate.append(key, value);
+        invalidate(key);
+    }
+
+    @Override
+    public <V> List<V> getRange(String key, int startOffset, int endOffset) {
+        if (!isFullRange(startOffset, endOffset)) {
+            return _delegate.getRange(key, startOffset, endOffset);
+        }
+        Map<String, List<V>> result = getRange(Collections.singleton(key), startOffset, endOffset);
+
+        return result == null ? null : result.get(key);
+    }
+
+    @Override
+    public <V> void append(String key, V value, int ttl) {
+        _delegate.append(key, value, ttl);
+        invalidate(key);
+    }
+
+    @Override
+    public <V> void append(Map<String, List<V>> entries, int ttl) {
+        _delegate.append(entries, ttl);
+        invalidate(entries.keySet());
+    }
+
+    @Override
+    public <V> Map<String, V> getRange(Set<String> keys, int startOffset, int endOffset) {
+        if (!isFullRange(startOffset, endOffset)) {
+            return _delegate.getRange(keys, startOffset, endOffset);
+        }
+        return getFullRange(keys, misses -> _delegate.getRange(misses, startOffset, endOffset));
+    }
+
+    @Override
+    public void appendBytes(Map<String, List<byte[]>> entries, int ttl) {
+        _delegate.appendBytes(entries, ttl);
+        invalidate(entries.keySet());
+    }
+
+    @Override
+    public Map<String, List<byte[]>> getBytesRange(Set<String> keys, int startOffset, int endOffset) {
+        if (!isFullRange(startOffset, endOffset)) {
+            return _delegate.getBytesRange(keys, startOffset, endOffset);
+        }
+        return getFullRange(keys, misses -> _delegate.getBytesRange(misses, startOffset, endOffset));
+    }
+
+    @Override
+    public int getCacheExpirationTime() {
+        return _delegate.getCacheExpirationTime();
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        _cache.invalidateAll();
+        _delegate.dispose();
+    }
+
+    @Override
+    public Properties getServiceProperties() {
+        Properties serviceProps = _delegate.getServiceProperties();
+
+        for (Property property : Property.values()) {
+            serviceProps.put(property.getName(), property.getDefaultValue());
+        }
+        return serviceProps;
+    }
+
+    /* Serves the keys present in the L1 tier and loads only the remaining keys from Redis. */
+    @SuppressWarnings("unchecked")
+    private <V> Map<String, V> getFullRange(Set<String> keys, Function<Set<String>, Map<String, V>> loader) {
+        Map<String, V> result = new HashMap<>();
+        Set<String> misses = new LinkedHashSet<>();
+
+        for (String key : keys) {
+            CachedValue cached = getCachedValue(key);
+
+            if (cached != null) {
+                result.put(key, (V) copy(cached._value));
+            } else {
+                misses.add(key);
+            }
+        }
+        countLookups(keys.size() - misses.size(), misses.size());
+        if (!misses.isEmpty()) {
+            Map<String, Long> generations = new HashMap<>();
+
+            for (String key : misses) {
+                generations.put(key, getGeneration(key));
+            }
+
+            Map<String, V> loaded = loader.apply(misses);
+
+            if (loaded == null) {
+                return null;
+            }
+            for (Map.Entry<String, V> entry : loaded.entrySet()) {
+                Long generation = generations.get(entry.getKey());
+
+                if (generation != null) {
+                    cacheLoadedValue(entry.getKey(), entry.getValue(), generation);
+                }
+            }
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    private boolean isFullRange(int startOffset, int endOffset) {
+        return startOffset == 0 && endOffset == -1;
+    }
+
+    private CachedValue getCachedValue(String key) {
+        CachedValue cached = _cache.getIfPresent(key);
+
+        if (cached != null && cached._expiry <= System.currentTimeMillis()) {
+            _cache.invalidate(key);
+            cached = null;
+        }
+        return cached;
+    }
+
+    private int getStripe(String key) {
+        return key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+    }
+
+    private long getGeneration(String key) {
+        int stripe = getStripe(key);
+
+        synchronized (_locks[stripe]) {
+            return _generations[stripe];
+        }
+    }
+
+    /* Invalidation must follow the write to Redis, so that a value loaded in between is discarded by its generation check. */
+    private void invalidate(String key) {
+        int stripe = getStripe(key);
+
+        synchronized (_locks[stripe]) {
+            _generations[stripe]++;
+            _cache.invalidate(key);
+        }
+    }
+
+    private void invalidate(Collection<String> keys) {
+        for (String key : keys) {
+            invalidate(key);
+        }
+    }
+
+    /*
+     * Values read from Redis expire no later than the next hour boundary. Empty values are not cached since callers treat them as misses. The value
+     * is discarded if the key was invalidated after the given generation was read.
+     */
+    private void cacheLoadedValue(String key, Object value, long generation) {
+        long now = System.currentTimeMillis();
+        int stripe = getStripe(key);
+
+        synchronized (_locks[stripe]) {
+            if (_generations[stripe] == generation) {
+                cacheValue(key, value, Math.min(now + _maxExpiryInMillis, (now / HOUR_IN_MILLIS + 1) * HOUR_IN_MILLIS));
+            }
+        }
+    }
+
+    /* Discards values being loaded concurrently, which may predate the written value. */
+    private void replaceCachedValue(String key, Object value, long expiry) {
+        int stripe = getStripe(key);
+
+        synchronized (_locks[stripe]) {
+            _generations[stripe]++;
+            _cache.invalidate(key);
+            cacheValue(key, value, expiry);
+        }
+    }
+
+    private void cacheValue(String key, Object value, long expiry) {
+        if (key == null || value == null || (value instanceof Collection && Collection.class.cast(value).isEmpty())) {
+            return;
+        }
+        _cache.put(key, new CachedValue(copy(value), Math.min(expiry, System.currentTimeMillis() + _maxExpiryInMillis)));
+    }
+
+    private void expireCachedValue(String key, int ttl) {
+        synchronized (_locks[getStripe(key)]) {
+            CachedValue cached = _cache.getIfPresent(key);
+
+            if (cached != null) {
+                _cache.put(key, new CachedValue(cached._value, Math.min(cached._expiry, System.currentTimeMillis() + ttl * 1000L)));
+            }
+        }
+    }
+
+    private void countLookups(int hits, int misses) {
+        if (hits > 0) {
+            _monitorService.modifyCustomCounter(HIT_COUNTER, hits, null);
+        }
+        if (misses > 0) {
+            _monitorService.modifyCustomCounter(MISS_COUNTER, misses, null);
+        }
+        _logger.debug("L1 cache lookups: {} hits, {} misses.", hits, misses);
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * Enumerates the implementation specific configuration properties.
+     *
+     * @author  Dilip Devaraj (ddevaraj@salesforce.com)
+     */
+    public enum Property {
+
+        /** The maximum total weight of the L1 tier, measured in characters or bytes of cached values. */
+        L1_MAX_WEIGHT("service.property.cache.l1.max.weight", "67108864"),
+        /** The maximum time in seconds an entry is kept in the L1 tier. */
+        L1_EXPIRY_IN_SEC("service.property.cache.l1.expiry.in.sec", "3600");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * An L1 cache entry along with its expiry time and weight.
+     *
+     * @author  Dilip Devaraj (ddevaraj@salesforce.com)
+     */
+    private static final class CachedValue {
+
+        private final Object _value;
+        private final long _expiry;
+        private final int _weight;
+
+        CachedValue(Object value, long expiry) {
+            _value = value;
+            _expiry = expiry;
+            _weight = weigh(value);
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
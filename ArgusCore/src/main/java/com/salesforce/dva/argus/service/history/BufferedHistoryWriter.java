@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.history;
+
+import com.salesforce.dva.argus.entity.History;
+import com.salesforce.dva.argus.entity.History.JobStatus;
+import com.salesforce.dva.argus.entity.JPAEntity;
+import com.salesforce.dva.argus.service.HistoryService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Buffers job history state transitions in memory and writes them in batches. Changes are applied to the history objects immediately, so that
+ * callers always observe the current state, and the changed objects are written within a single transaction by a background thread. A write
+ * is performed once the flush interval has elapsed after the first pending change and whenever the number of changed objects reaches the buffer
+ * size. All writers share a single background thread and an idle writer holds no scheduled task, so writers need not be closed to be
+ * reclaimed.
+ *
+ * <p>The history objects are written as they are, so changes and writes of a writer exclude each other: a change waits while a write of the
+ * same writer is in progress, and the ID assigned by a write is visible to the threads that change the object afterwards. History objects
+ * passed to a writer must only be changed through it.</p>
+ *
+ * <p>Changes that are not yet written are lost if the process terminates without closing the writer. If writes fail, at most twice the buffer
+ * size of changed objects is retained for the next attempt and further changes are discarded until a write succeeds. Closing the writer writes
+ * all pending changes.</p>
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+public class BufferedHistoryWriter {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BufferedHistoryWriter.class);
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "history-writer");
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final HistoryService _historyService;
+    private final int _bufferSize;
+    private final Set<History> _pending = Collections.newSetFromMap(new IdentityHashMap<History, Boolean>());
+    private final Object _writeLock = new Object();
+    private final long _flushInterval;
+    private final AtomicBoolean _flushRequested = new AtomicBoolean(false);
+    private ScheduledFuture<?> _scheduledFlush;
+    private boolean _closed;
+    private long _discarded;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new BufferedHistoryWriter object.
+     *
+     * @param  historyService  The history service used to write the changes. Cannot be null.
+     * @param  bufferSize      The number of changed history objects at which a write is triggered. Must be greater than zero.
+     * @param  flushInterval   The time in milliseconds after which pending changes are written. Must be greater than zero.
+     */
+    public BufferedHistoryWriter(HistoryService historyService, int bufferSize, long flushInterval) {
+        requireArgument(historyService != null, "History service cannot be null.");
+        requireArgument(bufferSize > 0, "Buffer size must be greater than zero.");
+        requireArgument(flushInterval > 0, "Flush interval must be greater than zero.");
+        _historyService = historyService;
+        _bufferSize = bufferSize;
+        _flushInterval = flushInterval;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Creates a new job history record. The record is assigned its ID once it is written.
+     *
+     * @param   message        The message.
+     * @param   entity         The entity to which the job history will be attached.
+     * @param   jobStatus      The status of the job.
+     * @param   waitTime       Job waiting time in MS.
+     * @param   executionTime  Total job execution time in MS.
+     *
+     * @return  The job history record.
+     */
+    public History createHistory(String message, JPAEntity entity, JobStatus jobStatus, long waitTime, long executionTime) {
+        History history = new History(message, SystemConfiguration.getHostname(), entity, jobStatus, waitTime, executionTime);
+
+        _markPending(history);
+        return history;
+    }
+
+    /**
+     * Appends a message to a job history record and updates its status and times.
+     *
+     * @param   history        The job history record to update. Cannot be null.
+     * @param   message        The message to append.
+     * @param   jobStatus      The new status of the job or null to retain the current status.
+     * @param   waitTime       Job waiting time in MS. Ignored unless positive.
+     * @param   executionTime  Total job execution time in MS. Ignored unless positive.
+     *
+     * @return  The updated job history record.
+     */
+    public History appendMessageAndUpdate(History history, String message, JobStatus jobStatus, long waitTime, long executionTime) {
+        requireArgument(history != null, "Job history cannot be null.");
+        synchronized (_writeLock) {
+            if (message != null && message.length() > 0) {
+                history.setMessage(history.getMessage() + message);
+            }
+            if (jobStatus != null) {
+                history.setJobStatus(jobStatus);
+            }
+            if (waitTime > 0) {
+                history.setWaitTime(waitTime);
+            }
+            if (executionTime > 0) {
+                history.setExecutionTime(executionTime);
+            }
+            _markPending(history);
+        }
+        return history;
+    }
+
+    /** Writes all pending changes on the calling thread. Changes made through this writer wait until the write completes. */
+    public void flush() {
+        synchronized (_writeLock) {
+            List<History> histories;
+
+            synchronized (_pending) {
+                histories = new ArrayList<>(_pending);
+                _pending.clear();
+            }
+            if (histories.isEmpty()) {
+                return;
+            }
+            try {
+                _historyService.updateHistories(histories);
+            } catch (RuntimeException ex) {
+                _retain(histories);
+                throw ex;
+            }
+        }
+    }
+
+    /** Cancels the scheduled write and writes all pending changes on the calling thread. Subsequent changes are only written by {@link #flush()}. */
+    public void close() {
+        synchronized (_pending) {
+            _closed = true;
+            if (_scheduledFlush != null) {
+                _scheduledFlush.cancel(false);
+                _scheduledFlush = null;
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Returns the number of changed history objects that are not written yet.
+     *
+     * @return  The number of pending history objects.
+     */
+    public int getPendingCount() {
+        synchronized (_pending) {
+            return _pending.size();
+        }
+    }
+
+    private void _markPending(History history) {
+        boolean full;
+
+        synchronized (_pending) {
+            if (_pending.size() >= 2 * _bufferSize && !_pending.contains(history)) {
+                _discarded++;
+                LOGGER.warn("Job history buffer is full. Discarded {} changes so far.", _discarded);
+                return;
+            }
+            _pending.add(history);
+            if (_closed) {
+                return;
+            }
+            _scheduleFlush();
+            full = _pending.size() >= _bufferSize;
+        }
+        if (full && _flushRequested.compareAndSet(false, true)) {
+            EXECUTOR.execute(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        _flushRequested.set(false);
+                        _flushQuietly();
+                    }
+                });
+        }
+    }
+
+    /* Must be called while holding the lock on the pending changes. */
+    private void _scheduleFlush() {
+        if (_scheduledFlush != null) {
+            return;
+        }
+        _scheduledFlush = EXECUTOR.schedule(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        synchronized (_pending) {
+                            _scheduledFlush = null;
+                        }
+                        _flushQuietly();
+                        synchronized (_pending) {
+                            if (!_pending.isEmpty() && !_closed) {
+                                _scheduleFlush();
+                            }
+                        }
+                    }
+                }, _flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void _retain(List<History> histories) {
+        synchronized (_pending) {
+            for (History history : histories) {
+                if (_pending.size() < 2 * _bufferSize) {
+                    _pending.add(history);
+                } else if (!_pending.contains(history)) {
+                    _discarded++;
+                }
+            }
+        }
+    }
+
+    private void _flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Failed to write job history. Reason: {}", ex.toString());
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -45,6 +45,7 @@ import com.salesforce.dva.argus.system.SystemException;
 import org.slf4j.Logger;
 import java.math.BigInteger;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.EntityManager;
 
@@ -192,5 +193,34 @@ public class DefaultHistoryService extends DefaultJPAService implements HistoryS
         }
         return updateHistory(history);
     }
+
+    @Override
+    @Transactional
+    public void updateHistories(List<History> histories) {
+        requireNotDisposed();
+        requireArgument(histories != null, "The list of job history records cannot be null.");
+
+        EntityManager em = emf.get();
+        List<History> written = new ArrayList<>(histories.size());
+
+        for (History history : histories) {
+            if (history.getId() == null) {
+                JPAEntity entity = history.getEntity();
+
+                if (entity != null) {
+                    history.setEntity(em.find(JPAEntity.class, entity.getId()));
+                }
+                em.persist(history);
+                written.add(history);
+            } else {
+                written.add(mergeEntity(em, history));
+            }
+        }
+        em.flush();
+        for (History history : written) {
+            em.detach(history);
+        }
+        _logger.debug("Updated {} job history objects.", histories.size());
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -44,9 +44,19 @@ import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.system.SystemException;
 import org.slf4j.Logger;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
 
@@ -57,6 +67,11 @@ import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
  */
 public class DefaultMetricService extends DefaultService implements MetricService {
 
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final String COALESCED_QUERIES_COUNTER = "metrics.query.coalesced";
+    private static final String TRANSFORM_CPU_TIME_COUNTER = "metrics.transform.cputime";
+
     //~ Instance fields ******************************************************************************************************************************
 
     @SLF4JTypeListener.InjectLogger
@@ -64,6 +79,10 @@ public class DefaultMetricService extends DefaultService implements MetricServic
     private final MonitorService _monitorService;
     private final Provider<MetricReader<Metric>> _metricReaderProviderForMetrics;
     private final Provider<MetricReader<MetricQuery>> _metricReaderProviderForQueries;
+    private final boolean _downsamplePushdown;
+    private final int _transformParallelism;
+    private final ExecutorService _leafExecutor;
+    private final ExecutorService _transformExecutor;
 
     //~ Constructors *********************************************************************************************************************************
 
@@ -83,6 +102,18 @@ public class DefaultMetricService extends DefaultService implements MetricServic
         _monitorService = monitorService;
         _metricReaderProviderForMetrics = metricsprovider;
         _metricReaderProviderForQueries = queryprovider;
+        _downsamplePushdown = Boolean.parseBoolean(config.getValue(Property.DOWNSAMPLE_PUSHDOWN.getName(),
+                Property.DOWNSAMPLE_PUSHDOWN.getDefaultValue()));
+        _transformParallelism = Integer.parseInt(config.getValue(Property.TRANSFORM_PARALLELISM.getName(),
+                Property.TRANSFORM_PARALLELISM.getDefaultValue()));
+        requireArgument(_transformParallelism > 0, "Transform parallelism must be positive.");
+
+        int leafFetchThreads = Integer.parseInt(config.getValue(Property.LEAF_FETCH_THREADS.getName(),
+                Property.LEAF_FETCH_THREADS.getDefaultValue()));
+
+        requireArgument(leafFetchThreads > 0, "Leaf fetch threads must be positive.");
+        _leafExecutor = _createLeafExecutor(leafFetchThreads);
+        _transformExecutor = _createTransformExecutor();
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -111,16 +142,29 @@ public class DefaultMetricService extends DefaultService implements MetricServic
         SystemAssert.requireArgument(MetricReader.isValid(expressions), "Illegal metric expression found: " + expressions);
 
         MetricReader<Metric> reader = _metricReaderProviderForMetrics.get();
-        List<Metric> metrics = new ArrayList<>(expressions.size());
+        List<Metric> metrics;
+
+        reader.setDownsamplePushdown(_downsamplePushdown);
+        reader.setTransformParallelism(_transformParallelism);
+        reader.setExecutors(_leafExecutor, _transformExecutor);
 
         try {
-            for (String expression : expressions) {
-                _logger.debug("Reading metric for expression {}", expression);
-                metrics.addAll(reader.parse(expression, offset, Metric.class));
-            }
+            _logger.debug("Reading metrics for expressions {}", expressions);
+            metrics = reader.parse(expressions, offset, Metric.class);
         } catch (ParseException ex) {
             throw new SystemException("Failed to parse the given expression", ex);
         }
+
+        int savedQueries = reader.getSavedQueryCount();
+
+        if (savedQueries > 0) {
+            _logger.debug("Coalescing saved {} TSDB queries for expressions {}", savedQueries, expressions);
+            _monitorService.modifyCustomCounter(COALESCED_QUERIES_COUNTER, savedQueries, null);
+        }
+        for (Map.Entry<String, Long> entry : reader.getTransformCpuTimes().entrySet()) {
+            _monitorService.modifyCustomCounter(TRANSFORM_CPU_TIME_COUNTER, entry.getValue() / 1000000.0,
+                Collections.singletonMap("transform", entry.getKey()));
+        }
         _monitorService.modifyCounter(Counter.DATAPOINT_READS, _getDatapointsAcrossMetrics(metrics), null);
         return metrics;
     }
@@ -149,25 +193,59 @@ public class DefaultMetricService extends DefaultService implements MetricServic
         SystemAssert.requireArgument(MetricReader.isValid(expressions), "Illegal metric expression found: " + expressions);
 
         MetricReader<MetricQuery> reader = _metricReaderProviderForQueries.get();
-        List<MetricQuery> queries = new ArrayList<>(expressions.size());
 
+        reader.setExecutors(_leafExecutor, _transformExecutor);
         try {
-            for (String expression : expressions) {
-                _logger.debug("Creating metric query for expression {}", expression);
-                queries.addAll(reader.parse(expression, offset, MetricQuery.class));
-            }
+            _logger.debug("Creating metric queries for expressions {}", expressions);
+            return reader.parse(expressions, offset, MetricQuery.class);
         } catch (ParseException ex) {
             throw new SystemException("Failed to parse the given expression", ex);
         }
-        return queries;
     }
 
     @Override
     public void dispose() {
         super.dispose();
+        _leafExecutor.shutdownNow();
+        _transformExecutor.shutdownNow();
         // _tsdbService.dispose();
     }
 
+    /* Idle threads time out, so services that never evaluate an expression hold no threads. */
+    private ExecutorService _createLeafExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory() {
+
+                private final AtomicInteger _id = new AtomicInteger(0);
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "metricservice-leaf-" + _id.incrementAndGet());
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private ExecutorService _createTransformExecutor() {
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+                private final AtomicInteger _id = new AtomicInteger(0);
+
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+
+                    thread.setName("metricservice-transform-" + _id.incrementAndGet());
+                    return thread;
+                }
+            }, null, false);
+    }
+
     private long _getDatapointsAcrossMetrics(List<Metric> metrics) {
         long dataPointsSize = 0;
 
@@ -176,5 +254,58 @@ public class DefaultMetricService extends DefaultService implements MetricServic
         }
         return dataPointsSize;
     }
+
+    @Override
+    public Properties getServiceProperties() {
+        Properties serviceProps = new Properties();
+
+        for (Property property : Property.values()) {
+            serviceProps.put(property.getName(), property.getDefaultValue());
+        }
+        return serviceProps;
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * The set of implementation specific configuration properties.
+     *
+     * @author  Bhinav Sura (bhinav.sura@salesforce.com)
+     */
+    public enum Property {
+
+        /** Indicates whether DOWNSAMPLE functions over a single expression are pushed into the TSDB query. */
+        DOWNSAMPLE_PUSHDOWN("service.property.metric.downsample.pushdown", "false"),
+        /** The maximum number of series chunks a single request transforms concurrently. One disables parallel transforms. */
+        TRANSFORM_PARALLELISM("service.property.metric.transform.parallelism", "1"),
+        /** The number of threads the service shares between its requests to discover the queries of leaf expressions concurrently. */
+        LEAF_FETCH_THREADS("service.property.metric.leaf.fetch.threads", "32");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
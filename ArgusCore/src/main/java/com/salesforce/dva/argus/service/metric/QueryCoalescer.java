@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
+
+/**
+ * Fetches the leaf queries of one or more metric expressions with as few TSDB queries as possible. Identical queries are fetched once and every
+ * original query receives its own copy of the result. Queries whose windows merely overlap are not merged: when the TSDB aggregates several series
+ * it interpolates each series at the timestamps of the others, using the neighbouring points of the series. A wider window exposes points beyond
+ * the original edges to this interpolation, so the aggregated values near the edges of a merged and sliced result could differ from those of the
+ * original query. An instance is meant to be used for a single request.
+ *
+ * @author  Bhinav Sura (bhinav.sura@salesforce.com)
+ */
+class QueryCoalescer {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final TSDBService _tsdbService;
+    private int _requestedQueries;
+    private int _fetchedQueries;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new QueryCoalescer object.
+     *
+     * @param  tsdbService  The TSDB service used to fetch the merged queries. Cannot be null.
+     */
+    QueryCoalescer(TSDBService tsdbService) {
+        requireArgument(tsdbService != null, "TSDB service cannot be null.");
+        _tsdbService = tsdbService;
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Fetches the metrics for the given queries.
+     *
+     * @param   queries  The queries to fetch. Cannot be null, but may contain queries for the same series more than once.
+     *
+     * @return  The metrics for each query, in the same order as the given queries. Never null.
+     */
+    List<List<Metric>> getMetrics(List<MetricQuery> queries) {
+        requireArgument(queries != null, "Queries cannot be null.");
+
+        List<Fetch> fetches = _plan(queries);
+        List<MetricQuery> fetchQueries = new ArrayList<>(fetches.size());
+
+        for (Fetch fetch : fetches) {
+            fetchQueries.add(fetch.query);
+        }
+
+        // The TSDB service may modify the queries it is given, so the results are matched back to the fetches by identity.
+        Map<MetricQuery, List<Metric>> fetched = new IdentityHashMap<>();
+
+        if (!fetchQueries.isEmpty()) {
+            fetched.putAll(_tsdbService.getMetrics(fetchQueries));
+        }
+
+        List<List<Metric>> result = new ArrayList<>(Collections.<List<Metric>>nCopies(queries.size(), null));
+
+        for (Fetch fetch : fetches) {
+            List<Metric> metrics = fetched.get(fetch.query);
+
+            if (metrics == null) {
+                metrics = Collections.emptyList();
+            }
+            if (fetch.members.size() == 1) {
+                result.set(fetch.members.get(0), new ArrayList<>(metrics));
+                continue;
+            }
+            for (int index : fetch.members) {
+                result.set(index, _copy(metrics, queries.get(index)));
+            }
+        }
+        _requestedQueries += queries.size();
+        _fetchedQueries += fetches.size();
+        return result;
+    }
+
+    /**
+     * Returns the number of TSDB queries that were avoided by merging.
+     *
+     * @return  The number of saved TSDB queries.
+     */
+    int getSavedQueryCount() {
+        return _requestedQueries - _fetchedQueries;
+    }
+
+    private List<Fetch> _plan(List<MetricQuery> queries) {
+        Map<List<Object>, Fetch> fetches = new LinkedHashMap<>();
+
+        for (int i = 0; i < queries.size(); i++) {
+            MetricQuery query = queries.get(i);
+            List<Object> key = _getKey(query);
+            Fetch fetch = fetches.get(key);
+
+            if (fetch == null) {
+                fetches.put(key, new Fetch(query, i));
+            } else {
+                fetch.members.add(i);
+            }
+        }
+        return new ArrayList<>(fetches.values());
+    }
+
+    private List<Object> _getKey(MetricQuery query) {
+        Map<String, String> tags = new TreeMap<>(query.getTags());
+
+        return Arrays.<Object>asList(query.getNamespace(), query.getScope(), query.getMetric(), tags, query.getAggregator(), query.getDownsampler(),
+            query.getDownsamplingPeriod(), query.getStartTimestamp(), query.getEndTimestamp());
+    }
+
+    private List<Metric> _copy(List<Metric> metrics, MetricQuery query) {
+        List<Metric> result = new ArrayList<>(metrics.size());
+
+        for (Metric metric : metrics) {
+            Metric copy = new Metric(metric);
+
+            copy.setQuery(query);
+            result.add(copy);
+        }
+        return result;
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /** A query sent to the TSDB together with the positions of the identical original queries it answers. */
+    private static final class Fetch {
+
+        private final MetricQuery query;
+        private final List<Integer> members = new ArrayList<>();
+
+        private Fetch(MetricQuery query, int index) {
+            this.query = query;
+            members.add(index);
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
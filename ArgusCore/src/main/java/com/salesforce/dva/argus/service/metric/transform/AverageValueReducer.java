@@ -38,7 +38,7 @@ import java.util.List;
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
-public class AverageValueReducer implements ValueReducer {
+public class AverageValueReducer implements ValueReducer, ColumnReducer {
 
     //~ Methods **************************************************************************************************************************************
 
@@ -55,6 +55,18 @@ public class AverageValueReducer implements ValueReducer {
         return String.valueOf(sum / values.size());
     }
 
+    @Override
+    public String reduceColumn(DatapointColumns column, List<String> constants) {
+        double sum = 0.0;
+
+        for (int i = 0; i < column.size(); i++) {
+            if (!column.isNull(i)) {
+                sum += column.getDouble(i);
+            }
+        }
+        return String.valueOf(sum / column.size());
+    }
+
     @Override
     public String name() {
         return TransformFactory.Function.AVERAGE.name();
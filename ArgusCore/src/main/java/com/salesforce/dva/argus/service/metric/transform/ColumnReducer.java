@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.metric.transform;
+
+import java.util.List;
+
+/**
+ * A value reducer that operates directly on the aligned columns of a {@link DatapointColumns} cursor instead of a collated list of strings. Reducers
+ * implementing this interface must return exactly what their string based counterpart returns for the same column.
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+interface ColumnReducer {
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Reduces the values at the current timestamp of the cursor.
+     *
+     * @param   column     The cursor positioned on the column to reduce. Cannot be null.
+     * @param   constants  The transform constants. May be null for reducers that do not take constants.
+     *
+     * @return  The reduced value. May be null.
+     *
+     * @throws  NumberFormatException  If a value is not numeric and the reducer cannot handle it without the collated string path.
+     */
+    String reduceColumn(DatapointColumns column, List<String> constants);
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
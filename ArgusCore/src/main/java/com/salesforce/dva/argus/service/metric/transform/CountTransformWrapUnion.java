@@ -31,11 +31,10 @@
 	 
 package com.salesforce.dva.argus.service.metric.transform;
 
+import com.salesforce.dva.argus.entity.DatapointSeries;
 import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.system.SystemAssert;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Prepare the datapoints of every metric for count transform.
@@ -58,9 +57,7 @@ public class CountTransformWrapUnion implements Transform {
             return metrics;
         }
         for (Metric metric : metrics) {
-            Map<Long, String> resetDatapoints = resetDatapointsValueAsOne(metric.getDatapoints());
-
-            metric.setDatapoints(resetDatapoints);
+            resetDatapointsValueAsOne(metric);
         }
 
         Transform unionTransform = new MetricUnionTransform(new CountValueUnionReducer());
@@ -68,13 +65,13 @@ public class CountTransformWrapUnion implements Transform {
         return unionTransform.transform(metrics);
     }
 
-    private Map<Long, String> resetDatapointsValueAsOne(Map<Long, String> originalDatapoints) {
-        Map<Long, String> newDatapoints = new HashMap<Long, String>();
+    /* Replaces the values in place so that the timestamp column is reused rather than rebuilt. */
+    private void resetDatapointsValueAsOne(Metric metric) {
+        DatapointSeries series = metric.getDatapointSeries();
 
-        for (Map.Entry<Long, String> entry : originalDatapoints.entrySet()) {
-            newDatapoints.put(entry.getKey(), "1.0");
+        for (int i = 0; i < series.size(); i++) {
+            metric.addDatapoint(series.getTimestamp(i), "1.0");
         }
-        return newDatapoints;
     }
 
     @Override
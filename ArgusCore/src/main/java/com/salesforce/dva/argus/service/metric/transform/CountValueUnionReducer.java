@@ -39,7 +39,7 @@ import java.util.List;
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
-public class CountValueUnionReducer implements ValueReducer {
+public class CountValueUnionReducer implements ValueReducer, ColumnReducer {
 
     //~ Methods **************************************************************************************************************************************
 
@@ -56,6 +56,18 @@ public class CountValueUnionReducer implements ValueReducer {
         return String.valueOf(sum);
     }
 
+    @Override
+    public String reduceColumn(DatapointColumns column, List<String> constants) {
+        double sum = 0.0;
+
+        for (int i = 0; i < column.size(); i++) {
+            if (!column.isNull(i)) {
+                sum += column.getDouble(i);
+            }
+        }
+        return String.valueOf(sum);
+    }
+
     @Override
     public String name() {
         return TransformFactory.Function.COUNT.name();
@@ -0,0 +1,316 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.metric.transform;
+
+import com.salesforce.dva.argus.entity.DatapointSeries;
+import com.salesforce.dva.argus.entity.Metric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cursor that aligns the data points of several metrics on their shared, sorted timestamp axis. Each step of the cursor exposes one column, the
+ * values that the metrics have at a single timestamp, in the same order as the metrics were supplied. This is equivalent to collating the data
+ * points into a <tt>Map&lt;Long, List&lt;String&gt;&gt;</tt> but reads the columnar series directly, so numeric values are served from the
+ * primitive column of each series without boxing or re-parsing.
+ *
+ * <p>Columns are produced by a k-way merge over the series, so iterating all columns takes O(n log m) time for n data points and m metrics.</p>
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+final class DatapointColumns {
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final DatapointSeries[] _series;
+    private final int[] _cursors;
+    private final int[] _heap;
+    private final int[] _members;
+    private final int[] _positions;
+    private int _heapSize;
+    private int _size;
+    private long _timestamp;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new cursor positioned before the first column.
+     *
+     * @param  metrics  The metrics to align. Cannot be null.
+     */
+    DatapointColumns(List<Metric> metrics) {
+        int count = metrics.size();
+
+        _series = new DatapointSeries[count];
+        _cursors = new int[count];
+        _heap = new int[count];
+        _members = new int[count];
+        _positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            _series[i] = metrics.get(i).getDatapointSeries();
+            if (!_series[i].isEmpty()) {
+                _heap[_heapSize++] = i;
+            }
+        }
+        for (int i = _heapSize / 2 - 1; i >= 0; i--) {
+            _siftDown(i);
+        }
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Reduces the metrics column by column into the given result, appending the reduced data points in ascending timestamp order.
+     *
+     * @param   metrics      The metrics to reduce. Cannot be null.
+     * @param   reducer      The column reducer. Cannot be null.
+     * @param   constants    The transform constants passed to the reducer. May be null.
+     * @param   requireAll   If true, timestamps that are not present in every metric are skipped.
+     * @param   result       The metric that receives the reduced data points. Cannot be null.
+     *
+     * @return  True if the metrics were reduced. False if a value could not be read numerically, in which case the result is left unchanged and
+     *          the caller must fall back to the collated string path.
+     */
+    static boolean reduce(List<Metric> metrics, ColumnReducer reducer, List<String> constants, boolean requireAll, Metric result) {
+        return _collect(metrics, reducer, constants, requireAll, false, result);
+    }
+
+    /**
+     * Performs a columnar union of the metrics into the given result. Timestamps present in every metric are reduced, all others take the value
+     * of the last metric having a data point at that timestamp.
+     *
+     * @param   metrics  The metrics to merge. Cannot be null.
+     * @param   reducer  The column reducer applied to the shared timestamps. Cannot be null.
+     * @param   result   The metric that receives the merged data points. Cannot be null.
+     *
+     * @return  True if the metrics were merged. False if a value could not be read numerically, in which case the result is left unchanged and
+     *          the caller must fall back to the collated string path.
+     */
+    static boolean union(List<Metric> metrics, ColumnReducer reducer, Metric result) {
+        return _collect(metrics, reducer, null, false, true, result);
+    }
+
+    private static boolean _collect(List<Metric> metrics, ColumnReducer reducer, List<String> constants, boolean requireAll, boolean union,
+        Metric result) {
+        DatapointColumns column = new DatapointColumns(metrics);
+        long[] timestamps = new long[16];
+        String[] values = new String[16];
+        int size = 0;
+
+        try {
+            while (column.next()) {
+                boolean complete = column.isComplete();
+
+                if (requireAll && !complete) {
+                    continue;
+                }
+                if (size == timestamps.length) {
+                    timestamps = Arrays.copyOf(timestamps, size << 1);
+                    values = Arrays.copyOf(values, size << 1);
+                }
+                timestamps[size] = column.timestamp();
+                values[size++] = union && !complete ? column.getValue(column.size() - 1) : reducer.reduceColumn(column, constants);
+            }
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            result.addDatapoint(timestamps[i], values[i]);
+        }
+        return true;
+    }
+
+    /**
+     * Advances the cursor to the next timestamp.
+     *
+     * @return  True if the cursor is positioned on a column, false if all data points have been consumed.
+     */
+    boolean next() {
+        _size = 0;
+        if (_heapSize == 0) {
+            return false;
+        }
+        _timestamp = _head(_heap[0]);
+        while (_heapSize > 0 && _head(_heap[0]) == _timestamp) {
+            int series = _heap[0];
+
+            _members[_size] = series;
+            _positions[_size++] = _cursors[series]++;
+            if (_cursors[series] == _series[series].size()) {
+                _heap[0] = _heap[--_heapSize];
+            }
+            _siftDown(0);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the timestamp of the current column.
+     *
+     * @return  The timestamp.
+     */
+    long timestamp() {
+        return _timestamp;
+    }
+
+    /**
+     * Returns the number of values in the current column.
+     *
+     * @return  The number of metrics having a data point at the current timestamp.
+     */
+    int size() {
+        return _size;
+    }
+
+    /**
+     * Indicates whether every metric has a data point at the current timestamp.
+     *
+     * @return  True if the column is complete.
+     */
+    boolean isComplete() {
+        return _size == _series.length;
+    }
+
+    /**
+     * Returns a value of the current column exactly as it was stored.
+     *
+     * @param   index  The position within the column.
+     *
+     * @return  The value. May be null.
+     */
+    String getValue(int index) {
+        return _series[_members[index]].getValue(_positions[index]);
+    }
+
+    /**
+     * Returns a value of the current column as a double.
+     *
+     * @param   index  The position within the column.
+     *
+     * @return  The numeric value or <tt>NaN</tt> if the stored value is null.
+     *
+     * @throws  NumberFormatException  If the series the value belongs to contains a value that is not numeric.
+     */
+    double getDouble(int index) {
+        return _series[_members[index]].getDoubleValue(_positions[index]);
+    }
+
+    /**
+     * Indicates whether a value of the current column is null.
+     *
+     * @param   index  The position within the column.
+     *
+     * @return  True if the value is null.
+     */
+    boolean isNull(int index) {
+        return getValue(index) == null;
+    }
+
+    /**
+     * Indicates whether the current column contains a null value.
+     *
+     * @return  True if any value is null.
+     */
+    boolean hasNulls() {
+        for (int i = 0; i < _size; i++) {
+            if (isNull(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the numeric values of the current column.
+     *
+     * @return  The numeric values in column order.
+     */
+    double[] getDoubles() {
+        double[] result = new double[_size];
+
+        for (int i = 0; i < _size; i++) {
+            result[i] = getDouble(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of the values of the current column in the collated form used by the string based reducers.
+     *
+     * @return  The values in column order.
+     */
+    List<String> getValues() {
+        List<String> result = new ArrayList<>(_size);
+
+        for (int i = 0; i < _size; i++) {
+            result.add(getValue(i));
+        }
+        return result;
+    }
+
+    private long _head(int series) {
+        return _series[series].getTimestamp(_cursors[series]);
+    }
+
+    /* Orders the heap by the next timestamp of each series, breaking ties by metric order so that columns are filled in metric order. */
+    private boolean _less(int left, int right) {
+        long a = _head(left);
+        long b = _head(right);
+
+        return a < b || (a == b && left < right);
+    }
+
+    private void _siftDown(int index) {
+        int node = index;
+
+        while (true) {
+            int child = 2 * node + 1;
+
+            if (child >= _heapSize) {
+                return;
+            }
+            if (child + 1 < _heapSize && _less(_heap[child + 1], _heap[child])) {
+                child++;
+            }
+            if (!_less(_heap[child], _heap[node])) {
+                return;
+            }
+
+            int swap = _heap[node];
+
+            _heap[node] = _heap[child];
+            _heap[child] = swap;
+            node = child;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -45,7 +45,7 @@ import java.util.TreeMap;
  *
  * @author  Raj Sarkapally (rsarkapally@salesforce.com)
  */
-public class DerivativeTransform implements Transform {
+public class DerivativeTransform implements SeriesTransform {
 
     //~ Methods **************************************************************************************************************************************
 
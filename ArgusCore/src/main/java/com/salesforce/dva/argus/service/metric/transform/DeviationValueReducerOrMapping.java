@@ -51,7 +51,7 @@ import java.util.TreeMap;
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
-public class DeviationValueReducerOrMapping implements ValueReducerOrMapping {
+public class DeviationValueReducerOrMapping implements ValueReducerOrMapping, ColumnReducer {
 
     //~ Static fields/initializers *******************************************************************************************************************
 
@@ -71,6 +71,15 @@ public class DeviationValueReducerOrMapping implements ValueReducerOrMapping {
         return calculateDeviation(values, tolerance);
     }
 
+    @Override
+    public String reduceColumn(DatapointColumns column, List<String> constants) {
+        if (column.hasNulls()) {
+            return reduce(column.getValues(), constants);
+        }
+        parseConstants(constants);
+        return String.valueOf(new StandardDeviation().evaluate(column.getDoubles()));
+    }
+
     private void parseConstants(List<String> constants) {
         SystemAssert.requireArgument(constants != null && !constants.isEmpty(), "Deviation Transform must provide at least tolerance to evaluate.");
         SystemAssert.requireArgument(Double.parseDouble(constants.get(0)) > 0.0 && Double.parseDouble(constants.get(0)) < 1.0,
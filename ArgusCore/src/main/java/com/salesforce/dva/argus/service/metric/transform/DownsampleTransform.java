@@ -32,6 +32,7 @@
 package com.salesforce.dva.argus.service.metric.transform;
 
 import com.google.common.primitives.Doubles;
+import com.salesforce.dva.argus.entity.DatapointSeries;
 import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.service.metric.MetricReader;
 import com.salesforce.dva.argus.system.SystemAssert;
@@ -41,12 +42,9 @@ import org.apache.commons.math.stat.descriptive.summary.Sum;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -55,7 +53,7 @@ import java.util.concurrent.TimeUnit;
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
-public class DownsampleTransform implements Transform {
+public class DownsampleTransform implements SeriesTransform {
 
     //~ Methods **************************************************************************************************************************************
    
@@ -197,42 +195,73 @@ public class DownsampleTransform implements Transform {
         String downsampleType = expArr[1];
 
         SystemAssert.requireArgument(typeSet.contains(downsampleType), "Please input a valid type.");
+        InternalReducerType type = InternalReducerType.fromString(downsampleType);
+
         for (Metric metric : metrics) {
-            metric.setDatapoints(createDownsampleDatapoints(metric.getDatapoints(), windowSize, downsampleType, windowUnit));
+            createDownsampleDatapoints(metric, windowSize, type, windowUnit);
         }
         return metrics;
     }
 
-    private Map<Long, String> createDownsampleDatapoints(Map<Long, String> originalDatapoints, long windowSize, String type, String windowUnit) {
-        Map<Long, String> downsampleDatapoints = new HashMap<Long, String>();
-        Map<Long, String> sortedDatapoints = new TreeMap<Long, String>(originalDatapoints);
-        List<String> values = new ArrayList<>();
-        Long windowStart = 0L;
+    /*
+     * Walks the sorted series once, folding each window into a constant space accumulator. The series is replaced only after the pass completes
+     * since the downsampled points are appended to the same metric.
+     */
+    private void createDownsampleDatapoints(Metric metric, long windowSize, InternalReducerType type, String windowUnit) {
+        DatapointSeries series = metric.getDatapointSeries();
+        int size = series.size();
 
-        for (Map.Entry<Long, String> entry : sortedDatapoints.entrySet()) {
-            Long timestamp = entry.getKey();
-            String value = entry.getValue();
+        if (size == 0) {
+            return;
+        }
 
-            if (values.isEmpty()) {
-                values.add(value);
-                windowStart = downsamplerTimestamp(timestamp, windowUnit);
-            } else {
-                if (timestamp > windowStart + windowSize) {
-                    String fillingValue = downsamplerReducer(values, type);
+        boolean numeric = _isNumeric(series);
+        long[] timestamps = new long[16];
+        String[] values = new String[16];
+        int count = 0;
+        Accumulator accumulator = new Accumulator(type);
+        long windowStart = downsamplerTimestamp(series.getTimestamp(0), windowUnit);
+
+        for (int i = 0; i < size; i++) {
+            long timestamp = series.getTimestamp(i);
 
-                    downsampleDatapoints.put(windowStart, fillingValue);
-                    values.clear();
-                    windowStart = downsamplerTimestamp(timestamp, windowUnit);
+            if (i > 0 && timestamp > windowStart + windowSize) {
+                if (count == timestamps.length) {
+                    timestamps = Arrays.copyOf(timestamps, count << 1);
+                    values = Arrays.copyOf(values, count << 1);
                 }
-                values.add(value);
+                timestamps[count] = windowStart;
+                values[count++] = accumulator.getResult();
+                accumulator.reset();
+                windowStart = downsamplerTimestamp(timestamp, windowUnit);
             }
+            accumulator.add(_getOperand(series, i, numeric));
+        }
+        metric.setDatapoints(null);
+        for (int i = 0; i < count; i++) {
+            metric.addDatapoint(timestamps[i], values[i]);
         }
-        if (!values.isEmpty()) {
-            String fillingValue = downsamplerReducer(values, type);
+        metric.addDatapoint(windowStart, accumulator.getResult());
+    }
+
+    /* Determines whether the primitive column of the series can be used, which is not the case if it holds empty strings. */
+    private static boolean _isNumeric(DatapointSeries series) {
+        try {
+            series.getDoubleValue(0);
+            return true;
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    /* Missing values count as zero, consistent with downsamplerReducer. */
+    private static double _getOperand(DatapointSeries series, int index, boolean numeric) {
+        String value = series.getValue(index);
 
-            downsampleDatapoints.put(windowStart, fillingValue);
+        if (value == null || value.isEmpty()) {
+            return 0.0;
         }
-        return downsampleDatapoints;
+        return numeric ? series.getDoubleValue(index) : Double.parseDouble(value);
     }
 
     @Override
@@ -258,5 +287,68 @@ public class DownsampleTransform implements Transform {
     public List<Metric> transform(List<Metric>... listOfList) {
         throw new UnsupportedOperationException("Downsample doesn't need list of list!");
     }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * Folds the values of a single window in constant space. The deviation is the bias corrected sample standard deviation computed with
+     * Welford's online algorithm, matching the definition used by <tt>StandardDeviation</tt>.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    private static final class Accumulator {
+
+        private final InternalReducerType _type;
+        private long _count;
+        private double _sum;
+        private double _min;
+        private double _max;
+        private double _mean;
+        private double _m2;
+
+        Accumulator(InternalReducerType type) {
+            _type = type;
+        }
+
+        void add(double value) {
+            if (_count == 0 || Double.compare(value, _min) < 0) {
+                _min = value;
+            }
+            if (_count == 0 || Double.compare(value, _max) > 0) {
+                _max = value;
+            }
+            _count++;
+            _sum += value;
+
+            double delta = value - _mean;
+
+            _mean += delta / _count;
+            _m2 += delta * (value - _mean);
+        }
+
+        String getResult() {
+            switch (_type) {
+                case AVG:
+                    return String.valueOf(_sum / _count);
+                case MIN:
+                    return String.valueOf(_min);
+                case MAX:
+                    return String.valueOf(_max);
+                case SUM:
+                    return String.valueOf(_sum);
+                case DEVIATION:
+                    return String.valueOf(_count == 1 ? 0.0 : Math.sqrt(_m2 / (_count - 1)));
+                default:
+                    throw new UnsupportedOperationException(_type.getName());
+            }
+        }
+
+        void reset() {
+            _count = 0;
+            _sum = 0.0;
+            _mean = 0.0;
+            _m2 = 0.0;
+        }
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
\ No newline at end of file
@@ -46,7 +46,7 @@ import java.util.TreeMap;
  *
  * @author  Ruofan Zhang(rzhang@salesforce.com)
  */
-public class FillTransform implements Transform {
+public class FillTransform implements SeriesTransform {
 
     //~ Static fields/initializers *******************************************************************************************************************
 
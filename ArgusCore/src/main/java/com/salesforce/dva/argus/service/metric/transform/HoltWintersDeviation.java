@@ -46,7 +46,7 @@ import java.util.TreeMap;
  *
  * @author  Tom Valine (tvaline@salesforce.com)
  */
-public class HoltWintersDeviation extends HoltWintersAnalysis implements Transform {
+public class HoltWintersDeviation extends HoltWintersAnalysis implements SeriesTransform {
 
     //~ Instance fields ******************************************************************************************************************************
 
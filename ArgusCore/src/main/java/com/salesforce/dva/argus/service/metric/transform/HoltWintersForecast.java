@@ -46,7 +46,7 @@ import java.util.TreeMap;
  *
  * @author  Tom Valine (tvaline@salesforce.com)
  */
-public class HoltWintersForecast extends HoltWintersAnalysis implements Transform {
+public class HoltWintersForecast extends HoltWintersAnalysis implements SeriesTransform {
 
     //~ Instance fields ******************************************************************************************************************************
 
@@ -44,7 +44,7 @@ import java.util.TreeMap;
  *
  * @author  Raj Sarkapally (rsarkapally@salesforce.com)
  */
-public class IntegralTransform implements Transform {
+public class IntegralTransform implements SeriesTransform {
 
     //~ Methods **************************************************************************************************************************************
 
@@ -38,7 +38,7 @@ import java.util.List;
  *
  * @author  seamus.carroll
  */
-public class MaxValueReducer implements ValueReducer {
+public class MaxValueReducer implements ValueReducer, ColumnReducer {
 
     //~ Methods **************************************************************************************************************************************
 
@@ -62,6 +62,26 @@ public class MaxValueReducer implements ValueReducer {
         return maxAsString;
     }
 
+    @Override
+    public String reduceColumn(DatapointColumns column, List<String> constants) {
+        double max = Double.MIN_VALUE;
+        int maxIndex = -1;
+
+        for (int i = 0; i < column.size(); i++) {
+            if (column.isNull(i)) {
+                continue;
+            }
+
+            double candidate = column.getDouble(i);
+
+            if (maxIndex < 0 || candidate > max) {
+                max = candidate;
+                maxIndex = i;
+            }
+        }
+        return maxIndex < 0 ? null : column.getValue(maxIndex);
+    }
+
     @Override
     public String name() {
         return TransformFactory.Function.MAX.name();
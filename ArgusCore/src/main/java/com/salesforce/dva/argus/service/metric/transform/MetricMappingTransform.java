@@ -44,7 +44,7 @@ import java.util.TreeMap;
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
-public class MetricMappingTransform implements Transform {
+public class MetricMappingTransform implements SeriesTransform {
 
     //~ Instance fields ******************************************************************************************************************************
 
@@ -137,15 +137,16 @@ public class MetricReducerOrMappingTransform implements Transform {
 
         distiller.distill(metrics);
 
-        Map<Long, List<String>> collated = collate(metrics);
-        Map<Long, String> minDatapoints = reduce(collated, metrics);
         String newMetricName = distiller.getMetric() == null ? defaultMetricName : distiller.getMetric();
         Metric newMetric = new Metric(defaultScope, newMetricName);
 
         newMetric.setDisplayName(distiller.getDisplayName());
         newMetric.setUnits(distiller.getUnits());
         newMetric.setTags(distiller.getTags());
-        newMetric.setDatapoints(minDatapoints);
+        if (!(valueReducerOrMapping instanceof ColumnReducer)
+                || !DatapointColumns.reduce(metrics, (ColumnReducer) valueReducerOrMapping, null, true, newMetric)) {
+            newMetric.setDatapoints(reduce(collate(metrics), metrics));
+        }
         return newMetric;
     }
 
@@ -109,15 +109,16 @@ public class MetricReducerOrMappingWithConstantTransform extends MetricReducerOr
 
         distiller.distill(metrics);
 
-        Map<Long, List<String>> collated = collate(metrics);
-        Map<Long, String> reducedDatapoints = reduce(collated, constants, metrics);
         String newMetricName = distiller.getMetric() == null ? defaultMetricName : distiller.getMetric();
         Metric newMetric = new Metric(defaultScope, newMetricName);
 
         newMetric.setDisplayName(distiller.getDisplayName());
         newMetric.setUnits(distiller.getUnits());
         newMetric.setTags(distiller.getTags());
-        newMetric.setDatapoints(reducedDatapoints);
+        if (!(valueReducerOrMapping instanceof ColumnReducer)
+                || !DatapointColumns.reduce(metrics, (ColumnReducer) valueReducerOrMapping, constants, true, newMetric)) {
+            newMetric.setDatapoints(reduce(collate(metrics), constants, metrics));
+        }
         return newMetric;
     }
 
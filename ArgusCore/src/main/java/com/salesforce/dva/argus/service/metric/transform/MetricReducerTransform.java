@@ -78,8 +78,8 @@ public class MetricReducerTransform implements Transform {
     }
 
     /**
-     * O(n * m), where n is the max number of data points and m is the number of metrics. This becomes O(n) as the number of data points becomes
-     * large.
+     * O(n log m), where n is the total number of data points and m is the number of metrics. Reducers that implement {@link ColumnReducer} are
+     * applied to the aligned numeric columns directly. All others, and any input containing non-numeric values, use the collated string path.
      *
      * @param   metrics  The list of metrics to reduce.
      *
@@ -95,15 +95,15 @@ public class MetricReducerTransform implements Transform {
 
         distiller.distill(metrics);
 
-        Map<Long, List<String>> collated = collate(metrics);
-        Map<Long, String> minDatapoints = reduce(collated);
         String newMetricName = distiller.getMetric() == null ? defaultMetricName : distiller.getMetric();
         Metric newMetric = new Metric(defaultScope, newMetricName);
 
         newMetric.setDisplayName(distiller.getDisplayName());
         newMetric.setUnits(distiller.getUnits());
         newMetric.setTags(distiller.getTags());
-        newMetric.setDatapoints(minDatapoints);
+        if (!(valueReducer instanceof ColumnReducer) || !DatapointColumns.reduce(metrics, (ColumnReducer) valueReducer, null, false, newMetric)) {
+            newMetric.setDatapoints(reduce(collate(metrics)));
+        }
         return newMetric;
     }
 
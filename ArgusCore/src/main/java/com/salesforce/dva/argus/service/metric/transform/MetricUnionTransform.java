@@ -103,6 +103,16 @@ public class MetricUnionTransform implements Transform {
         }
 
         List<Metric> newMetricsList = new ArrayList<Metric>();
+
+        if (valueUnionReducer instanceof ColumnReducer) {
+            Metric newMetric = _createMetric(metrics);
+
+            if (DatapointColumns.union(metrics, (ColumnReducer) valueUnionReducer, newMetric)) {
+                newMetricsList.add(newMetric);
+                return newMetricsList;
+            }
+        }
+
         Metric newMetric = reduce(metrics);
         Map<Long, String> reducedDatapoints = newMetric.getDatapoints();
         Set<Long> sharedTimestamps = reducedDatapoints.keySet();
@@ -134,19 +144,23 @@ public class MetricUnionTransform implements Transform {
         /*
          * if (metrics.isEmpty()) { return new Metric(defaultScope, defaultMetricName); }
          */
+        Metric newMetric = _createMetric(metrics);
+
+        newMetric.setDatapoints(reduce(collate(metrics), metrics));
+        return newMetric;
+    }
+
+    private Metric _createMetric(List<Metric> metrics) {
         MetricDistiller distiller = new MetricDistiller();
 
         distiller.distill(metrics);
 
-        Map<Long, List<String>> collated = collate(metrics);
-        Map<Long, String> minDatapoints = reduce(collated, metrics);
         String newMetricName = distiller.getMetric() == null ? defaultMetricName : distiller.getMetric();
         Metric newMetric = new Metric(defaultScope, newMetricName);
 
         newMetric.setDisplayName(distiller.getDisplayName());
         newMetric.setUnits(distiller.getUnits());
         newMetric.setTags(distiller.getTags());
-        newMetric.setDatapoints(minDatapoints);
         return newMetric;
     }
 
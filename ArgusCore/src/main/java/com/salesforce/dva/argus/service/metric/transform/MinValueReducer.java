@@ -38,7 +38,7 @@ import java.util.List;
  *
  * @author  seamus.carroll
  */
-public class MinValueReducer implements ValueReducer {
+public class MinValueReducer implements ValueReducer, ColumnReducer {
 
     //~ Methods **************************************************************************************************************************************
 
@@ -62,6 +62,26 @@ public class MinValueReducer implements ValueReducer {
         return minAsString;
     }
 
+    @Override
+    public String reduceColumn(DatapointColumns column, List<String> constants) {
+        double min = Double.MAX_VALUE;
+        int minIndex = -1;
+
+        for (int i = 0; i < column.size(); i++) {
+            if (column.isNull(i)) {
+                continue;
+            }
+
+            double candidate = column.getDouble(i);
+
+            if (minIndex < 0 || candidate < min) {
+                min = candidate;
+                minIndex = i;
+            }
+        }
+        return minIndex < 0 ? null : column.getValue(minIndex);
+    }
+
     @Override
     public String name() {
         return TransformFactory.Function.MIN.name();
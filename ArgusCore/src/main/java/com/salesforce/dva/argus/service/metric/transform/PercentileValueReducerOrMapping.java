@@ -37,6 +37,7 @@ import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.system.SystemException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
@@ -49,7 +50,7 @@ import java.util.TreeMap;
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
-public class PercentileValueReducerOrMapping implements ValueReducerOrMapping {
+public class PercentileValueReducerOrMapping implements ValueReducerOrMapping, ColumnReducer {
 
     //~ Static fields/initializers *******************************************************************************************************************
 
@@ -73,6 +74,41 @@ public class PercentileValueReducerOrMapping implements ValueReducerOrMapping {
         return _calculateNthPercentile(values, percentile);
     }
 
+    /**
+     * Selects the percentile from a sorted copy of the numeric column. The original value at the selected rank is returned, resolving ties in
+     * column order as the stable sort of the string path does. Columns containing nulls are delegated to the string path.
+     *
+     * @param   column     The column to reduce.
+     * @param   constants  The transform constants.
+     *
+     * @return  The percentile value.
+     */
+    @Override
+    public String reduceColumn(DatapointColumns column, List<String> constants) {
+        if (column.hasNulls()) {
+            return reduce(column.getValues(), constants);
+        }
+        parseConstants(constants);
+
+        double[] sorted = column.getDoubles();
+
+        Arrays.sort(sorted);
+
+        int index = (int) Math.ceil(percentile * sorted.length / 100.0) - 1;
+        double target = sorted[index];
+        int skip = 0;
+
+        while (index - skip > 0 && Double.compare(sorted[index - skip - 1], target) == 0) {
+            skip++;
+        }
+        for (int i = 0; i < column.size(); i++) {
+            if (Double.compare(column.getDouble(i), target) == 0 && skip-- == 0) {
+                return column.getValue(i);
+            }
+        }
+        throw new SystemException("This should never happen.");
+    }
+
     private void parseConstants(List<String> constants) {
         SystemAssert.requireArgument(constants != null && !constants.isEmpty(),
             "Percentile Transform must provide at least percentile to calculate.");
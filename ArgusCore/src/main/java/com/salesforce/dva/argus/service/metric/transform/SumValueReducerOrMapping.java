@@ -44,7 +44,7 @@ import java.util.stream.Collectors;
  *
  * @author  Ruofan Zhang (rzhang@salesforce.com)
  */
-public class SumValueReducerOrMapping implements ValueReducerOrMapping {
+public class SumValueReducerOrMapping implements ValueReducerOrMapping, ColumnReducer {
 
     //~ Methods **************************************************************************************************************************************
 
@@ -53,6 +53,18 @@ public class SumValueReducerOrMapping implements ValueReducerOrMapping {
         return Reducers.sumReducer(values);
     }
 
+    @Override
+    public String reduceColumn(DatapointColumns column, List<String> constants) {
+        double sum = 0.0;
+
+        for (int i = 0; i < column.size(); i++) {
+            if (!column.isNull(i)) {
+                sum += column.getDouble(i);
+            }
+        }
+        return String.valueOf(sum);
+    }
+
     @Override
     public Map<Long, String> mapping(Map<Long, String> originalDatapoints) {
         throw new UnsupportedOperationException("Sum Transform with mapping is not supposed to be used without a constant");
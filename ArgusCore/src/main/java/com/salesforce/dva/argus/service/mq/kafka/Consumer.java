@@ -33,6 +33,7 @@ package com.salesforce.dva.argus.service.mq.kafka;
 
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.mq.kafka.KafkaMessageService.Property;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 import kafka.consumer.ConsumerConfig;
@@ -45,16 +46,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -72,6 +74,7 @@ public class Consumer {
     private final int MAX_BUFFER_SIZE;
     private final Logger _logger = LoggerFactory.getLogger(getClass());
     private final SystemConfiguration _configuration;
+    private final MonitorService _monitorService;
     private final Map<String, Topic> _topics = new HashMap<>();
     private final AtomicLong count = new AtomicLong(0);
     private final ObjectMapper _mapper;
@@ -81,10 +84,12 @@ public class Consumer {
     /**
      * Creates a new Consumer object.
      *
-     * @param  configuration  The system configuration.  Cannot be null.
+     * @param  configuration   The system configuration.  Cannot be null.
+     * @param  monitorService  The monitor service used by the producer that re-enqueues unflushed messages on shutdown.  Cannot be null.
      */
-    public Consumer(SystemConfiguration configuration) {
+    public Consumer(SystemConfiguration configuration, MonitorService monitorService) {
         this._configuration = configuration;
+        this._monitorService = monitorService;
         this._mapper = new ObjectMapper();
         MAX_BUFFER_SIZE = Integer.parseInt(_configuration.getValue(Property.KAFKA_CONSUMER_MESSAGES_TO_BUFFER.getName(),
                 Property.KAFKA_CONSUMER_MESSAGES_TO_BUFFER.getDefaultValue()));
@@ -117,16 +122,38 @@ public class Consumer {
                     props.setProperty("fetch.message.max.bytes", "2000000");
 
                     ConsumerConnector consumer = kafka.consumer.Consumer.createJavaConsumerConnector(new ConsumerConfig(props));
-                    List<KafkaStream<byte[], byte[]>> streams = _createStreams(consumer, topic);
-                    Topic t = new Topic(topic, consumer, streams.size());
 
-                    _topics.put(topic, t);
-                    _startStreamingMessages(topic, streams);
+                    initializeTopic(topic, consumer, _createStreams(consumer, topic));
                 }
             }
         }
     }
 
+    /**
+     * Registers a topic and starts streaming messages from the given streams into its local buffer.
+     *
+     * @param  topic     The topic to initialize.
+     * @param  consumer  The consumer connector the streams belong to. May be null.
+     * @param  streams   The streams to consume.
+     */
+    void initializeTopic(String topic, ConsumerConnector consumer, List<KafkaStream<byte[], byte[]>> streams) {
+        Topic t = new Topic(topic, consumer, Math.max(streams.size(), 1));
+
+        _topics.put(topic, t);
+        _startStreamingMessages(topic, streams);
+    }
+
+    /**
+     * Returns the local buffer of raw messages for a topic.
+     *
+     * @param   topic  The initialized topic.
+     *
+     * @return  The bounded buffer of messages consumed for the topic.
+     */
+    BlockingQueue<byte[]> getBuffer(String topic) {
+        return _topics.get(topic).getMessages();
+    }
+
     private List<KafkaStream<byte[], byte[]>> _createStreams(ConsumerConnector consumer, String topicName) {
         int numStreams = Math.max(Integer.parseInt(
             _configuration.getValue(Property.KAFKA_CONSUMER_STREAMS_PER_TOPIC.getName(),
@@ -164,35 +191,10 @@ public class Consumer {
      * @return  Messages of the given type belonging to the given topic. Empty list if no such topic exists or the method times out.
      */
     public <T extends Serializable> List<T> dequeueFromBuffer(String topic, Class<T> type, int timeout, int limit) {
-        List<T> result = new ArrayList<T>();
-        long cutoff = System.currentTimeMillis() + timeout;
-        BlockingQueue<String> queue = _topics.get(topic).getMessages();
-
-        while (System.currentTimeMillis() < cutoff && (limit < 0 || result.size() < limit)) {
-            if (Thread.currentThread().isInterrupted()) {
-                break;
-            }
-            try {
-                String message = queue.poll(timeout, TimeUnit.MILLISECONDS);
-
-                if (message != null && !message.isEmpty()) {
-                    if (String.class.isAssignableFrom(type)) {
-                        result.add(type.cast(message));
-                    } else {
-                        result.add(_mapper.readValue(message, type));
-                    }
-                    if (result.size() % 1000 == 0) {
-                        _logger.debug("Dequeued {} messages from local buffer.", result.size());
-                    }
-                }
-            } catch (InterruptedException e) {
-                _logger.warn("Interrupted while waiting for poll() to return a message.");
-                Thread.currentThread().interrupt();
-            } catch (IOException e) {
-                _logger.warn("Exception while deserializing message to type: " + type + ". Skipping this message.", e);
-            }
+        if (String.class.isAssignableFrom(type)) {
+            return _dequeueFromBuffer(topic, type, timeout, limit, message -> type.cast(new String(message, StandardCharsets.UTF_8)));
         }
-        return result;
+        return _dequeueFromBuffer(topic, type, timeout, limit, message -> _mapper.readValue(message, type));
     }
 
     /**
@@ -209,30 +211,49 @@ public class Consumer {
      * @return  Messages of the given type belonging to the given topic. Empty list if no such topic exists or the method times out.
      */
     public <T extends Serializable> List<T> dequeueFromBuffer(String topic, JavaType type, int timeout, int limit) {
-        List<T> result = new ArrayList<>();
+        return _dequeueFromBuffer(topic, type, timeout, limit, message -> _mapper.<T>readValue(message, type));
+    }
+
+    /*
+     * Drains as many buffered messages as are available in one step and only waits on the buffer when it is empty. Messages are kept as raw bytes
+     * in the buffer and deserialized here, directly from those bytes.
+     */
+    private <T> List<T> _dequeueFromBuffer(String topic, Object type, int timeout, int limit, MessageReader<T> reader) {
+        List<T> result = new ArrayList<T>();
+        List<byte[]> messages = new ArrayList<byte[]>();
         long cutoff = System.currentTimeMillis() + timeout;
-        BlockingQueue<String> queue = _topics.get(topic).getMessages();
+        BlockingQueue<byte[]> queue = _topics.get(topic).getMessages();
 
         while (System.currentTimeMillis() < cutoff && (limit < 0 || result.size() < limit)) {
             if (Thread.currentThread().isInterrupted()) {
                 break;
             }
-            try {
-                String message = queue.poll(timeout, TimeUnit.MILLISECONDS);
-
-                if (message != null && !message.isEmpty()) {
-                    T object = _mapper.readValue(message, type);
+            messages.clear();
+            queue.drainTo(messages, limit < 0 ? Integer.MAX_VALUE : limit - result.size());
+            if (messages.isEmpty()) {
+                try {
+                    byte[] message = queue.poll(cutoff - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
 
-                    result.add(object);
+                    if (message != null) {
+                        messages.add(message);
+                    }
+                } catch (InterruptedException e) {
+                    _logger.warn("Interrupted while waiting for poll() to return a message.");
+                    Thread.currentThread().interrupt();
+                }
+            }
+            for (byte[] message : messages) {
+                if (message.length == 0) {
+                    continue;
+                }
+                try {
+                    result.add(reader.read(message));
                     if (result.size() % 1000 == 0) {
                         _logger.debug("Dequeued {} messages from local buffer.", result.size());
                     }
+                } catch (IOException e) {
+                    _logger.warn("Exception while deserializing message to type: " + type + ". Skipping this message.", e);
                 }
-            } catch (InterruptedException e) {
-                _logger.warn("Interrupted while waiting for poll() to return a message.");
-                Thread.currentThread().interrupt();
-            } catch (IOException e) {
-                _logger.warn("Exception while deserializing message to type: " + type + ". Skipping this message.", e);
             }
         }
         return result;
@@ -253,15 +274,19 @@ public class Consumer {
         }
         _logger.debug("Pushing unflushed messages back to Kafka.");
 
-        Producer producer = new Producer(_configuration);
+        Producer producer = new Producer(_configuration, _monitorService);
 
         for (Map.Entry<String, Topic> entry : _topics.entrySet()) {
             String topicName = entry.getKey();
             Topic topic = entry.getValue();
+            List<byte[]> unflushedBytes = new ArrayList<byte[]>();
             List<String> unflushedMessages = new ArrayList<String>();
 
             if (!topic.getMessages().isEmpty()) {
-                topic.getMessages().drainTo(unflushedMessages);
+                topic.getMessages().drainTo(unflushedBytes);
+                for (byte[] message : unflushedBytes) {
+                    unflushedMessages.add(new String(message, StandardCharsets.UTF_8));
+                }
                 producer.enqueue(topicName, unflushedMessages);
             }
             _logger.debug("{} messages for topic {} enqueued on Kafka queue", unflushedMessages.size(), topicName);
@@ -304,7 +329,7 @@ public class Consumer {
                 MessageAndMetadata<byte[], byte[]> m = it.next();
 
                 try {
-                    String message = new String(m.message());
+                    byte[] message = m.message();
                     String topic = m.topic();
 
                     if (message != null) {
@@ -327,6 +352,27 @@ public class Consumer {
         }
     }
 
+    /**
+     * Reads a message from its raw bytes.
+     *
+     * @param  <T>  The result type.
+     *
+     * @author  Bhinav Sura (bhinav.sura@salesforce.com)
+     */
+    private interface MessageReader<T> {
+
+        /**
+         * Reads a message.
+         *
+         * @param   message  The raw message.
+         *
+         * @return  The message object.
+         *
+         * @throws  IOException  If the message cannot be deserialized.
+         */
+        T read(byte[] message) throws IOException;
+    }
+
     /**
      * Inner class that contains information about a particular topic. It includes a kafka consumer connector, an executor service for maintaining the
      * streaming threads and a blocking queue to store the actual messages.
@@ -337,7 +383,7 @@ public class Consumer {
 
         private ConsumerConnector _consumerConnector;
         private ExecutorService _streamExecutorService;
-        private BlockingQueue<String> _messages;
+        private BlockingQueue<byte[]> _messages;
 
         /**
          * Creates a new Topic object.
@@ -347,7 +393,7 @@ public class Consumer {
          * @param  numStreams         The number of streams with which to consume the topic.
          */
         public Topic(String name, ConsumerConnector consumerConnector, int numStreams) {
-            this(name, consumerConnector, numStreams, new LinkedBlockingQueue<String>(MAX_BUFFER_SIZE));
+            this(name, consumerConnector, numStreams, new ArrayBlockingQueue<byte[]>(MAX_BUFFER_SIZE));
         }
 
         /**
@@ -356,9 +402,9 @@ public class Consumer {
          * @param  name               The topic name.
          * @param  consumerConnector  The Kafka consumer connector.
          * @param  numStreams         The number of streams with which to consume the topic.
-         * @param  messages           The queue into which messages will be consumed.
+         * @param  messages           The queue into which raw messages will be consumed.
          */
-        public Topic(final String name, ConsumerConnector consumerConnector, int numStreams, BlockingQueue<String> messages) {
+        public Topic(final String name, ConsumerConnector consumerConnector, int numStreams, BlockingQueue<byte[]> messages) {
             _consumerConnector = consumerConnector;
             _messages = messages;
             _streamExecutorService = Executors.newFixedThreadPool(numStreams, new ThreadFactory() {
@@ -391,11 +437,11 @@ public class Consumer {
         }
 
         /**
-         * Returns the dequeued messages.
+         * Returns the buffered raw messages.
          *
-         * @return  The dequeued messages.
+         * @return  The buffered raw messages.
          */
-        public BlockingQueue<String> getMessages() {
+        public BlockingQueue<byte[]> getMessages() {
             return _messages;
         }
     }
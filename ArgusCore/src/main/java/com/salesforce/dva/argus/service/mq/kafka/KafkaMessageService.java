@@ -36,6 +36,7 @@ import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.salesforce.dva.argus.service.DefaultService;
 import com.salesforce.dva.argus.service.MQService;
+import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -62,14 +63,16 @@ public class KafkaMessageService extends DefaultService implements MQService {
     /**
      * Creates a new KafkaMessageService object.
      *
-     * @param  config  The system _configuration used to configure the service.
+     * @param  config          The system _configuration used to configure the service.
+     * @param  monitorService  The monitor service used to report producer counters.
      */
     @Inject
-    public KafkaMessageService(SystemConfiguration config) {
+    public KafkaMessageService(SystemConfiguration config, MonitorService monitorService) {
     	super(config);
         requireArgument(config != null, "System configuration cannot be null.");
-        _producer = new Producer(config);
-        _consumer = new Consumer(config);
+        requireArgument(monitorService != null, "Monitor service cannot be null.");
+        _producer = new Producer(config, monitorService);
+        _consumer = new Consumer(config, monitorService);
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -93,6 +96,19 @@ public class KafkaMessageService extends DefaultService implements MQService {
         _producer.enqueue(topic, objects);
     }
 
+    /**
+     * Waits until every enqueued message has been acknowledged by the brokers or has failed.
+     *
+     * @param   timeoutMillis  The maximum time to wait in milliseconds.
+     *
+     * @return  True if no messages are outstanding, false if the timeout elapsed first.
+     */
+    public boolean flush(long timeoutMillis) {
+        requireNotDisposed();
+        requireArgument(timeoutMillis >= 0, "Timeout cannot be negative.");
+        return _producer.flush(timeoutMillis);
+    }
+
     @Override
     public String dequeue(String topic, int timeout) {
         return dequeue(topic, String.class, timeout);
@@ -175,6 +191,12 @@ public class KafkaMessageService extends DefaultService implements MQService {
         KAFKA_PRODUCER_BUFFER_MEMORY("service.property.mq.kafka.producer.buffer.memory", "134217728"),
         /** Specifies the batch size.  Default is 102400. */
         KAFKA_PRODUCER_BATCH_SIZE("service.property.mq.kafka.producer.batch.size", "102400"),
+        /** Indicates whether enqueue hands messages to the producer without waiting on a worker thread. Default is true. */
+        KAFKA_PRODUCER_ASYNC_ENQUEUE("service.property.mq.kafka.producer.async.enqueue", "true"),
+        /** Specifies the maximum bytes of enqueued messages that are not yet acknowledged. Default is 67108864. */
+        KAFKA_PRODUCER_MAX_OUTSTANDING_BYTES("service.property.mq.kafka.producer.max.outstanding.bytes", "67108864"),
+        /** Specifies how long enqueue waits for outstanding bytes to drop below the maximum before skipping a message. Default is 10000. */
+        KAFKA_PRODUCER_ENQUEUE_TIMEOUT_MS("service.property.mq.kafka.producer.enqueue.timeout.ms", "10000"),
         /** Specifies the number of streams per topic.  Default is 1. */
         KAFKA_CONSUMER_STREAMS_PER_TOPIC("service.property.mq.kafka.consumer.streams.per.topic", "1"),
         /** Specifies the number of consumer messages to buffer.  Default is 1. */
@@ -33,6 +33,7 @@ package com.salesforce.dva.argus.service.mq.kafka;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.mq.kafka.KafkaMessageService.Property;
 import com.salesforce.dva.argus.system.SystemConfiguration;
 import com.salesforce.dva.argus.system.SystemException;
@@ -42,11 +43,14 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,30 +65,66 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Produces events onto the Kafka broker.
  *
+ * <p>By default messages are handed to the Kafka producer directly on the calling thread and acknowledged asynchronously. The number of bytes
+ * sent but not yet acknowledged is bounded, so that callers block once the brokers fall behind, and {@link #flush(long)} waits for all outstanding
+ * messages to be acknowledged. Setting {@link Property#KAFKA_PRODUCER_ASYNC_ENQUEUE} to false restores the previous behavior of handing each
+ * message to a worker thread and waiting for it to be buffered.</p>
+ *
  * @author  Tom Valine (tvaline@salesforce.com)
  */
 public class Producer {
 
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final String ENQUEUE_LATENCY_COUNTER = "kafka.enqueue.latency";
+    private static final String ENQUEUE_COUNT_COUNTER = "kafka.enqueue.count";
+    private static final String ENQUEUE_FAILURE_COUNTER = "kafka.enqueue.failures";
+
     //~ Instance fields ******************************************************************************************************************************
 
     private final Logger _logger = LoggerFactory.getLogger(getClass());
     private final SystemConfiguration _configuration;
-    private final KafkaProducer<String, String> _producer;
+    private final MonitorService _monitorService;
+    private final org.apache.kafka.clients.producer.Producer<String, byte[]> _producer;
     private final ExecutorService _executorService;
     private final ObjectMapper _mapper;
+    private final boolean _asyncEnqueue;
+    private final long _maxOutstandingBytes;
+    private final long _enqueueTimeoutMillis;
+    private final Object _outstandingLock = new Object();
+    private long _outstandingBytes;
 
     //~ Constructors *********************************************************************************************************************************
 
     /**
      * Creates a new Producer object.
      *
-     * @param  config  The system configuration.
+     * @param  config          The system configuration.
+     * @param  monitorService  The monitor service used to report the enqueue counters.
+     */
+    public Producer(SystemConfiguration config, MonitorService monitorService) {
+        this(config, monitorService, null);
+    }
+
+    /**
+     * Creates a new Producer object which sends messages using the given Kafka producer.
+     *
+     * @param  config          The system configuration.
+     * @param  monitorService  The monitor service used to report the enqueue counters.
+     * @param  producer        The Kafka producer to use. If null, a producer is created from the system configuration.
      */
-    public Producer(SystemConfiguration config) {
+    Producer(SystemConfiguration config, MonitorService monitorService, org.apache.kafka.clients.producer.Producer<String, byte[]> producer) {
         _configuration = config;
-        _producer = _createProducer();
+        _monitorService = monitorService;
+        _producer = producer == null ? _createProducer() : producer;
         _executorService = _createExecutorService();
         _mapper = new ObjectMapper();
+        _asyncEnqueue = Boolean.parseBoolean(
+            config.getValue(Property.KAFKA_PRODUCER_ASYNC_ENQUEUE.getName(), Property.KAFKA_PRODUCER_ASYNC_ENQUEUE.getDefaultValue()));
+        _maxOutstandingBytes = Long.parseLong(
+            config.getValue(Property.KAFKA_PRODUCER_MAX_OUTSTANDING_BYTES.getName(), Property.KAFKA_PRODUCER_MAX_OUTSTANDING_BYTES.getDefaultValue()));
+        _enqueueTimeoutMillis = Long.parseLong(
+            config.getValue(Property.KAFKA_PRODUCER_ENQUEUE_TIMEOUT_MS.getName(), Property.KAFKA_PRODUCER_ENQUEUE_TIMEOUT_MS.getDefaultValue()));
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -104,7 +144,7 @@ public class Producer {
             });
     }
 
-    private KafkaProducer<String, String> _createProducer() {
+    private KafkaProducer<String, byte[]> _createProducer() {
         Map<String, Object> producerConfig = new HashMap<String, Object>();
 
         producerConfig.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG,
@@ -122,7 +162,7 @@ public class Producer {
         producerConfig.put(ProducerConfig.BATCH_SIZE_CONFIG,
             Integer.parseInt(
                 _configuration.getValue(Property.KAFKA_PRODUCER_BATCH_SIZE.getName(), Property.KAFKA_PRODUCER_BATCH_SIZE.getDefaultValue())));
-        return new KafkaProducer<String, String>(producerConfig, new StringSerializer(), new StringSerializer());
+        return new KafkaProducer<String, byte[]>(producerConfig, new StringSerializer(), new ByteArraySerializer());
     }
 
     /**
@@ -135,21 +175,28 @@ public class Producer {
      * @return  The number of objects that were successfully added to the Producer Buffer.
      */
     public <T extends Serializable> int enqueue(final String topic, List<T> objects) {
+        long start = System.currentTimeMillis();
         int messagesBuffered = 0;
 
         for (T object : objects) {
-            final String value;
+            final byte[] value;
 
             if (String.class.isAssignableFrom(object.getClass())) {
-                value = String.class.cast(object);
+                value = String.class.cast(object).getBytes(StandardCharsets.UTF_8);
             } else {
                 try {
-                    value = _mapper.writeValueAsString(object);
+                    value = _mapper.writeValueAsBytes(object);
                 } catch (JsonProcessingException e) {
                     _logger.warn("Exception while serializing the object to a string. Skipping this object.", e);
                     continue;
                 }
             }
+            if (_asyncEnqueue) {
+                if (_send(topic, value)) {
+                    messagesBuffered++;
+                }
+                continue;
+            }
             try {
                 boolean addedToBuffer = _executorService.submit(new ProducerWorker(topic, value)).get();
 
@@ -163,9 +210,115 @@ public class Producer {
                 throw new SystemException(e);
             }
         }
+
+        Map<String, String> tags = _getTags(topic);
+
+        _monitorService.modifyCustomCounter(ENQUEUE_LATENCY_COUNTER, System.currentTimeMillis() - start, tags);
+        _monitorService.modifyCustomCounter(ENQUEUE_COUNT_COUNTER, messagesBuffered, tags);
+        if (messagesBuffered < objects.size()) {
+            _monitorService.modifyCustomCounter(ENQUEUE_FAILURE_COUNTER, objects.size() - messagesBuffered, tags);
+        }
         return messagesBuffered;
     }
 
+    /**
+     * Waits until every message sent in asynchronous mode has been acknowledged by the brokers or has failed.
+     *
+     * @param   timeoutMillis  The maximum time to wait in milliseconds.
+     *
+     * @return  True if no messages are outstanding, false if the timeout elapsed first.
+     */
+    public boolean flush(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+
+        synchronized (_outstandingLock) {
+            try {
+                while (_outstandingBytes > 0) {
+                    long remaining = deadline - System.currentTimeMillis();
+
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    _outstandingLock.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                _logger.warn("Flush operation was interrupted by calling code.");
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /* Sends a message without waiting for it to be acknowledged, once the outstanding bytes are within the configured budget. */
+    private boolean _send(final String topic, byte[] value) {
+        final long bytes = value.length;
+
+        if (!_acquireOutstandingBytes(bytes)) {
+            _logger.warn("Timed out waiting for outstanding messages to be acknowledged. Skipping this message.");
+            return false;
+        }
+        try {
+            _producer.send(new ProducerRecord<>(topic, value), new Callback() {
+
+                    @Override
+                    public void onCompletion(RecordMetadata metaData, Exception exception) {
+                        _releaseOutstandingBytes(bytes);
+                        if (exception != null) {
+                            _logger.warn("Exception while sending message. ", exception);
+                            _monitorService.modifyCustomCounter(ENQUEUE_FAILURE_COUNTER, 1, _getTags(topic));
+                        } else {
+                            _logger.trace("Message sent to partition {} with offset {}.", metaData.partition(), metaData.offset());
+                        }
+                    }
+                });
+            return true;
+        } catch (BufferExhaustedException e) {
+            _releaseOutstandingBytes(bytes);
+            _logger.warn("Buffer exhausted on kafka producer. Skipping this message.", e);
+            return false;
+        } catch (Exception e) {
+            _releaseOutstandingBytes(bytes);
+            _logger.warn("Exception occured when executing producer send(). ", e);
+            throw new SystemException(e);
+        }
+    }
+
+    /* A message larger than the whole budget is admitted once nothing else is outstanding. */
+    private boolean _acquireOutstandingBytes(long bytes) {
+        long deadline = System.currentTimeMillis() + _enqueueTimeoutMillis;
+
+        synchronized (_outstandingLock) {
+            try {
+                while (_outstandingBytes > 0 && _outstandingBytes + bytes > _maxOutstandingBytes) {
+                    long remaining = deadline - System.currentTimeMillis();
+
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    _outstandingLock.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                _logger.warn("Enqueue operation was interrupted by calling code.");
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            _outstandingBytes += bytes;
+            return true;
+        }
+    }
+
+    private void _releaseOutstandingBytes(long bytes) {
+        synchronized (_outstandingLock) {
+            _outstandingBytes -= bytes;
+            _outstandingLock.notifyAll();
+        }
+    }
+
+    private Map<String, String> _getTags(String topic) {
+        return topic == null ? null : Collections.singletonMap("topic", topic);
+    }
+
     /** Shuts down the producer. */
     public void shutdown() {
         if (_producer != null) {
@@ -193,7 +346,7 @@ public class Producer {
     private class ProducerWorker implements Callable<Boolean> {
 
         private final String _topic;
-        private final String _message;
+        private final byte[] _message;
 
         /**
          * Creates a new Producer object.
@@ -201,14 +354,14 @@ public class Producer {
          * @param  topic    The topic to produce onto.
          * @param  message  The message to enqueue.
          */
-        public ProducerWorker(String topic, String message) {
+        public ProducerWorker(String topic, byte[] message) {
             this._topic = topic;
             this._message = message;
         }
 
         @Override
         public Boolean call() {
-            ProducerRecord<String, String> record = new ProducerRecord<>(_topic, _message);
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(_topic, _message);
 
             try {
                 _producer.send(record, new Callback() {
@@ -217,6 +370,7 @@ public class Producer {
                         public void onCompletion(RecordMetadata metaData, Exception exception) {
                             if (exception != null) {
                                 _logger.warn("Exception while sending message. ", exception);
+                                _monitorService.modifyCustomCounter(ENQUEUE_FAILURE_COUNTER, 1, _getTags(_topic));
                             } else {
                                 _logger.trace("Message sent to partition {} with offset {}.", metaData.partition(), metaData.offset());
                             }
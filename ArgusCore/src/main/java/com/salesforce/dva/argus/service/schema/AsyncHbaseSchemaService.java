@@ -31,6 +31,8 @@
 	 
 package com.salesforce.dva.argus.service.schema;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.salesforce.dva.argus.entity.Metric;
@@ -38,6 +40,7 @@ import com.salesforce.dva.argus.entity.MetricSchemaRecord;
 import com.salesforce.dva.argus.entity.MetricSchemaRecordQuery;
 import com.salesforce.dva.argus.inject.SLF4JTypeListener;
 import com.salesforce.dva.argus.service.DefaultService;
+import com.salesforce.dva.argus.service.MonitorService;
 import com.salesforce.dva.argus.service.SchemaService;
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.system.SystemConfiguration;
@@ -61,15 +64,25 @@ import org.slf4j.Logger;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * HBASE implementation of the schema service.
  *
+ * <p>Schema rows are immutable and most metrics are committed over and over with the same tags, so the row keys written recently are remembered
+ * in a bounded LRU set and puts for them are skipped. Entries expire after a configurable time, so every row is eventually rewritten. The set can
+ * optionally be warmed up from the existing scope schema table. The warm-up starts on a background thread with the first put and runs concurrently
+ * with later puts, so puts issued before it has loaded a row key still write that row.</p>
+ *
  * @author  Tom Valine (tvaline@salesforce.com)
  */
 @Singleton
@@ -84,18 +97,39 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
     private static final byte[] CELL_VALUE = "1".getBytes(Charset.forName("UTF-8"));
     private static final char ROWKEY_SEPARATOR = ':';
     private static final char[] WILDCARD_CHARSET = new char[] { '*', '?', '[', ']', '|' };
+    private static final String DEDUP_HIT_COUNTER = "schema.put.dedup.hits";
+    private static final String DEDUP_MISS_COUNTER = "schema.put.dedup.misses";
 
     //~ Instance fields ******************************************************************************************************************************
 
     @SLF4JTypeListener.InjectLogger
     private Logger _logger;
     private HBaseClient _client;
+    private Function<PutRequest, Deferred<Object>> _putter;
+    private final MonitorService _monitorService;
+    private final Cache<String, Boolean> _writtenRowKeys;
+    private final boolean _warmUp;
+    private final long _maxWrittenRowKeys;
+    private final AtomicBoolean _warmUpStarted = new AtomicBoolean(false);
 
     //~ Constructors *********************************************************************************************************************************
 
     @Inject
-    private AsyncHbaseSchemaService(SystemConfiguration systemConfig) {
+    private AsyncHbaseSchemaService(SystemConfiguration systemConfig, MonitorService monitorService) {
     	super(systemConfig);
+        SystemAssert.requireArgument(monitorService != null, "Monitor service cannot be null.");
+        _monitorService = monitorService;
+        _maxWrittenRowKeys = Long.parseLong(
+            systemConfig.getValue(Property.DEDUP_MAX_ROW_KEYS.getName(), Property.DEDUP_MAX_ROW_KEYS.getDefaultValue()));
+
+        long expiry = Long.parseLong(systemConfig.getValue(Property.DEDUP_EXPIRY_IN_SEC.getName(), Property.DEDUP_EXPIRY_IN_SEC.getDefaultValue()));
+
+        SystemAssert.requireArgument(_maxWrittenRowKeys >= 0, "Maximum number of deduplicated row keys cannot be negative.");
+        SystemAssert.requireArgument(expiry > 0, "Deduplicated row key expiry must be greater than 0.");
+        _writtenRowKeys = CacheBuilder.newBuilder().maximumSize(_maxWrittenRowKeys).expireAfterWrite(expiry, TimeUnit.SECONDS).build();
+        _warmUp = _maxWrittenRowKeys > 0 &&
+            Boolean.parseBoolean(systemConfig.getValue(Property.DEDUP_WARMUP.getName(), Property.DEDUP_WARMUP.getDefaultValue()));
+
         Config config = new Config();
 
         config.overrideConfig("hbase.zookeeper.quorum",
@@ -104,6 +138,7 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
         config.overrideConfig("hbase.rpcs.buffered_flush_interval", "5000");
         config.overrideConfig("hbase.zookeeper.session.timeout", "6000");
         _client = new HBaseClient(config);
+        _putter = _client::put;
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -214,6 +249,14 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
         return record;
     }
 
+    /* The smallest row key that sorts after the row key of the given record. */
+    private static byte[] _constructStartRowAfter(MetricSchemaRecord record, TableType type) {
+        byte[] rowKey = Bytes.toBytes(_constructRowKey(record.getNamespace(), record.getScope(), record.getMetric(), record.getTagKey(),
+                record.getTagValue(), type));
+
+        return Arrays.copyOf(rowKey, rowKey.length + 1);
+    }
+
     //~ Methods **************************************************************************************************************************************
 
     @Override
@@ -231,68 +274,116 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
     public void put(List<Metric> metrics) {
         requireNotDisposed();
         SystemAssert.requireArgument(metrics != null && !metrics.isEmpty(), "Metric list cannot be null or empty.");
+        if (_warmUp && _warmUpStarted.compareAndSet(false, true)) {
+            _startWarmUp();
+        }
+
+        int hits = 0;
+        int misses = 0;
+
         for (Metric metric : metrics) {
             if (metric.getTags().isEmpty()) {
-                String rowKeyStr = _constructRowKey(metric.getNamespace(), metric.getScope(), metric.getMetric(), null, null, TableType.SCOPE);
+                if (_putSchemaRows(metric.getNamespace(), metric.getScope(), metric.getMetric(), null, null)) {
+                    misses++;
+                } else {
+                    hits++;
+                }
+            }
+            for (Entry<String, String> tag : metric.getTags().entrySet()) {
+                if (_putSchemaRows(metric.getNamespace(), metric.getScope(), metric.getMetric(), tag.getKey(), tag.getValue())) {
+                    misses++;
+                } else {
+                    hits++;
+                }
+            }
+        } // end for
+        if (hits > 0) {
+            _monitorService.modifyCustomCounter(DEDUP_HIT_COUNTER, hits, null);
+        }
+        if (misses > 0) {
+            _monitorService.modifyCustomCounter(DEDUP_MISS_COUNTER, misses, null);
+        }
+    }
 
-                _logger.trace(MessageFormat.format("Inserting row key {0} into table scope-schema", rowKeyStr));
+    /*
+     * Writes the scope schema and metric schema rows for a tag, unless they were written recently. Returns true if the rows were written. A failed
+     * put forgets the row key so that the rows are written again by the next put.
+     */
+    private boolean _putSchemaRows(String namespace, String scope, String metric, String tagKey, String tagValue) {
+        final String scopeRowKey = _constructRowKey(namespace, scope, metric, tagKey, tagValue, TableType.SCOPE);
 
-                final PutRequest scopePut = new PutRequest(SCOPE_SCHEMA, Bytes.toBytes(rowKeyStr), COLUMN_FAMILY, COLUMN_QUALIFIER, CELL_VALUE);
-                Deferred<Object> scopePutDeferred = _client.put(scopePut);
+        if (_maxWrittenRowKeys > 0 && _writtenRowKeys.asMap().putIfAbsent(scopeRowKey, Boolean.TRUE) != null) {
+            return false;
+        }
+        _logger.trace(MessageFormat.format("Inserting row key {0} into table scope-schema", scopeRowKey));
 
-                scopePutDeferred.addErrback(new Callback<Object, Exception>() {
+        final PutRequest scopePut = new PutRequest(SCOPE_SCHEMA, Bytes.toBytes(scopeRowKey), COLUMN_FAMILY, COLUMN_QUALIFIER, CELL_VALUE);
+        Deferred<Object> scopePutDeferred = _putter.apply(scopePut);
 
-                        @Override
-                        public Object call(Exception e) throws Exception {
-                            throw new SystemException("Error occured while trying to execute put() on scope schema table.", e);
-                        }
-                    });
-                rowKeyStr = _constructRowKey(metric.getNamespace(), metric.getScope(), metric.getMetric(), null, null, TableType.METRIC);
-                _logger.trace(MessageFormat.format("Inserting row key {0} into table metric-schema", rowKeyStr));
+        scopePutDeferred.addErrback(new Callback<Object, Exception>() {
 
-                final PutRequest metricPut = new PutRequest(METRIC_SCHEMA, Bytes.toBytes(rowKeyStr), COLUMN_FAMILY, COLUMN_QUALIFIER, CELL_VALUE);
-                Deferred<Object> metricPutDeferred = _client.put(metricPut);
+                @Override
+                public Object call(Exception e) throws Exception {
+                    _writtenRowKeys.invalidate(scopeRowKey);
+                    throw new SystemException("Error occured while trying to execute put() on scope schema table.", e);
+                }
+            });
 
-                metricPutDeferred.addErrback(new Callback<Object, Exception>() {
+        String metricRowKey = _constructRowKey(namespace, scope, metric, tagKey, tagValue, TableType.METRIC);
 
-                        @Override
-                        public Object call(Exception e) throws Exception {
-                            throw new SystemException("Error occured while trying to execute put() on metric schema table.", e);
-                        }
-                    });
-            }
-            for (Entry<String, String> tag : metric.getTags().entrySet()) {
-                String rowKeyStr = _constructRowKey(metric.getNamespace(), metric.getScope(), metric.getMetric(), tag.getKey(), tag.getValue(),
-                    TableType.SCOPE);
+        _logger.trace(MessageFormat.format("Inserting row key {0} into table metric-schema", metricRowKey));
 
-                _logger.trace(MessageFormat.format("Inserting row key {0} into table scope-schema", rowKeyStr));
+        final PutRequest metricPut = new PutRequest(METRIC_SCHEMA, Bytes.toBytes(metricRowKey), COLUMN_FAMILY, COLUMN_QUALIFIER, CELL_VALUE);
+        Deferred<Object> metricPutDeferred = _putter.apply(metricPut);
 
-                final PutRequest scopePut = new PutRequest(SCOPE_SCHEMA, Bytes.toBytes(rowKeyStr), COLUMN_FAMILY, COLUMN_QUALIFIER, CELL_VALUE);
-                Deferred<Object> scopePutDeferred = _client.put(scopePut);
+        metricPutDeferred.addErrback(new Callback<Object, Exception>() {
 
-                scopePutDeferred.addErrback(new Callback<Object, Exception>() {
+                @Override
+                public Object call(Exception e) throws Exception {
+                    _writtenRowKeys.invalidate(scopeRowKey);
+                    throw new SystemException("Error occured while trying to execute put() on metric schema table.", e);
+                }
+            });
+        return true;
+    }
 
-                        @Override
-                        public Object call(Exception e) throws Exception {
-                            throw new SystemException("Error occured while trying to execute put() on scope schema table.", e);
+    /*
+     * Loads existing scope schema row keys into the set of recently written row keys on a background thread, up to its maximum size. Both schema
+     * tables are always written together, so the scope schema table alone identifies the rows that exist.
+     */
+    private void _startWarmUp() {
+        Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    Scanner scanner = _client.newScanner(SCOPE_SCHEMA);
+                    List<ScanFilter> filters = new ArrayList<ScanFilter>();
+                    long count = 0;
+
+                    filters.add(new KeyOnlyFilter());
+                    filters.add(new FirstKeyOnlyFilter());
+                    scanner.setFilter(new FilterList(filters, FilterList.Operator.MUST_PASS_ALL));
+                    _logger.info("Warming up schema row key deduplication from table scope-schema.");
+                    try {
+                        ArrayList<ArrayList<KeyValue>> rows;
+
+                        while (count < _maxWrittenRowKeys && !isDisposed() && (rows = scanner.nextRows().joinUninterruptibly()) != null) {
+                            for (ArrayList<KeyValue> row : rows) {
+                                _writtenRowKeys.put(Bytes.toString(row.get(0).key()), Boolean.TRUE);
+                                count++;
+                            }
                         }
-                    });
-                rowKeyStr = _constructRowKey(metric.getNamespace(), metric.getScope(), metric.getMetric(), tag.getKey(), tag.getValue(),
-                    TableType.METRIC);
-                _logger.trace(MessageFormat.format("Inserting row key {0} into table metric-schema", rowKeyStr));
-
-                final PutRequest metricPut = new PutRequest(METRIC_SCHEMA, Bytes.toBytes(rowKeyStr), COLUMN_FAMILY, COLUMN_QUALIFIER, CELL_VALUE);
-                Deferred<Object> metricPutDeferred = _client.put(metricPut);
-
-                metricPutDeferred.addErrback(new Callback<Object, Exception>() {
+                        _logger.info("Loaded {} schema row keys for deduplication.", count);
+                    } catch (Exception e) {
+                        _logger.warn("Failed to warm up schema row key deduplication after loading {} row keys.", count, e);
+                    } finally {
+                        scanner.close();
+                    }
+                }
+            }, "schema-dedup-warmup");
 
-                        @Override
-                        public Object call(Exception e) throws Exception {
-                            throw new SystemException("Error occured while trying to execute put() on metric schema table.", e);
-                        }
-                    });
-            }
-        } // end for
+        thread.setDaemon(true);
+        thread.start();
     }
 
     @Override
@@ -301,7 +392,18 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
         SystemAssert.requireArgument(query != null, "Metric Schema Record query cannot be null.");
         SystemAssert.requireArgument(limit > 0, "Limit must be a positive integer.");
         SystemAssert.requireArgument(page > 0, "Page must be a positive integer.");
+        return _get(query, limit, limit * (page - 1), null);
+    }
 
+    @Override
+    public List<MetricSchemaRecord> get(MetricSchemaRecordQuery query, int limit, MetricSchemaRecord startAfter) {
+        requireNotDisposed();
+        SystemAssert.requireArgument(query != null, "Metric Schema Record query cannot be null.");
+        SystemAssert.requireArgument(limit > 0, "Limit must be a positive integer.");
+        return _get(query, limit, 0, startAfter);
+    }
+
+    private List<MetricSchemaRecord> _get(MetricSchemaRecordQuery query, final int limit, final int skip, MetricSchemaRecord startAfter) {
         final List<MetricSchemaRecord> records = new ArrayList<MetricSchemaRecord>(limit);
         final ScanMetadata metadata = _constructScanMetadata(query);
         String namespace = _convertToRegex(query.getNamespace());
@@ -325,10 +427,10 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
         FilterList fl = new FilterList(filters, FilterList.Operator.MUST_PASS_ALL);
         final Scanner scanner = _client.newScanner(metadata.type.getTableName());
 
-        scanner.setStartKey(metadata.startRow);
+        scanner.setStartKey(startAfter == null ? metadata.startRow : _constructStartRowAfter(startAfter, metadata.type));
         scanner.setStopKey(metadata.stopRow);
         scanner.setFilter(fl);
-        scanner.setMaxNumRows(Math.min((limit * page), 10000));
+        scanner.setMaxNumRows(Math.min(limit + skip, 10000));
 
         final Deferred<List<MetricSchemaRecord>> results = new Deferred<List<MetricSchemaRecord>>();
 
@@ -339,7 +441,7 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
          */
         final class ScannerCB implements Callback<Object, ArrayList<ArrayList<KeyValue>>> {
 
-            int recordsToSkip = limit * (page - 1);
+            int recordsToSkip = skip;
 
             /**
              * Scans rows.
@@ -519,6 +621,16 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
         }
     }
 
+    @Override
+    public Properties getServiceProperties() {
+        Properties serviceProps = new Properties();
+
+        for (Property property : Property.values()) {
+            serviceProps.put(property.getName(), property.getDefaultValue());
+        }
+        return serviceProps;
+    }
+
     private String _getValueForType(MetricSchemaRecord record, RecordType type) {
         switch (type) {
             case NAMESPACE:
@@ -671,7 +783,13 @@ public class AsyncHbaseSchemaService extends DefaultService implements SchemaSer
      */
     public enum Property {
 
-        HBASE_ZOOKEEPER_CONNECT("service.property.schema.hbase.zookeeper.connect", "hbase.zookeeper.com:1234");
+        HBASE_ZOOKEEPER_CONNECT("service.property.schema.hbase.zookeeper.connect", "hbase.zookeeper.com:1234"),
+        /** The maximum number of recently written row keys whose puts are skipped. A value of 0 disables deduplication. */
+        DEDUP_MAX_ROW_KEYS("service.property.schema.dedup.max.row.keys", "1000000"),
+        /** The time in seconds after which a row key is forgotten and its rows are written again. */
+        DEDUP_EXPIRY_IN_SEC("service.property.schema.dedup.expiry.in.sec", "86400"),
+        /** Indicates whether existing row keys are loaded from the scope schema table in the background, starting with the first put. */
+        DEDUP_WARMUP("service.property.schema.dedup.warmup", "false");
 
         private final String _name;
         private final String _defaultValue;
@@ -32,6 +32,7 @@
 package com.salesforce.dva.argus.service.schema;
 
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import com.salesforce.dva.argus.entity.MetricSchemaRecord;
 import com.salesforce.dva.argus.entity.MetricSchemaRecordQuery;
 import com.salesforce.dva.argus.inject.SLF4JTypeListener;
@@ -42,25 +43,39 @@ import com.salesforce.dva.argus.service.SchemaService.RecordType;
 import com.salesforce.dva.argus.service.tsdb.MetricQuery;
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.system.SystemException;
 
 import org.slf4j.Logger;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The default implementation of the discover service. 
  *
  * @author  Tom Valine (tvaline@salesforce.com)
  */
+@Singleton
 public class DefaultDiscoveryService extends DefaultService implements DiscoveryService {
 
     //~ Static fields/initializers *******************************************************************************************************************
 
     private static final int HARD_LIMIT = 20;
+    private static final int PAGE_SIZE = 200;
     private static final char[] WILDCARD_CHARSET = new char[] { '*', '?', '[', ']', '|' };
 
     //~ Instance fields ******************************************************************************************************************************
@@ -68,6 +83,7 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
     @SLF4JTypeListener.InjectLogger
     private Logger _logger;
     private final SchemaService _schemaService;
+    private final ExecutorService _scanExecutorService;
 
     //~ Constructors *********************************************************************************************************************************
 
@@ -81,6 +97,22 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
     public DefaultDiscoveryService(SchemaService schemaService, SystemConfiguration config) {
     	super(config);
         this._schemaService = schemaService;
+
+        int threads = Integer.parseInt(config.getValue(Property.DISCOVERY_SCAN_THREADS.getName(), Property.DISCOVERY_SCAN_THREADS.getDefaultValue()));
+
+        SystemAssert.requireArgument(threads > 0, "Number of discovery scan threads must be greater than 0.");
+        _scanExecutorService = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+
+                    private final AtomicInteger _id = new AtomicInteger(0);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "discovery-scan-" + _id.getAndIncrement());
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -130,7 +162,7 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
         requireNotDisposed();
         SystemAssert.requireArgument(query != null, "Metric query cannot be null.");
 
-        Map<String, MetricQuery> queries = new HashMap<String, MetricQuery>(HARD_LIMIT);
+        Map<String, MetricQuery> queries = new LinkedHashMap<String, MetricQuery>(HARD_LIMIT);
         long start = System.nanoTime();
 
         if (isWildcardQuery(query)) {
@@ -138,48 +170,42 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
             if (query.getTags() == null || query.getTags().isEmpty()) {
                 MetricSchemaRecordQuery schemaQuery = new MetricSchemaRecordQuery(query.getNamespace(), query.getScope(), query.getMetric(), "*",
                     "*");
-                int page = 1;
 
-                while (true) {
-                    List<MetricSchemaRecord> records = _schemaService.get(schemaQuery, 200, page++);
-
-                    if (records.isEmpty()) {
-                        break;
-                    }
-                    for (MetricSchemaRecord record : records) {
-                        String identifier = new StringBuilder(record.getScope()).append(record.getMetric()).append(record.getNamespace()).toString();
+                for (MetricSchemaRecord record : _scan(schemaQuery)) {
+                    String identifier = _getIdentifier(record);
 
-                        if (!queries.containsKey(identifier)) {
-                            if (queries.size() == HARD_LIMIT) {
-                                break;
-                            }
+                    if (!queries.containsKey(identifier)) {
+                        if (queries.size() == HARD_LIMIT) {
+                            break;
+                        }
 
-                            MetricQuery mq = new MetricQuery(record.getScope(), record.getMetric(), null, 0L, 1L);
+                        MetricQuery mq = new MetricQuery(record.getScope(), record.getMetric(), null, 0L, 1L);
 
-                            mq.setNamespace(record.getNamespace());
-                            _copyRemainingProperties(mq, query);
-                            queries.put(identifier, mq);
-                        }
-                    }
-                    if (queries.size() == HARD_LIMIT) {
-                        break;
+                        mq.setNamespace(record.getNamespace());
+                        _copyRemainingProperties(mq, query);
+                        queries.put(identifier, mq);
                     }
                 }
             } else {
+                List<Future<List<MetricSchemaRecord>>> scans = new ArrayList<Future<List<MetricSchemaRecord>>>(query.getTags().size());
+
+                // The tag scans run concurrently and are merged in tag order as they complete.
                 for (Entry<String, String> tag : query.getTags().entrySet()) {
-                    MetricSchemaRecordQuery schemaQuery = new MetricSchemaRecordQuery(query.getNamespace(), query.getScope(), query.getMetric(),
-                        tag.getKey(), tag.getValue());
-                    int page = 1;
+                    final MetricSchemaRecordQuery schemaQuery = new MetricSchemaRecordQuery(query.getNamespace(), query.getScope(),
+                        query.getMetric(), tag.getKey(), tag.getValue());
 
-                    while (true) {
-                        List<MetricSchemaRecord> records = _schemaService.get(schemaQuery, 200, page++);
+                    scans.add(_scanExecutorService.submit(new Callable<List<MetricSchemaRecord>>() {
 
-                        if (records.isEmpty()) {
-                            break;
-                        }
-                        for (MetricSchemaRecord record : records) {
-                            String identifier = new StringBuilder(record.getScope()).append(record.getMetric()).append(record.getNamespace())
-                                .toString();
+                                @Override
+                                public List<MetricSchemaRecord> call() {
+                                    return _scan(schemaQuery);
+                                }
+                            }));
+                }
+                try {
+                    for (Future<List<MetricSchemaRecord>> scan : scans) {
+                        for (MetricSchemaRecord record : _await(scan)) {
+                            String identifier = _getIdentifier(record);
 
                             if (queries.containsKey(identifier)) {
                                 MetricQuery mq = queries.get(identifier);
@@ -192,11 +218,7 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
                                 } else {
                                     mq.setTag(record.getTagKey(), record.getTagValue());
                                 }
-                            } else {
-                                if (queries.size() == HARD_LIMIT) {
-                                    break;
-                                }
-
+                            } else if (queries.size() < HARD_LIMIT) {
                                 Map<String, String> tags = new HashMap<String, String>();
 
                                 tags.put(record.getTagKey(), record.getTagValue());
@@ -208,9 +230,10 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
                                 queries.put(identifier, mq);
                             }
                         }
-                        if (queries.size() == HARD_LIMIT) {
-                            break;
-                        }
+                    }
+                } finally {
+                    for (Future<List<MetricSchemaRecord>> scan : scans) {
+                        scan.cancel(true);
                     }
                 }
             } // end if-else
@@ -226,6 +249,51 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
         return queryList;
     }
 
+    /*
+     * Reads the records matching a schema query page by page, resuming each page after the last record of the previous one. The scan ends once all
+     * records have been read or the records of more than HARD_LIMIT distinct metrics have been seen, since no further metric can be matched.
+     */
+    private List<MetricSchemaRecord> _scan(MetricSchemaRecordQuery schemaQuery) {
+        List<MetricSchemaRecord> result = new ArrayList<MetricSchemaRecord>();
+        Set<String> identifiers = new HashSet<String>();
+        MetricSchemaRecord last = null;
+
+        while (identifiers.size() <= HARD_LIMIT) {
+            List<MetricSchemaRecord> records = _schemaService.get(schemaQuery, PAGE_SIZE, last);
+
+            if (records.isEmpty()) {
+                break;
+            }
+            for (MetricSchemaRecord record : records) {
+                identifiers.add(_getIdentifier(record));
+            }
+            result.addAll(records);
+            last = records.get(records.size() - 1);
+            if (records.size() < PAGE_SIZE) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private List<MetricSchemaRecord> _await(Future<List<MetricSchemaRecord>> scan) {
+        try {
+            return scan.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("Interrupted while waiting for schema records.", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof SystemException) {
+                throw (SystemException) ex.getCause();
+            }
+            throw new SystemException("Failed to read schema records.", ex.getCause());
+        }
+    }
+
+    private String _getIdentifier(MetricSchemaRecord record) {
+        return new StringBuilder(record.getScope()).append(record.getMetric()).append(record.getNamespace()).toString();
+    }
+
     @Override
     public boolean isWildcardQuery(MetricQuery query) {
         if (_containsWildcard(query.getScope()) || _containsWildcard(query.getMetric())) {
@@ -285,5 +353,60 @@ public class DefaultDiscoveryService extends DefaultService implements Discovery
         dest.setDownsampler(orig.getDownsampler());
         dest.setDownsamplingPeriod(orig.getDownsamplingPeriod());
     }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        _scanExecutorService.shutdownNow();
+    }
+
+    @Override
+    public Properties getServiceProperties() {
+        Properties serviceProps = new Properties();
+
+        for (Property property : Property.values()) {
+            serviceProps.put(property.getName(), property.getDefaultValue());
+        }
+        return serviceProps;
+    }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * Enumerates the implementation specific configuration properties.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    public enum Property {
+
+        /** The number of threads used to run the schema scans of wildcard queries concurrently. */
+        DISCOVERY_SCAN_THREADS("service.property.discovery.scan.threads", "8");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
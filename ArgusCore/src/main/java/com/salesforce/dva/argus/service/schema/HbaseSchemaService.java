@@ -64,6 +64,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -217,6 +218,14 @@ public class HbaseSchemaService extends DefaultService implements SchemaService
         return record;
     }
 
+    /* The smallest row key that sorts after the row key of the given record. */
+    private static byte[] _constructStartRowAfter(MetricSchemaRecord record, TableType type) {
+        byte[] rowKey = Bytes.toBytes(_constructRowKey(record.getNamespace(), record.getScope(), record.getMetric(), record.getTagKey(),
+                record.getTagValue(), type));
+
+        return Arrays.copyOf(rowKey, rowKey.length + 1);
+    }
+
     //~ Methods **************************************************************************************************************************************
 
     private HConnection _createHConnection(SystemConfiguration systemConfig) {
@@ -332,7 +341,18 @@ public class HbaseSchemaService extends DefaultService implements SchemaService
         SystemAssert.requireArgument(query != null, "Metric Schema Record query cannot be null.");
         SystemAssert.requireArgument(limit > 0, "Limit must be a positive integer.");
         SystemAssert.requireArgument(page > 0, "Page must be a positive integer.");
+        return _get(query, limit, ((long) limit) * (page - 1), null);
+    }
+
+    @Override
+    public List<MetricSchemaRecord> get(MetricSchemaRecordQuery query, int limit, MetricSchemaRecord startAfter) {
+        requireNotDisposed();
+        SystemAssert.requireArgument(query != null, "Metric Schema Record query cannot be null.");
+        SystemAssert.requireArgument(limit > 0, "Limit must be a positive integer.");
+        return _get(query, limit, 0, startAfter);
+    }
 
+    private List<MetricSchemaRecord> _get(MetricSchemaRecordQuery query, int limit, long recordsToSkip, MetricSchemaRecord startAfter) {
         List<MetricSchemaRecord> records = new ArrayList<MetricSchemaRecord>(limit);
         HTableInterface tableToUse = null;
 
@@ -355,10 +375,10 @@ public class HbaseSchemaService extends DefaultService implements SchemaService
             FilterList fl = new FilterList(FilterList.Operator.MUST_PASS_ALL, new KeyOnlyFilter(), new FirstKeyOnlyFilter(), rowFilter);
             Scan scan = new Scan();
 
-            scan.setStartRow(metadata.startRow);
+            scan.setStartRow(startAfter == null ? metadata.startRow : _constructStartRowAfter(startAfter, metadata.type));
             scan.setStopRow(metadata.stopRow);
             scan.setFilter(fl);
-            scan.setCaching(Math.min((limit * page), 10000));
+            scan.setCaching((int) Math.min(limit + recordsToSkip, 10000));
 
             ResultScanner scanner = null;
 
@@ -367,7 +387,6 @@ public class HbaseSchemaService extends DefaultService implements SchemaService
 
                 Iterator<Result> resultsIter = scanner.iterator();
                 long start = System.nanoTime();
-                long recordsToSkip = ((long) limit) * (page - 1);
                 long count = 0;
 
                 while (resultsIter.hasNext()) {
@@ -31,8 +31,6 @@
 	 
 package com.salesforce.dva.argus.service.tsdb;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.salesforce.dva.argus.entity.Annotation;
@@ -50,15 +48,24 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Properties;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.salesforce.dva.argus.system.SystemAssert.requireArgument;
 
@@ -78,6 +85,12 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
     private static final Long END_TIME_LIMIT_IN_MILLIS = 60000L;
     private static final String QUERY_LATENCY_COUNTER = "query.latency";
     private static final String QUERY_COUNT_COUNTER = "query.count"; 
+    private static final String CACHE_WRITE_QUEUED_COUNTER = "cache.write.queued";
+    private static final String CACHE_WRITE_DROPPED_COUNTER = "cache.write.dropped";
+    private static final String CACHE_WRITE_WRITTEN_COUNTER = "cache.write.written";
+
+    /* Keys are versioned with the entry encoding, so that entries written in an older encoding are never decoded. */
+    private static final String CACHE_KEY_PREFIX = "v" + MetricCacheCodec.VERSION + ":";
 
     //~ Instance fields ******************************************************************************************************************************
 
@@ -85,7 +98,12 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
     private final TSDBService _defaultTsdbService;
     private final CacheService _cacheService;
     private final MonitorService _monitorService;
-    private final ObjectMapper _mapper;
+    private final Map<String, List<Metric>> _pendingCacheWrites = new LinkedHashMap<>();
+    private final AtomicBoolean _cacheWriteScheduled = new AtomicBoolean(false);
+    private final ExecutorService _cacheWriteExecutor;
+    private final int _maxPendingCacheWrites;
+    private final int _cacheWriteBatchSize;
+    private int _pendingCacheWriteCount;
 
     //~ Constructors *********************************************************************************************************************************
 
@@ -108,7 +126,22 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
         _cacheService = cacheService;
         _monitorService = monitorService;
         _defaultTsdbService = tsdbService;
-        _mapper = new ObjectMapper();
+        _maxPendingCacheWrites = Integer.parseInt(config.getValue(Property.CACHE_WRITE_MAX_PENDING.getName(),
+                Property.CACHE_WRITE_MAX_PENDING.getDefaultValue()));
+        _cacheWriteBatchSize = Integer.parseInt(config.getValue(Property.CACHE_WRITE_BATCH_SIZE.getName(),
+                Property.CACHE_WRITE_BATCH_SIZE.getDefaultValue()));
+        requireArgument(_maxPendingCacheWrites > 0, "Maximum pending cache writes must be greater than 0.");
+        requireArgument(_cacheWriteBatchSize > 0, "Cache write batch size must be greater than 0.");
+        _cacheWriteExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "cache-writer");
+
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
     }
 
     //~ Methods **************************************************************************************************************************************
@@ -166,10 +199,7 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
             MetricQueryTimestamp queryWithTimestamp = map.get(metricQuery);
 
             if (!compulsoryCacheMiss(metricQuery)) {
-                // start thread to insert into cache
-                Thread cacheInsertThread = new CacheInsertThread(entry.getValue(), metricQuery);
-
-                cacheInsertThread.start();
+                enqueueCacheWrite(entry.getValue(), metricQuery);
 
                 List<Metric> metrics = new ArrayList<Metric>();
                 long beforeTime = System.currentTimeMillis();
@@ -277,7 +307,7 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
      * @return  The cache key.
      */
     private String constructMetricQueryKey(Long startTimeStampBoundary, Metric metric, MetricQuery query) {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(CACHE_KEY_PREFIX);
 
         sb.append(startTimeStampBoundary).append(":");
         sb.append(query.getNamespace()).append(":");
@@ -303,7 +333,7 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
      * @return  The cache key.
      */
     private String constructMetricQueryKey(Long startTimeStampBoundary, MetricQuery query) {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(CACHE_KEY_PREFIX);
 
         sb.append(startTimeStampBoundary).append(":");
         sb.append(query.getNamespace()).append(":");
@@ -348,7 +378,7 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
         List<String> metricQueryKeys = new ArrayList<String>();
 
         for (Long timeStamp = startTimeQuery; timeStamp < endTimeQuery; timeStamp = timeStamp + DURATION_IN_MILLIS) {
-            StringBuilder sb = new StringBuilder();
+            StringBuilder sb = new StringBuilder(CACHE_KEY_PREFIX);
 
             sb.append(timeStamp).append(":");
             sb.append(query.getNamespace()).append(":");
@@ -416,7 +446,7 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
             try {
             	beforeTime = System.currentTimeMillis();
             	
-                Map<String, List<String>> keyValueMap = _cacheService.getRange(new LinkedHashSet<String>(cacheMetricQueryKeys), 0, -1);
+                Map<String, List<byte[]>> keyValueMap = _cacheService.getBytesRange(new LinkedHashSet<String>(cacheMetricQueryKeys), 0, -1);
                 boolean allCachedKeysFound = true;
 
                 if (keyValueMap == null) {
@@ -424,7 +454,7 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
                             query.getEndTimestamp()));
                     continue;
                 }
-                for (List<String> value : keyValueMap.values()) {
+                for (List<byte[]> value : keyValueMap.values()) {
                     if (value == null || value.isEmpty()) {
                         uncached.add(new MetricQueryTimestamp(query, originalStartTimestamp, originalEndTimestamp, query.getStartTimestamp(),
                                 query.getEndTimestamp()));
@@ -442,26 +472,31 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
                     Metric combinedMetric = null;
                     Map<String, Metric> tagNameAndMetricMap = new HashMap<String, Metric>();
 
-                    for (List<String> value : keyValueMap.values()) {
-                        List<Metric> metrics = _mapper.readValue(value.toString(), new TypeReference<List<Metric>>() { });
-                        for (Metric metric : metrics) {
-                            if (!tagNameAndMetricMap.containsKey(metric.getTags().toString())) {
-                                combinedMetric = new Metric(metric);
-                                tagNameAndMetricMap.put(metric.getTags().toString(), combinedMetric);
-                            } else {
-                                combinedMetric = tagNameAndMetricMap.get(metric.getTags().toString());
-                            }
+                    List<Metric> metrics = new ArrayList<Metric>();
 
-                            Map<Long, String> filteredDatapoints = new LinkedHashMap<Long, String>();
+                    for (List<byte[]> value : keyValueMap.values()) {
+                        for (byte[] bytes : value) {
+                            metrics.addAll(MetricCacheCodec.decode(bytes));
+                        }
+                    }
+                    for (Metric metric : metrics) {
+                        if (!tagNameAndMetricMap.containsKey(metric.getTags().toString())) {
+                            combinedMetric = new Metric(metric);
+                            combinedMetric.setQuery(query);
+                            tagNameAndMetricMap.put(metric.getTags().toString(), combinedMetric);
+                        } else {
+                            combinedMetric = tagNameAndMetricMap.get(metric.getTags().toString());
+                        }
+
+                        Map<Long, String> filteredDatapoints = new LinkedHashMap<Long, String>();
 
-                            // Trim values based on user time
-                            for (Map.Entry<Long, String> datapoint : metric.getDatapoints().entrySet()) {
-                                if (datapoint.getKey() >= originalStartTimestamp) {
-                                    filteredDatapoints.put(datapoint.getKey(), datapoint.getValue());
-                                }
+                        // Trim values based on user time
+                        for (Map.Entry<Long, String> datapoint : metric.getDatapoints().entrySet()) {
+                            if (datapoint.getKey() >= originalStartTimestamp) {
+                                filteredDatapoints.put(datapoint.getKey(), datapoint.getValue());
                             }
-                            combinedMetric.addDatapoints(filteredDatapoints);
                         }
+                        combinedMetric.addDatapoints(filteredDatapoints);
                     }
                     afterTime = System.currentTimeMillis();
                     _logger.info("Time spent in trimming data: {}", afterTime - beforeTime);
@@ -558,9 +593,86 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
         return false;
     }
 
+    /**
+     * Queues the metrics returned for a query to be written to the cache. Writes for a cache key that is still pending replace the pending values,
+     * so repeated results for the same key are written once. If the pending writes would exceed the configured bound, the result is dropped.
+     *
+     * @param  metrics      The metrics to write.
+     * @param  metricQuery  The corresponding metric query.
+     */
+    void enqueueCacheWrite(List<Metric> metrics, MetricQuery metricQuery) {
+        Map<String, List<Metric>> cacheMap = fractureMetricIntoDayBoundary(metrics, metricQuery);
+        int entries = 0;
+
+        for (List<Metric> values : cacheMap.values()) {
+            entries += values.size();
+        }
+        synchronized (_pendingCacheWrites) {
+            int replaced = 0;
+
+            for (String key : cacheMap.keySet()) {
+                List<Metric> pending = _pendingCacheWrites.get(key);
+
+                replaced += pending == null ? 0 : pending.size();
+            }
+            if (_pendingCacheWriteCount - replaced + entries > _maxPendingCacheWrites) {
+                _logger.warn("Dropping {} cache entries since the cache write queue is full.", entries);
+                _monitorService.modifyCustomCounter(CACHE_WRITE_DROPPED_COUNTER, entries, null);
+                return;
+            }
+            for (Map.Entry<String, List<Metric>> entry : cacheMap.entrySet()) {
+                List<Metric> pending = _pendingCacheWrites.remove(entry.getKey());
+
+                _pendingCacheWriteCount -= pending == null ? 0 : pending.size();
+                _pendingCacheWrites.put(entry.getKey(), entry.getValue());
+                _pendingCacheWriteCount += entry.getValue().size();
+            }
+        }
+        _monitorService.modifyCustomCounter(CACHE_WRITE_QUEUED_COUNTER, entries, null);
+        if (_cacheWriteScheduled.compareAndSet(false, true)) {
+            try {
+                _cacheWriteExecutor.execute(new CacheWriter());
+            } catch (RejectedExecutionException ex) {
+                _cacheWriteScheduled.set(false);
+                _logger.warn("Cache writer is not accepting writes.", ex);
+            }
+        }
+    }
+
+    /* Removes up to one batch of pending cache writes. */
+    private Map<String, List<Metric>> takeCacheWriteBatch() {
+        Map<String, List<Metric>> batch = new LinkedHashMap<>();
+
+        synchronized (_pendingCacheWrites) {
+            Iterator<Map.Entry<String, List<Metric>>> iterator = _pendingCacheWrites.entrySet().iterator();
+
+            while (iterator.hasNext() && batch.size() < _cacheWriteBatchSize) {
+                Map.Entry<String, List<Metric>> entry = iterator.next();
+
+                batch.put(entry.getKey(), entry.getValue());
+                _pendingCacheWriteCount -= entry.getValue().size();
+                iterator.remove();
+            }
+        }
+        return batch;
+    }
+
+    private int getTimeUntilEndOfHour(Long timestamp) {
+        Long timestampPlusOneHour = timestamp + 3600 * 1000;
+        Long endHourTimeStamp = convertTimeStampToBeginningHour(timestampPlusOneHour);
+
+        return (int) (endHourTimeStamp - timestamp) / 1000;
+    }
+
     @Override
     public void dispose() {
         super.dispose();
+        _cacheWriteExecutor.shutdown();
+        try {
+            _cacheWriteExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            _logger.debug("Await Termination Interrupted", e);
+        }
         _cacheService.dispose();
         _defaultTsdbService.dispose();
     }
@@ -686,58 +798,97 @@ public class CachedTSDBService extends DefaultService implements TSDBService {
     }
 
     /**
-     * Thread that inserts metric results to cache using metric query as a basis for the key.
+     * Drains the pending cache writes in batches. Only one writer is scheduled at a time, and it keeps running until no pending writes remain.
      *
      * @author  Dilip Devaraj (ddevaraj@salesforce.com)
      */
-    private class CacheInsertThread extends Thread {
-
-        List<Metric> metrics;
-        MetricQuery metricQuery;
-
-        /**
-         * Creates a new CacheInsertThread object.
-         *
-         * @param  metrics      The metrics to insert.
-         * @param  metricQuery  The metric corresponding metric query.
-         */
-        public CacheInsertThread(List<Metric> metrics, MetricQuery metricQuery) {
-            this.metrics = metrics;
-            this.metricQuery = metricQuery;
-        }
+    private class CacheWriter implements Runnable {
 
         @Override
         public void run() {
-            try {
-                _insertIntoCache();
-            } catch (Exception ex) {
-                _logger.error("Error occured Reason:", ex.toString());
+            while (true) {
+                Map<String, List<Metric>> batch = takeCacheWriteBatch();
+
+                if (batch.isEmpty()) {
+                    _cacheWriteScheduled.set(false);
+                    synchronized (_pendingCacheWrites) {
+                        if (_pendingCacheWrites.isEmpty() || !_cacheWriteScheduled.compareAndSet(false, true)) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                _write(batch);
             }
         }
 
-        private int getTimeUntilEndOfHour(Long timestamp) {
-            Long timestampPlusOneHour = timestamp + 3600 * 1000;
-            Long endHourTimeStamp = convertTimeStampToBeginningHour(timestampPlusOneHour);
+        private void _write(Map<String, List<Metric>> batch) {
+            Map<String, List<byte[]>> entries = new LinkedHashMap<>();
+            int count = 0;
 
-            return (int) (endHourTimeStamp - timestamp) / 1000;
-        }
-
-        private void _insertIntoCache() {
-            // fracture metric into day boundary from returned metrics
-            Map<String, List<Metric>> cacheMap = (TreeMap<String, List<Metric>>) fractureMetricIntoDayBoundary(metrics, metricQuery);
-
-            _logger.info("Inserting {} keys to cache", cacheMap.size());
             try {
-                for (Map.Entry<String, List<Metric>> entry : cacheMap.entrySet()) {
-                    for (Metric metric : entry.getValue()) {
-                        _cacheService.append(entry.getKey(), _mapper.writeValueAsString(metric), _cacheService.getCacheExpirationTime());
-                        _cacheService.expire(entry.getKey(), getTimeUntilEndOfHour(System.currentTimeMillis()));
-                    }
+                for (Map.Entry<String, List<Metric>> entry : batch.entrySet()) {
+                    entries.put(entry.getKey(), Collections.singletonList(MetricCacheCodec.encode(entry.getValue())));
+                    count += entry.getValue().size();
                 }
+                _logger.info("Inserting {} keys to cache", entries.size());
+                _cacheService.appendBytes(entries, getTimeUntilEndOfHour(System.currentTimeMillis()));
+                _monitorService.modifyCustomCounter(CACHE_WRITE_WRITTEN_COUNTER, count, null);
             } catch (Exception e) {
                 _logger.error("Error occured Reason:", e.toString());
             }
         }
     }
+
+    //~ Enums ****************************************************************************************************************************************
+
+    /**
+     * Enumerates the implementation specific configuration properties.
+     *
+     * @author  Dilip Devaraj (ddevaraj@salesforce.com)
+     */
+    public enum Property {
+
+        /** The maximum number of metric entries waiting to be written to the cache. Results beyond this bound are not cached. */
+        CACHE_WRITE_MAX_PENDING("service.property.tsdb.cache.write.max.pending", "10000"),
+        /** The maximum number of cache keys written in a single batch. */
+        CACHE_WRITE_BATCH_SIZE("service.property.tsdb.cache.write.batch.size", "100");
+
+        private final String _name;
+        private final String _defaultValue;
+
+        private Property(String name, String defaultValue) {
+            _name = name;
+            _defaultValue = defaultValue;
+        }
+
+        /**
+         * Returns the property name.
+         *
+         * @return  The property name.
+         */
+        public String getName() {
+            return _name;
+        }
+
+        /**
+         * Returns the default value for the property.
+         *
+         * @return  The default value.
+         */
+        public String getDefaultValue() {
+            return _defaultValue;
+        }
+    }
+
+    @Override
+    public Properties getServiceProperties() {
+        Properties serviceProps = new Properties();
+
+        for (Property property : Property.values()) {
+            serviceProps.put(property.getName(), property.getDefaultValue());
+        }
+        return serviceProps;
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -57,11 +57,16 @@ import java.text.MessageFormat;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
 
 import static com.salesforce.dva.argus.system.SystemAssert.*;
@@ -79,6 +84,12 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
     private static final int TSDB_DATAPOINTS_WRITE_MAX_SIZE = 100;
     private static final String QUERY_LATENCY_COUNTER = "query.latency";
     private static final String QUERY_COUNT_COUNTER = "query.count";    
+    private static final String WRITE_LATENCY_COUNTER = "write.latency";
+    private static final String WRITE_COUNT_COUNTER = "write.count";
+    private static final String WRITE_RETRY_COUNTER = "write.retries";
+    private static final String WRITE_FAILURE_COUNTER = "write.failures";
+    private static final String QUERY_COLLAPSED_COUNTER = "query.singleflight.collapsed";
+    private static final String QUERY_COLLAPSE_TIMEOUT_COUNTER = "query.singleflight.timeouts";
 
     //~ Instance fields ******************************************************************************************************************************
 
@@ -90,7 +101,16 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
     private final String _readEndpoint;
     private final SystemConfiguration _configuration;
     private final ExecutorService _executorService;
+    private final ExecutorService _writeExecutorService;
+    private final Semaphore _writePermits;
+    private final int _writeRetries;
+    private final long _writeRetryBackoffMillis;
     private final MonitorService _monitorService;
+    private final long _maxQueryResponseBytes;
+    private final boolean _singleflightEnabled;
+    private final long _singleflightMaxWaitMillis;
+    private final long _singleflightBucketMillis;
+    private final ConcurrentMap<String, QueryFlight> _inFlightQueries = new ConcurrentHashMap<>();
 
     //~ Constructors *********************************************************************************************************************************
 
@@ -118,16 +138,39 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
         int socketTimeout = Integer.parseInt(_configuration.getValue(Property.TSD_ENDPOINT_SOCKET_TIMEOUT.getName(),
                 Property.TSD_ENDPOINT_SOCKET_TIMEOUT.getDefaultValue()));
 
+        _maxQueryResponseBytes = Long.parseLong(_configuration.getValue(Property.TSD_QUERY_RESPONSE_MAX_BYTES.getName(),
+                Property.TSD_QUERY_RESPONSE_MAX_BYTES.getDefaultValue()));
+        _writeRetries = Integer.parseInt(_configuration.getValue(Property.TSD_WRITE_RETRIES.getName(), Property.TSD_WRITE_RETRIES.getDefaultValue()));
+        _writeRetryBackoffMillis = Long.parseLong(_configuration.getValue(Property.TSD_WRITE_RETRY_BACKOFF_MS.getName(),
+                Property.TSD_WRITE_RETRY_BACKOFF_MS.getDefaultValue()));
+        _singleflightEnabled = Boolean.parseBoolean(_configuration.getValue(Property.TSD_QUERY_SINGLEFLIGHT_ENABLED.getName(),
+                Property.TSD_QUERY_SINGLEFLIGHT_ENABLED.getDefaultValue()));
+        _singleflightMaxWaitMillis = Long.parseLong(_configuration.getValue(Property.TSD_QUERY_SINGLEFLIGHT_MAX_WAIT_MS.getName(),
+                Property.TSD_QUERY_SINGLEFLIGHT_MAX_WAIT_MS.getDefaultValue()));
+        _singleflightBucketMillis = Long.parseLong(_configuration.getValue(Property.TSD_QUERY_SINGLEFLIGHT_BUCKET_MS.getName(),
+                Property.TSD_QUERY_SINGLEFLIGHT_BUCKET_MS.getDefaultValue()));
+
+        String maxInFlightChunks = _configuration.getValue(Property.TSD_WRITE_MAX_INFLIGHT_CHUNKS.getName(),
+                Property.TSD_WRITE_MAX_INFLIGHT_CHUNKS.getDefaultValue());
+        int writeConcurrency = maxInFlightChunks.isEmpty() ? Math.max(1, connCount / 2) : Integer.parseInt(maxInFlightChunks);
+
         _readEndpoint = _configuration.getValue(Property.TSD_ENDPOINT_READ.getName(), Property.TSD_ENDPOINT_READ.getDefaultValue());
         _writeEndpoint = _configuration.getValue(Property.TSD_ENDPOINT_WRITE.getName(), Property.TSD_ENDPOINT_WRITE.getDefaultValue());
         requireArgument((_readEndpoint != null) && (!_readEndpoint.isEmpty()), "Illegal read endpoint URL.");
         requireArgument((_writeEndpoint != null) && (!_writeEndpoint.isEmpty()), "Illegal write endpoint URL.");
         requireArgument(connCount >= 2, "At least two connections are required.");
         requireArgument(connTimeout >= 1, "Timeout must be greater than 0.");
+        requireArgument(_maxQueryResponseBytes >= 1, "Maximum query response size must be greater than 0.");
+        requireArgument(_writeRetries >= 0, "Write retries cannot be negative.");
+        requireArgument(_singleflightMaxWaitMillis >= 0, "Singleflight maximum wait cannot be negative.");
+        requireArgument(_singleflightBucketMillis >= 0, "Singleflight time bucket cannot be negative.");
+        requireArgument(writeConcurrency >= 1, "At least one write chunk must be allowed in flight.");
         try {
             _readPort = getClient(_readEndpoint, connCount / 2, connTimeout, socketTimeout);
             _writePort = getClient(_writeEndpoint, connCount / 2, connTimeout, socketTimeout);
             _executorService = Executors.newFixedThreadPool(connCount);
+            _writeExecutorService = Executors.newFixedThreadPool(writeConcurrency);
+            _writePermits = new Semaphore(writeConcurrency);
         } catch (MalformedURLException ex) {
             throw new SystemException("Error initializing the TSDB HTTP Client.", ex);
         }
@@ -184,11 +227,13 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
                 _logger.warn("A TSDB HTTP client failed to shutdown properly.", ex);
             }
         }
-        _executorService.shutdownNow();
-        try {
-            _executorService.awaitTermination(10, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            _logger.debug("Await Termination Interrupted", e);
+        for (ExecutorService executorService : new ExecutorService[] { _executorService, _writeExecutorService }) {
+            executorService.shutdownNow();
+            try {
+                executorService.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                _logger.debug("Await Termination Interrupted", e);
+            }
         }
     }
 
@@ -209,7 +254,7 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
                 fracturedList.addAll(fractureMetric(metric));
             }
         }
-        put(fracturedList, _writeEndpoint + "/api/put", HttpMethod.POST);
+        put(fracturedList, _writeEndpoint + "/api/put", HttpMethod.POST, "metrics");
     }
 
     /** @see  TSDBService#getMetrics(java.util.List) */
@@ -221,19 +266,19 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
 
         long start = System.currentTimeMillis();
         Map<MetricQuery, List<Metric>> metricsMap = new HashMap<>();
-        Map<MetricQuery, Future<List<Metric>>> futures = new HashMap<>();
+        Map<MetricQuery, PendingQuery> futures = new HashMap<>();
         Map<MetricQuery, Long> queryStartExecutionTime = new HashMap<>();
         String pattern = _readEndpoint + "/api/query?no_annotations=true&{0}";
 
         for (MetricQuery query : queries) {
             String requestUrl = MessageFormat.format(pattern, query.toString());
 
-            futures.put(query, _executorService.submit(new QueryWorker(requestUrl)));
+            futures.put(query, _submitQuery(query, requestUrl));
             queryStartExecutionTime.put(query, System.currentTimeMillis());
         }
-        for (Entry<MetricQuery, Future<List<Metric>>> entry : futures.entrySet()) {
+        for (Entry<MetricQuery, PendingQuery> entry : futures.entrySet()) {
             try {
-                List<Metric> m = entry.getValue().get();
+                List<Metric> m = _awaitQuery(entry.getKey(), entry.getValue());
                 List<Metric> metrics = new ArrayList<>();
 
                 if (m != null) {
@@ -256,6 +301,105 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
         return metricsMap;
     }
 
+    /*
+     * Submits the query for execution. When singleflight is enabled and an identical query whose window contains the window of this query is
+     * already in flight, the in flight query is joined instead of issuing another request to the TSDB. An identical query in the same time
+     * bucket that does not cover the whole window is not joined, since its result would be missing data points.
+     */
+    private PendingQuery _submitQuery(MetricQuery query, String requestUrl) {
+        if (!_singleflightEnabled) {
+            return new PendingQuery(_executorService.submit(new QueryWorker(requestUrl)), requestUrl, false, false);
+        }
+
+        String key = _getSingleflightKey(query);
+        QueryFlight flight = new QueryFlight(key, requestUrl, query.getStartTimestamp(), query.getEndTimestamp());
+        QueryFlight existing = _inFlightQueries.putIfAbsent(key, flight);
+
+        if (existing != null) {
+            if (!existing.covers(query)) {
+                return new PendingQuery(_executorService.submit(new QueryWorker(requestUrl)), requestUrl, false, false);
+            }
+            _monitorService.modifyCustomCounter(QUERY_COLLAPSED_COUNTER, 1, null);
+            return new PendingQuery(existing, requestUrl, true, true);
+        }
+        try {
+            _executorService.execute(flight);
+        } catch (RuntimeException ex) {
+            _inFlightQueries.remove(key, flight);
+            throw ex;
+        }
+        return new PendingQuery(flight, requestUrl, true, false);
+    }
+
+    /*
+     * Waits for a submitted query. Results of a shared flight are copied since every caller may modify the metrics it gets back. A caller that
+     * joined another flight waits at most the configured time before fetching independently.
+     */
+    private List<Metric> _awaitQuery(MetricQuery query, PendingQuery pending) throws InterruptedException, ExecutionException {
+        if (!pending.shared) {
+            return pending.future.get();
+        }
+
+        List<Metric> shared;
+
+        if (pending.joined) {
+            try {
+                shared = pending.future.get(_singleflightMaxWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                _logger.debug("Timed out waiting for in flight query {}. Fetching independently.", pending.requestUrl);
+                _monitorService.modifyCustomCounter(QUERY_COLLAPSE_TIMEOUT_COUNTER, 1, null);
+                return new QueryWorker(pending.requestUrl).call();
+            }
+        } else {
+            shared = pending.future.get();
+        }
+        if (shared == null) {
+            return null;
+        }
+
+        List<Metric> metrics = new ArrayList<>(shared.size());
+
+        for (Metric metric : shared) {
+            if (metric == null) {
+                continue;
+            }
+
+            Metric copy = new Metric(metric);
+
+            // A joined flight may cover a wider window within the same time bucket.
+            if (pending.joined && _singleflightBucketMillis > 0) {
+                Map<Long, String> datapoints = new LinkedHashMap<>();
+
+                for (Entry<Long, String> datapoint : metric.getDatapoints().entrySet()) {
+                    if (datapoint.getKey() >= query.getStartTimestamp() && datapoint.getKey() <= query.getEndTimestamp()) {
+                        datapoints.put(datapoint.getKey(), datapoint.getValue());
+                    }
+                }
+                copy.setDatapoints(datapoints);
+            }
+            metrics.add(copy);
+        }
+        return metrics;
+    }
+
+    /* Normalizes the query into a key that is independent of tag order and buckets the time window. */
+    private String _getSingleflightKey(MetricQuery query) {
+        long start = query.getStartTimestamp();
+        long end = query.getEndTimestamp();
+
+        if (_singleflightBucketMillis > 0) {
+            start = Math.floorDiv(start, _singleflightBucketMillis);
+            end = Math.floorDiv(end, _singleflightBucketMillis);
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append(query.getAggregator()).append(':').append(query.getDownsampler()).append(':').append(query.getDownsamplingPeriod()).append(':');
+        sb.append(query.getTSDBMetricName()).append(':').append(query.getMetric()).append(new TreeMap<>(query.getTags()));
+        sb.append(':').append(start).append(':').append(end);
+        return sb.toString();
+    }
+
     /** @see  TSDBService#putAnnotations(java.util.List) */
     @Override
     public void putAnnotations(List<Annotation> annotations) {
@@ -263,7 +407,7 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
         if (annotations != null) {
             List<AnnotationWrapper> wrappers = reconcileWrappers(toAnnotationWrappers(annotations));
 
-            put(wrappers, _writeEndpoint + "/api/annotation/bulk", HttpMethod.POST);
+            put(wrappers, _writeEndpoint + "/api/annotation/bulk", HttpMethod.POST, "annotations");
         }
     }
 
@@ -324,9 +468,13 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
         return (splits.length == 2) ? NamespaceService.NAMEPSACE_PREFIX + splits[1] : null;
     }
 
-    /* Writes objects in chunks. */
-    private <T> void put(List<T> objects, String endpoint, HttpMethod method) {
+    /*
+     * Writes objects in chunks. Chunks are pipelined through the write executor with at most a fixed number of chunks in flight across all
+     * callers. The calling thread blocks while that limit is reached and returns once every chunk has been written or has exhausted its retries.
+     */
+    private <T> void put(List<T> objects, String endpoint, HttpMethod method, String type) {
         if (objects != null) {
+            List<Future<?>> futures = new ArrayList<>();
             int chunkEnd = 0;
 
             while (chunkEnd < objects.size()) {
@@ -334,14 +482,82 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
 
                 chunkEnd = Math.min(objects.size(), chunkStart + CHUNK_SIZE);
                 try {
-                    StringEntity entity = new StringEntity(fromEntity(objects.subList(chunkStart, chunkEnd)));
-                    HttpResponse response = executeHttpRequest(method, endpoint, entity);
+                    _writePermits.acquire();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SystemException("Interrupted while waiting to write data.", ex);
+                }
+                try {
+                    futures.add(_writeExecutorService.submit(new WriteWorker<>(objects.subList(chunkStart, chunkEnd), endpoint, method, type)));
+                } catch (RuntimeException ex) {
+                    _writePermits.release();
+                    throw ex;
+                }
+            }
+
+            SystemException failure = null;
 
-                    extractResponse(response);
-                } catch (UnsupportedEncodingException ex) {
-                    throw new SystemException("Error posting data", ex);
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new SystemException("Interrupted while waiting for data to be written.", ex);
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause() instanceof SystemException ? SystemException.class.cast(ex.getCause())
+                                                                           : new SystemException("Error posting data", ex.getCause());
+                    }
                 }
             }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /*
+     * Writes a single chunk, retrying failed attempts up to the configured number of times. Only transport failures and server errors are retried,
+     * since a client error will not succeed on a retry. The delay between attempts doubles with every retry.
+     */
+    private <T> void putChunk(List<T> chunk, String endpoint, HttpMethod method, String type) {
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("type", type);
+
+        String content = fromEntity(chunk);
+
+        for (int attempt = 0;; attempt++) {
+            long start = System.currentTimeMillis();
+            int status = 0;
+
+            try {
+                HttpResponse response = executeHttpRequest(method, endpoint, new StringEntity(content));
+
+                status = response == null ? 0 : response.getStatusLine().getStatusCode();
+                extractResponse(response);
+                _monitorService.modifyCustomCounter(WRITE_LATENCY_COUNTER, (System.currentTimeMillis() - start), tags);
+                _monitorService.modifyCustomCounter(WRITE_COUNT_COUNTER, chunk.size(), tags);
+                return;
+            } catch (UnsupportedEncodingException ex) {
+                throw new SystemException("Error posting data", ex);
+            } catch (SystemException ex) {
+                // Without a status the request never got a response, which is a transport failure.
+                boolean retryable = status == 0 || status >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+
+                if (!retryable || attempt >= _writeRetries) {
+                    _monitorService.modifyCustomCounter(WRITE_FAILURE_COUNTER, 1, tags);
+                    throw ex;
+                }
+                _logger.warn("Failed to write {} chunk to TSDB, retrying. Reason: {}", type, ex.getMessage());
+                _monitorService.modifyCustomCounter(WRITE_RETRY_COUNTER, 1, tags);
+            }
+            try {
+                Thread.sleep(_writeRetryBackoffMillis << Math.min(attempt, 20));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SystemException("Interrupted while waiting to retry a write.", ex);
+            }
         }
     }
 
@@ -454,6 +670,61 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
         }
     }
 
+    /*
+     * Helper method to convert the HTTP response to the corresponding Java entity by parsing the entity content as it is read from the connection.
+     * The response is never buffered as a string and reading is aborted once the content exceeds the maximum query response size.
+     */
+    private <T> T toEntity(HttpResponse response, TypeReference<T> type) {
+        requireArgument(response != null, "Response content is null.");
+
+        int status = response.getStatusLine().getStatusCode();
+
+        if ((status < HttpStatus.SC_OK) || (status >= HttpStatus.SC_MULTIPLE_CHOICES)) {
+            extractResponse(response);
+        }
+
+        HttpEntity entity = response.getEntity();
+
+        if (entity == null) {
+            return null;
+        }
+
+        BoundedInputStream content = null;
+        boolean aborted = false;
+
+        try {
+            content = new BoundedInputStream(entity.getContent(), _maxQueryResponseBytes);
+            return _mapper.readValue(content, type);
+        } catch (IOException ex) {
+            if (content != null && content.isLimitExceeded()) {
+                aborted = true;
+                abortResponse(response);
+                throw new SystemException(MessageFormat.format("TSDB query response exceeded the maximum size of {0} bytes.", _maxQueryResponseBytes),
+                    ex);
+            }
+            throw new SystemException(ex);
+        } finally {
+            if (!aborted) {
+                try {
+                    EntityUtils.consume(entity);
+                } catch (IOException ex) {
+                    _logger.warn("Failed to close entity stream.", ex);
+                }
+            }
+        }
+    }
+
+    /* Closes the underlying connection without draining the remaining response content. */
+    private void abortResponse(HttpResponse response) {
+        if (response instanceof CloseableHttpResponse) {
+            try {
+                CloseableHttpResponse.class.cast(response).close();
+            } catch (IOException ex) {
+                _logger.warn("Failed to abort TSDB response.", ex);
+            }
+        }
+    }
+
     /* Helper method to convert a Java entity to a JSON string. */
     private <T> String fromEntity(T type) {
         try {
@@ -585,7 +856,24 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
         /** The TSDB socket connection timeout. */
         TSD_ENDPOINT_SOCKET_TIMEOUT("service.property.tsdb.endpoint.socket.timeout", "10000"),
         /** The TSDB connection count. */
-        TSD_CONNECTION_COUNT("service.property.tsdb.connection.count", "2");
+        TSD_CONNECTION_COUNT("service.property.tsdb.connection.count", "2"),
+        /** The maximum size in bytes of a single TSDB query response. */
+        TSD_QUERY_RESPONSE_MAX_BYTES("service.property.tsdb.query.response.max.bytes", "268435456"),
+        /** The maximum number of write chunks in flight. Defaults to the number of write connections. */
+        TSD_WRITE_MAX_INFLIGHT_CHUNKS("service.property.tsdb.write.max.inflight.chunks", ""),
+        /** The number of times a failed write chunk is retried. */
+        TSD_WRITE_RETRIES("service.property.tsdb.write.retries", "2"),
+        /** The delay in milliseconds before the first retry of a failed write chunk. The delay doubles with every further retry. */
+        TSD_WRITE_RETRY_BACKOFF_MS("service.property.tsdb.write.retry.backoff.ms", "100"),
+        /** Indicates whether concurrent identical queries share a single request to the TSDB. */
+        TSD_QUERY_SINGLEFLIGHT_ENABLED("service.property.tsdb.query.singleflight.enabled", "true"),
+        /** The maximum time in milliseconds to wait for a shared query before fetching independently. */
+        TSD_QUERY_SINGLEFLIGHT_MAX_WAIT_MS("service.property.tsdb.query.singleflight.max.wait.ms", "30000"),
+        /**
+         * The size in milliseconds of the time buckets within which queries may share a flight. A query only joins an in flight query whose window
+         * contains its own. Zero requires exact windows.
+         */
+        TSD_QUERY_SINGLEFLIGHT_BUCKET_MS("service.property.tsdb.query.singleflight.bucket.ms", "1000");
 
         private final String _name;
         private final String _defaultValue;
@@ -766,10 +1054,174 @@ public class DefaultTSDBService extends DefaultService implements TSDBService {
             _logger.debug("TSDB Query = " + _requestUrl);
 
             HttpResponse response = executeHttpRequest(HttpMethod.GET, _requestUrl, null);
-            List<Metric> metrics = toEntity(extractResponse(response), new TypeReference<List<Metric>>() { });
+            List<Metric> metrics = toEntity(response, new TypeReference<List<Metric>>() { });
             return metrics;
         }
     }
+
+    /**
+     * A query request that concurrent callers can share. The flight removes itself from the in flight queries once it completes.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    private class QueryFlight extends FutureTask<List<Metric>> {
+
+        private final String _key;
+        private final long _startTimestamp;
+        private final long _endTimestamp;
+
+        /**
+         * Creates a new QueryFlight object.
+         *
+         * @param  key             The singleflight key of the query. Cannot be null.
+         * @param  requestUrl      The URL to which the request will be issued. Cannot be null.
+         * @param  startTimestamp  The start of the queried window.
+         * @param  endTimestamp    The end of the queried window.
+         */
+        QueryFlight(String key, String requestUrl, long startTimestamp, long endTimestamp) {
+            super(new QueryWorker(requestUrl));
+            _key = key;
+            _startTimestamp = startTimestamp;
+            _endTimestamp = endTimestamp;
+        }
+
+        /* Indicates whether the result of this flight contains every data point of the given query's window. */
+        boolean covers(MetricQuery query) {
+            return _startTimestamp <= query.getStartTimestamp() && _endTimestamp >= query.getEndTimestamp();
+        }
+
+        @Override
+        protected void done() {
+            _inFlightQueries.remove(_key, this);
+        }
+    }
+
+    /**
+     * A submitted query together with how its result is shared.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    private static class PendingQuery {
+
+        private final Future<List<Metric>> future;
+        private final String requestUrl;
+        private final boolean shared;
+        private final boolean joined;
+
+        PendingQuery(Future<List<Metric>> future, String requestUrl, boolean shared, boolean joined) {
+            this.future = future;
+            this.requestUrl = requestUrl;
+            this.shared = shared;
+            this.joined = joined;
+        }
+    }
+
+    /**
+     * Helper class used to pipeline chunked writes. The in flight permit held for the chunk is released once the write completes.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    private class WriteWorker<T> implements Runnable {
+
+        private final List<T> _chunk;
+        private final String _endpoint;
+        private final HttpMethod _method;
+        private final String _type;
+
+        /**
+         * Creates a new WriteWorker object.
+         *
+         * @param  chunk     The objects to write. Cannot be null.
+         * @param  endpoint  The endpoint to which the objects are written. Cannot be null.
+         * @param  method    The HTTP method used for the write. Cannot be null.
+         * @param  type      The type of objects being written, used to tag the write counters. Cannot be null.
+         */
+        WriteWorker(List<T> chunk, String endpoint, HttpMethod method, String type) {
+            _chunk = chunk;
+            _endpoint = endpoint;
+            _method = method;
+            _type = type;
+        }
+
+        @Override
+        public void run() {
+            try {
+                putChunk(_chunk, _endpoint, _method, _type);
+            } finally {
+                _writePermits.release();
+            }
+        }
+    }
+
+    /**
+     * Input stream that fails once more than a fixed number of bytes has been read from it. Closing the stream after the limit was exceeded does
+     * not close the underlying stream, since that would drain the rest of the response from the connection.
+     *
+     * @author  Tom Valine (tvaline@salesforce.com)
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private final long _limit;
+        private long _count;
+        private boolean _limitExceeded;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            _limit = limit;
+        }
+
+        boolean isLimitExceeded() {
+            return _limitExceeded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+
+            if (result != -1) {
+                count(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+
+            if (result > 0) {
+                count(result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+
+            count(result);
+            return result;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!_limitExceeded) {
+                super.close();
+            }
+        }
+
+        private void count(long bytes) throws IOException {
+            _count += bytes;
+            if (_count > _limit) {
+                _limitExceeded = true;
+                throw new IOException("Read limit of " + _limit + " bytes exceeded.");
+            }
+        }
+    }
     
       @Override
        public Properties getServiceProperties() {
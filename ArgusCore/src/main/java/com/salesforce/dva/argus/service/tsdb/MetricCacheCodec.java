@@ -0,0 +1,537 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.salesforce.dva.argus.entity.DatapointSeries;
+import com.salesforce.dva.argus.entity.Metric;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, versioned binary encoding of the metrics cached for a single cache key. Compared to JSON, an encoded entry is a small fraction of the
+ * size and can be decoded without any text parsing of numbers.
+ *
+ * <p>Version 1 of the format is laid out as follows. All integers are unsigned LEB128 varints, and signed integers are zig-zag encoded first.</p>
+ *
+ * <ul>
+ *   <li>The format version byte.</li>
+ *   <li>A dictionary of the distinct names used by the metrics (namespace, scope, metric, display name, units, tag keys and tag values). Each
+ *     name is written once and referenced by index.</li>
+ *   <li>For each metric, its name references, its tags and its data points. Timestamps are written as the first timestamp, the first delta and
+ *     then delta-of-delta values, which are mostly zero for regularly sampled series. Values are written in one of three encodings chosen per
+ *     series: XOR compressed doubles when every value is the canonical string form of a double, delta encoded longs when every value is the
+ *     canonical string form of a long, and plain strings otherwise. This guarantees that decoding yields exactly the stored value strings.</li>
+ * </ul>
+ *
+ * <p>The metric query and TSDB UID are not part of the encoding.</p>
+ *
+ * @author  Dilip Devaraj (ddevaraj@salesforce.com)
+ */
+final class MetricCacheCodec {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The current version of the encoding. */
+    static final byte VERSION = 1;
+    private static final int VALUES_DOUBLE = 0;
+    private static final int VALUES_LONG = 1;
+    private static final int VALUES_STRING = 2;
+
+    //~ Constructors *********************************************************************************************************************************
+
+    private MetricCacheCodec() { }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Encodes a list of metrics.
+     *
+     * @param   metrics  The metrics to encode. Cannot be null.
+     *
+     * @return  The encoded metrics. Will never be null.
+     */
+    static byte[] encode(List<Metric> metrics) {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> names = new ArrayList<>();
+
+        for (Metric metric : metrics) {
+            intern(metric.getNamespace(), dictionary, names);
+            intern(metric.getScope(), dictionary, names);
+            intern(metric.getMetric(), dictionary, names);
+            intern(metric.getDisplayName(), dictionary, names);
+            intern(metric.getUnits(), dictionary, names);
+            for (Map.Entry<String, String> tag : metric.getTags().entrySet()) {
+                intern(tag.getKey(), dictionary, names);
+                intern(tag.getValue(), dictionary, names);
+            }
+        }
+
+        Output out = new Output();
+
+        out.writeByte(VERSION);
+        out.writeVarLong(names.size());
+        for (String name : names) {
+            out.writeString(name);
+        }
+        out.writeVarLong(metrics.size());
+        for (Metric metric : metrics) {
+            out.writeVarLong(reference(metric.getNamespace(), dictionary));
+            out.writeVarLong(reference(metric.getScope(), dictionary));
+            out.writeVarLong(reference(metric.getMetric(), dictionary));
+            out.writeVarLong(reference(metric.getDisplayName(), dictionary));
+            out.writeVarLong(reference(metric.getUnits(), dictionary));
+
+            Map<String, String> tags = metric.getTags();
+
+            out.writeVarLong(tags.size());
+            for (Map.Entry<String, String> tag : tags.entrySet()) {
+                out.writeVarLong(reference(tag.getKey(), dictionary));
+                out.writeVarLong(reference(tag.getValue(), dictionary));
+            }
+            writeDatapoints(metric.getDatapointSeries(), out);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a list of metrics.
+     *
+     * @param   bytes  The encoded metrics. Cannot be null.
+     *
+     * @return  The decoded metrics. Will never be null.
+     *
+     * @throws  IOException  If the bytes are not a valid encoding or use an unsupported version.
+     */
+    static List<Metric> decode(byte[] bytes) throws IOException {
+        try {
+            Input in = new Input(bytes);
+            int version = in.readByte();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported cache entry version " + version + ".");
+            }
+
+            String[] names = new String[in.readCount()];
+
+            for (int i = 0; i < names.length; i++) {
+                names[i] = in.readString();
+            }
+
+            int count = in.readCount();
+            List<Metric> metrics = new ArrayList<>(count);
+
+            for (int i = 0; i < count; i++) {
+                String namespace = dereference(in.readCount(), names);
+                String scope = dereference(in.readCount(), names);
+                String name = dereference(in.readCount(), names);
+                Metric metric = new Metric(scope, name);
+
+                metric.setNamespace(namespace);
+                metric.setDisplayName(dereference(in.readCount(), names));
+                metric.setUnits(dereference(in.readCount(), names));
+
+                int tagCount = in.readCount();
+                Map<String, String> tags = new HashMap<>(tagCount * 2);
+
+                for (int j = 0; j < tagCount; j++) {
+                    tags.put(dereference(in.readCount(), names), dereference(in.readCount(), names));
+                }
+                metric.setTags(tags);
+                readDatapoints(in, metric);
+                metrics.add(metric);
+            }
+            return metrics;
+        } catch (RuntimeException ex) {
+            throw new IOException("Malformed cache entry.", ex);
+        }
+    }
+
+    private static void intern(String name, Map<String, Integer> dictionary, List<String> names) {
+        if (name != null && !dictionary.containsKey(name)) {
+            dictionary.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    private static int reference(String name, Map<String, Integer> dictionary) {
+        return name == null ? 0 : dictionary.get(name) + 1;
+    }
+
+    private static String dereference(int reference, String[] names) {
+        return reference == 0 ? null : names[reference - 1];
+    }
+
+    private static void writeDatapoints(DatapointSeries series, Output out) {
+        int size = series.size();
+
+        out.writeVarLong(size);
+        if (size == 0) {
+            return;
+        }
+
+        long previous = series.getTimestamp(0);
+        long previousDelta = 0;
+
+        out.writeSignedVarLong(previous);
+        for (int i = 1; i < size; i++) {
+            long timestamp = series.getTimestamp(i);
+            long delta = timestamp - previous;
+
+            out.writeSignedVarLong(delta - previousDelta);
+            previous = timestamp;
+            previousDelta = delta;
+        }
+
+        int encoding = getValueEncoding(series);
+
+        out.writeByte(encoding);
+        switch (encoding) {
+            case VALUES_DOUBLE:
+                writeDoubles(series, out);
+                break;
+            case VALUES_LONG:
+
+                long previousValue = 0;
+
+                for (int i = 0; i < size; i++) {
+                    long value = Long.parseLong(series.getValue(i));
+
+                    out.writeSignedVarLong(value - previousValue);
+                    previousValue = value;
+                }
+                break;
+            default:
+                for (int i = 0; i < size; i++) {
+                    String value = series.getValue(i);
+
+                    if (value == null) {
+                        out.writeVarLong(0);
+                    } else {
+                        out.writeVarLong(1);
+                        out.writeString(value);
+                    }
+                }
+                break;
+        }
+    }
+
+    private static void readDatapoints(Input in, Metric metric) {
+        int size = in.readCount();
+
+        if (size == 0) {
+            return;
+        }
+
+        long[] timestamps = new long[size];
+        long delta = 0;
+
+        timestamps[0] = in.readSignedVarLong();
+        for (int i = 1; i < size; i++) {
+            delta += in.readSignedVarLong();
+            timestamps[i] = timestamps[i - 1] + delta;
+        }
+
+        int encoding = in.readByte();
+
+        switch (encoding) {
+            case VALUES_DOUBLE:
+                readDoubles(in, timestamps, metric);
+                break;
+            case VALUES_LONG:
+
+                long value = 0;
+
+                for (int i = 0; i < size; i++) {
+                    value += in.readSignedVarLong();
+                    metric.addDatapoint(timestamps[i], Long.toString(value));
+                }
+                break;
+            case VALUES_STRING:
+                for (int i = 0; i < size; i++) {
+                    metric.addDatapoint(timestamps[i], in.readVarLong() == 0 ? null : in.readString());
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown value encoding " + encoding + ".");
+        }
+    }
+
+    /* Chooses the most compact encoding that reproduces every value string exactly. */
+    private static int getValueEncoding(DatapointSeries series) {
+        boolean doubles = true;
+        boolean longs = true;
+
+        for (int i = 0; i < series.size() && (doubles || longs); i++) {
+            String value = series.getValue(i);
+
+            if (value == null) {
+                return VALUES_STRING;
+            }
+            if (doubles) {
+                try {
+                    doubles = Double.toString(Double.parseDouble(value)).equals(value);
+                } catch (NumberFormatException ex) {
+                    doubles = false;
+                }
+            }
+            if (longs) {
+                try {
+                    longs = Long.toString(Long.parseLong(value)).equals(value);
+                } catch (NumberFormatException ex) {
+                    longs = false;
+                }
+            }
+        }
+        return doubles ? VALUES_DOUBLE : (longs ? VALUES_LONG : VALUES_STRING);
+    }
+
+    /* XOR compression of consecutive values as described in the Gorilla time series database paper. */
+    private static void writeDoubles(DatapointSeries series, Output out) {
+        long previous = Double.doubleToRawLongBits(Double.parseDouble(series.getValue(0)));
+        int previousLeading = -1;
+        int previousTrailing = 0;
+
+        out.writeBits(previous, 64);
+        for (int i = 1; i < series.size(); i++) {
+            long bits = Double.doubleToRawLongBits(Double.parseDouble(series.getValue(i)));
+            long xor = bits ^ previous;
+
+            if (xor == 0) {
+                out.writeBits(0, 1);
+            } else {
+                int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+                int trailing = Long.numberOfTrailingZeros(xor);
+
+                if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+                    out.writeBits(2, 2);
+                    out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+                } else {
+                    int significant = 64 - leading - trailing;
+
+                    out.writeBits(3, 2);
+                    out.writeBits(leading, 5);
+                    out.writeBits(significant - 1, 6);
+                    out.writeBits(xor >>> trailing, significant);
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            previous = bits;
+        }
+        out.alignToByte();
+    }
+
+    private static void readDoubles(Input in, long[] timestamps, Metric metric) {
+        long previous = in.readBits(64);
+        int previousLeading = -1;
+        int previousTrailing = 0;
+
+        metric.addDatapoint(timestamps[0], Double.toString(Double.longBitsToDouble(previous)));
+        for (int i = 1; i < timestamps.length; i++) {
+            if (in.readBits(1) != 0) {
+                if (in.readBits(1) == 0) {
+                    if (previousLeading < 0) {
+                        throw new IllegalStateException("Missing leading zero count.");
+                    }
+                    previous ^= in.readBits(64 - previousLeading - previousTrailing) << previousTrailing;
+                } else {
+                    int leading = (int) in.readBits(5);
+                    int significant = (int) in.readBits(6) + 1;
+                    int trailing = 64 - leading - significant;
+
+                    previous ^= in.readBits(significant) << trailing;
+                    previousLeading = leading;
+                    previousTrailing = trailing;
+                }
+            }
+            metric.addDatapoint(timestamps[i], Double.toString(Double.longBitsToDouble(previous)));
+        }
+        in.alignToByte();
+    }
+
+    //~ Inner Classes ********************************************************************************************************************************
+
+    /**
+     * Growable output buffer supporting both byte aligned and bit level writes.
+     *
+     * @author  Dilip Devaraj (ddevaraj@salesforce.com)
+     */
+    private static final class Output {
+
+        private byte[] _buffer = new byte[256];
+        private int _position;
+        private int _bitCount;
+
+        void writeByte(int value) {
+            alignToByte();
+            ensureCapacity(1);
+            _buffer[_position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            alignToByte();
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeSignedVarLong(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, _buffer, _position, bytes.length);
+            _position += bytes.length;
+        }
+
+        /* Writes the low order bits of the value, most significant bit first. */
+        void writeBits(long value, int count) {
+            for (int i = count - 1; i >= 0; i--) {
+                if (_bitCount == 0) {
+                    ensureCapacity(1);
+                    _buffer[_position++] = 0;
+                }
+                if (((value >>> i) & 1) != 0) {
+                    _buffer[_position - 1] |= (byte) (0x80 >>> _bitCount);
+                }
+                _bitCount = (_bitCount + 1) & 7;
+            }
+        }
+
+        void alignToByte() {
+            _bitCount = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(_buffer, _position);
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (_position + bytes > _buffer.length) {
+                _buffer = Arrays.copyOf(_buffer, Math.max(_position + bytes, _buffer.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Input buffer supporting both byte aligned and bit level reads.
+     *
+     * @author  Dilip Devaraj (ddevaraj@salesforce.com)
+     */
+    private static final class Input {
+
+        private final byte[] _buffer;
+        private int _position;
+        private int _bitCount;
+
+        Input(byte[] buffer) {
+            _buffer = buffer;
+        }
+
+        int readByte() {
+            alignToByte();
+            return _buffer[_position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long result = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalStateException("Malformed varint.");
+        }
+
+        long readSignedVarLong() {
+            long value = readVarLong();
+
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readCount() {
+            long value = readVarLong();
+
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Invalid count " + value + ".");
+            }
+            return (int) value;
+        }
+
+        String readString() {
+            int length = readCount();
+
+            if (length > _buffer.length - _position) {
+                throw new IllegalStateException("String exceeds the buffer.");
+            }
+
+            String value = new String(_buffer, _position, length, StandardCharsets.UTF_8);
+
+            _position += length;
+            return value;
+        }
+
+        long readBits(int count) {
+            long result = 0;
+
+            for (int i = 0; i < count; i++) {
+                if (_bitCount == 0) {
+                    _position++;
+                }
+                result = (result << 1) | ((_buffer[_position - 1] >>> (7 - _bitCount)) & 1);
+                _bitCount = (_bitCount + 1) & 7;
+            }
+            return result;
+        }
+
+        void alignToByte() {
+            _bitCount = 0;
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -33,10 +33,10 @@ package com.salesforce.dva.argus.service.tsdb;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializerProvider;
@@ -48,9 +48,7 @@ import com.salesforce.dva.argus.service.TSDBService;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.TreeMap;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -61,6 +59,11 @@ import javax.xml.bind.DatatypeConverter;
  */
 class MetricTransform {
 
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final ObjectMapper META_MAPPER = new ObjectMapper();
+    private static final String STAGING_SCOPE = "staging";
+
     //~ Constructors *********************************************************************************************************************************
 
     private MetricTransform() { }
@@ -68,7 +71,8 @@ class MetricTransform {
     //~ Inner Classes ********************************************************************************************************************************
 
     /**
-     * The metric deserializer.
+     * The metric deserializer. Metrics are read directly from the token stream so that large query responses never need to be buffered as a
+     * string or a JSON tree.
      *
      * @author  Tom Valine (tvaline@salesforce.com), Bhinav Sura (bhinav.sura@salesforce.com)
      */
@@ -81,14 +85,41 @@ class MetricTransform {
 
         @Override
         public Metric deserialize(JsonParser jp, DeserializationContext dc) throws IOException {
-            JsonNode node = jp.getCodec().readTree(jp);
-            ObjectMapper mapper = new ObjectMapper();
-            Map<Long, String> datapoints = mapper.readValue(node.get("dps").traverse(), new TypeReference<TreeMap<Long, String>>() { });
+            if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+                throw dc.mappingException(Metric.class);
+            }
 
-            Map<String, String> tags = mapper.readValue(node.get("tags").traverse(), new TypeReference<Map<String, String>>() { });
+            String tsdbMetricName = null;
+            String tsuid = null;
+            Map<String, String> tags = new HashMap<>();
+
+            // The scope is not known until the metric name has been read, so data points are staged in a scratch metric and handed over without copying.
+            Metric staged = new Metric(STAGING_SCOPE, STAGING_SCOPE);
+
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = jp.getCurrentName();
+
+                jp.nextToken();
+                switch (fieldName) {
+                    case "metric":
+                        tsdbMetricName = jp.getText();
+                        break;
+                    case "tags":
+                        readTags(jp, tags);
+                        break;
+                    case "tsuids":
+                        tsuid = readFirstTsuid(jp);
+                        break;
+                    case "dps":
+                        readDatapoints(jp, staged);
+                        break;
+                    default:
+                        jp.skipChildren();
+                        break;
+                }
+            }
 
             Map<String, String> meta = fromMeta(tags.get(ReservedField.META.getKey()));
-            String tsdbMetricName = node.get("metric").asText();
             String scope = tsdbService.getScopeFromTSDBMetric(tsdbMetricName);
             String namespace = tsdbService.getNamespaceFromTSDBMetric(tsdbMetricName);
 		
@@ -118,14 +149,10 @@ class MetricTransform {
                 result.setUnits(units);
             }
             result.setTags(userTags);
-            result.setDatapoints(datapoints);
+            result.setDatapoints(staged.getDatapoints());
             if (namespace != null) {
                 result.setNamespace(namespace);
             }
-
-            Iterator<JsonNode> tsuidsIter = node.get("tsuids").elements();
-            String tsuid = tsuidsIter.next().asText();
-
             try {
                 Field tsuidField = TSDBEntity.class.getDeclaredField("_uid");
 
@@ -137,12 +164,55 @@ class MetricTransform {
             return result;
         }
 
+        private void readTags(JsonParser jp, Map<String, String> tags) throws IOException {
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String key = jp.getCurrentName();
+
+                jp.nextToken();
+                tags.put(key, jp.getText());
+            }
+        }
+
+        private String readFirstTsuid(JsonParser jp) throws IOException {
+            String tsuid = null;
+
+            while (jp.nextToken() != JsonToken.END_ARRAY) {
+                if (tsuid == null) {
+                    tsuid = jp.getText();
+                }
+                jp.skipChildren();
+            }
+            return tsuid;
+        }
+
+        /* Values are rendered the same way the previous tree based parsing rendered them, so floating point values are normalized. */
+        private void readDatapoints(JsonParser jp, Metric datapoints) throws IOException {
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                long timestamp = Long.parseLong(jp.getCurrentName());
+                JsonToken token = jp.nextToken();
+                String value;
+
+                switch (token) {
+                    case VALUE_NULL:
+                        value = null;
+                        break;
+                    case VALUE_NUMBER_FLOAT:
+                        value = String.valueOf(jp.getDoubleValue());
+                        break;
+                    default:
+                        value = jp.getText();
+                        break;
+                }
+                datapoints.addDatapoint(timestamp, value);
+            }
+        }
+
         private Map<String, String> fromMeta(String meta) throws IOException {
             if (meta != null) {
                 try {
                     String decoded = new String(DatatypeConverter.parseBase64Binary(meta.replace("_", "=")), "UTF-8");
 
-                    return new ObjectMapper().readValue(decoded, new TypeReference<Map<String, String>>() { });
+                    return META_MAPPER.readValue(decoded, new TypeReference<Map<String, String>>() { });
                 } catch (Exception ex) {
                     throw new IOException(ex);
                 }
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.entity;
+
+import org.junit.Test;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DatapointSeriesTest {
+
+    private static final String TEST_SCOPE = "test-scope";
+    private static final String TEST_METRIC = "test-metric";
+
+    @Test
+    public void testSetDatapointsSortsUnorderedInput() {
+        Map<Long, String> datapoints = new HashMap<Long, String>();
+
+        datapoints.put(3000L, "3");
+        datapoints.put(1000L, "1");
+        datapoints.put(2000L, "2.5");
+
+        Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+
+        metric.setDatapoints(datapoints);
+
+        DatapointSeries series = metric.getDatapointSeries();
+
+        assertEquals(3, series.size());
+        assertEquals(1000L, series.getTimestamp(0));
+        assertEquals(3000L, series.getTimestamp(2));
+        assertEquals("2.5", series.getValue(1));
+        assertEquals(2.5, series.getDoubleValue(1), 0.0);
+        assertEquals(new TreeMap<Long, String>(datapoints), metric.getDatapoints());
+
+        Iterator<Long> keys = metric.getDatapoints().keySet().iterator();
+
+        assertEquals(Long.valueOf(1000L), keys.next());
+        assertEquals(Long.valueOf(2000L), keys.next());
+        assertEquals(Long.valueOf(3000L), keys.next());
+    }
+
+    @Test
+    public void testAddDatapointsMergesAndOverrides() {
+        Map<Long, String> datapoints = new HashMap<Long, String>();
+
+        datapoints.put(1000L, "1");
+        datapoints.put(3000L, "3");
+
+        Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+
+        metric.setDatapoints(datapoints);
+
+        Map<Long, String> additional = new HashMap<Long, String>();
+
+        additional.put(2000L, "2");
+        additional.put(3000L, "30");
+        additional.put(4000L, "4");
+        metric.addDatapoints(additional);
+
+        Map<Long, String> expected = new TreeMap<Long, String>();
+
+        expected.put(1000L, "1");
+        expected.put(2000L, "2");
+        expected.put(3000L, "30");
+        expected.put(4000L, "4");
+        assertEquals(expected, metric.getDatapoints());
+
+        Map<Long, String> appended = new HashMap<Long, String>();
+
+        appended.put(5000L, "5");
+        metric.addDatapoints(appended);
+        expected.put(5000L, "5");
+        assertEquals(expected, metric.getDatapoints());
+    }
+
+    @Test
+    public void testCopyIsIndependentOfOriginal() {
+        Map<Long, String> datapoints = new HashMap<Long, String>();
+
+        datapoints.put(1000L, "1");
+        datapoints.put(2000L, "2");
+
+        Metric original = new Metric(TEST_SCOPE, TEST_METRIC);
+
+        original.setDatapoints(datapoints);
+
+        Metric copy = new Metric(original);
+        Map<Long, String> additional = new HashMap<Long, String>();
+
+        additional.put(3000L, "3");
+        copy.addDatapoints(additional);
+        additional.put(1000L, "10");
+        original.addDatapoints(additional);
+        assertEquals(3, copy.getDatapoints().size());
+        assertEquals("1", copy.getDatapoints().get(1000L));
+        assertEquals("10", original.getDatapoints().get(1000L));
+    }
+
+    @Test
+    public void testMapViewIsLiveAndRanged() {
+        Map<Long, String> datapoints = new HashMap<Long, String>();
+
+        for (long i = 1; i <= 10; i++) {
+            datapoints.put(i * 1000L, String.valueOf(i));
+        }
+
+        Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+        SortedMap<Long, String> view = (SortedMap<Long, String>) metric.getDatapoints();
+
+        assertTrue(view.isEmpty());
+        metric.setDatapoints(datapoints);
+        assertEquals(10, view.size());
+        assertEquals(Long.valueOf(1000L), view.firstKey());
+        assertEquals(Long.valueOf(10000L), view.lastKey());
+
+        SortedMap<Long, String> range = view.subMap(3000L, 6000L);
+
+        assertEquals(3, range.size());
+        assertEquals("3", range.get(3000L));
+        assertNull(range.get(6000L));
+        assertEquals(range, new TreeMap<Long, String>(datapoints).subMap(3000L, 6000L));
+
+        Metric sliced = new Metric(TEST_SCOPE, TEST_METRIC);
+
+        sliced.setDatapoints(range);
+        assertEquals(range, sliced.getDatapoints());
+    }
+
+    @Test
+    public void testAddDatapointInsertsInOrder() {
+        Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+
+        metric.addDatapoint(2000L, "2");
+        metric.addDatapoint(4000L, "4");
+        metric.addDatapoint(1000L, "1");
+        metric.addDatapoint(3000L, "3");
+        metric.addDatapoint(4000L, "40");
+
+        DatapointSeries series = metric.getDatapointSeries();
+
+        assertEquals(4, series.size());
+        for (int i = 0; i < series.size(); i++) {
+            assertEquals((i + 1) * 1000L, series.getTimestamp(i));
+        }
+        assertEquals("40", series.getValue(3));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testMapViewIsUnmodifiable() {
+        Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+
+        metric.getDatapoints().put(1000L, "1");
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -35,11 +35,19 @@ import com.salesforce.dva.argus.AbstractTest;
 import com.salesforce.dva.argus.entity.Alert;
 import com.salesforce.dva.argus.entity.History;
 import com.salesforce.dva.argus.entity.History.JobStatus;
+import com.salesforce.dva.argus.service.history.BufferedHistoryWriter;
 import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 
 public class HistoryServiceTest extends AbstractTest {
 
@@ -119,5 +127,104 @@ public class HistoryServiceTest extends AbstractTest {
 
         assertEquals("test1test2", actual.getMessage());
     }
+
+    @Test
+    public void testBufferedHistoryWriter() {
+        HistoryService historyService = system.getServiceFactory().getHistoryService();
+        UserService userService = system.getServiceFactory().getUserService();
+        AlertService alertService = system.getServiceFactory().getAlertService();
+        Alert job = new Alert(userService.findAdminUser(), userService.findAdminUser(), "alert-name-buffered", expression, "* * * * *");
+
+        job = alertService.updateAlert(job);
+
+        BufferedHistoryWriter writer = new BufferedHistoryWriter(historyService, 100, 60000);
+        History history = writer.createHistory("started", job, JobStatus.STARTED, 0, 0);
+
+        writer.appendMessageAndUpdate(history, " running", null, 0, 0);
+        assertEquals(1, writer.getPendingCount());
+        assertEquals(0, historyService.findByJob(job.getId()).size());
+        writer.flush();
+        assertNotNull(history.getId());
+        writer.appendMessageAndUpdate(history, " done", JobStatus.SUCCESS, 0, 10);
+        writer.close();
+        assertEquals(0, writer.getPendingCount());
+
+        History actual = historyService.findHistoryByPrimaryKey(history.getId());
+
+        assertEquals("started running done", actual.getMessage());
+        assertEquals(JobStatus.SUCCESS, actual.getJobStatus());
+        assertEquals(10, actual.getExecutionTime());
+        assertEquals(1, historyService.findByJob(job.getId()).size());
+    }
+
+    @Test
+    public void testBufferedHistoryWritersShareOneThread() throws InterruptedException {
+        HistoryService historyService = system.getServiceFactory().getHistoryService();
+        UserService userService = system.getServiceFactory().getUserService();
+        AlertService alertService = system.getServiceFactory().getAlertService();
+        Alert job = new Alert(userService.findAdminUser(), userService.findAdminUser(), "alert-name-shared-writer", expression, "* * * * *");
+
+        job = alertService.updateAlert(job);
+
+        List<History> histories = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            BufferedHistoryWriter writer = new BufferedHistoryWriter(historyService, 100, 100);
+
+            histories.add(writer.createHistory("message " + i, job, JobStatus.STARTED, 0, 0));
+        }
+        for (long deadline = System.currentTimeMillis() + 10000; historyService.findByJob(job.getId()).size() < histories.size();) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(50);
+        }
+
+        int threads = 0;
+
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if ("history-writer".equals(thread.getName())) {
+                threads++;
+            }
+        }
+        assertEquals(1, threads);
+        for (History history : histories) {
+            assertNotNull(history.getId());
+        }
+    }
+
+    @Test(timeout = 10000L)
+    @SuppressWarnings("unchecked")
+    public void testBufferedHistoryWriterChangesWaitForWrite() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> written = new ArrayList<>();
+        HistoryService historyService = mock(HistoryService.class);
+
+        doAnswer(invocation -> {
+            writing.countDown();
+            release.await();
+            written.add(((List<History>) invocation.getArguments()[0]).get(0).getMessage());
+            return null;
+        }).when(historyService).updateHistories(anyListOf(History.class));
+
+        final BufferedHistoryWriter writer = new BufferedHistoryWriter(historyService, 100, 60000);
+        final History history = writer.createHistory("started", null, JobStatus.STARTED, 0, 0);
+        Thread flusher = new Thread(writer::flush);
+
+        flusher.start();
+        writing.await();
+
+        Thread updater = new Thread(() -> writer.appendMessageAndUpdate(history, " done", JobStatus.SUCCESS, 0, 0));
+
+        updater.start();
+        while (updater.isAlive() && updater.getState() != Thread.State.BLOCKED) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        flusher.join();
+        updater.join();
+        assertEquals(Arrays.asList("started"), written);
+        assertEquals("started done", history.getMessage());
+        assertEquals(1, writer.getPendingCount());
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
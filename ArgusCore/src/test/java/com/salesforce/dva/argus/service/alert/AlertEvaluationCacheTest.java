@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.entity.Metric;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AlertEvaluationCacheTest {
+
+    private static final Executor DIRECT = new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+
+    @Test
+    public void testGetKeyIgnoresWhitespaceAndAlignsToMinute() {
+        long minute = 1476000000000L - (1476000000000L % AlertEvaluationCache.BUCKET_SIZE);
+
+        assertEquals(AlertEvaluationCache.getKey("SUM(-1h:scope:metric:avg)", minute),
+            AlertEvaluationCache.getKey("SUM( -1h:scope:metric:avg )\n", minute + 59999));
+        assertNotEquals(AlertEvaluationCache.getKey("-1h:scope:metric:avg", minute),
+            AlertEvaluationCache.getKey("-1h:scope:metric:avg", minute + AlertEvaluationCache.BUCKET_SIZE));
+        assertNotEquals(AlertEvaluationCache.getKey("-1h:scope:metric:avg", minute), AlertEvaluationCache.getKey("-1h:scope:metric:sum", minute));
+    }
+
+    @Test
+    public void testLookupSharesQuery() throws Exception {
+        AlertEvaluationCache cache = new AlertEvaluationCache();
+        CountingQuery query = new CountingQuery();
+        String key = AlertEvaluationCache.getKey("-1h:scope:metric:avg", System.currentTimeMillis());
+        AlertEvaluationCache.Lookup first = cache.lookup(key, query, DIRECT);
+        AlertEvaluationCache.Lookup second = cache.lookup(key, query, DIRECT);
+
+        assertFalse(first.shared);
+        assertTrue(second.shared);
+        assertSame(first.query.get(), second.query.get());
+        assertEquals(1, query.count.get());
+        cache.release(first);
+        cache.invalidate(second);
+        assertFalse(cache.lookup(key, query, DIRECT).shared);
+        assertEquals(2, query.count.get());
+    }
+
+    @Test
+    public void testInvalidateCancelsOnlyUnsharedQuery() {
+        AlertEvaluationCache cache = new AlertEvaluationCache();
+        CountingQuery query = new CountingQuery();
+        List<Runnable> submitted = new ArrayList<>();
+        Executor pending = new Executor() {
+
+            @Override
+            public void execute(Runnable command) {
+                submitted.add(command);
+            }
+        };
+        String key = AlertEvaluationCache.getKey("-1h:scope:metric:avg", System.currentTimeMillis());
+        AlertEvaluationCache.Lookup first = cache.lookup(key, query, pending);
+        AlertEvaluationCache.Lookup second = cache.lookup(key, query, pending);
+
+        assertTrue(second.shared);
+        cache.invalidate(first);
+        assertFalse(second.query.isCancelled());
+        assertEquals(0, cache.size());
+
+        AlertEvaluationCache.Lookup third = cache.lookup(key, query, pending);
+
+        assertFalse(third.shared);
+        assertEquals(2, submitted.size());
+        cache.invalidate(second);
+        assertTrue(second.query.isCancelled());
+        assertFalse(third.query.isCancelled());
+    }
+
+    @Test
+    public void testExpire() {
+        AlertEvaluationCache cache = new AlertEvaluationCache();
+        CountingQuery query = new CountingQuery();
+        long now = System.currentTimeMillis();
+
+        cache.lookup(AlertEvaluationCache.getKey("-1h:scope:metric:avg", now - 2 * AlertEvaluationCache.BUCKET_SIZE), query, DIRECT);
+        cache.lookup(AlertEvaluationCache.getKey("-1h:scope:metric:avg", now - AlertEvaluationCache.BUCKET_SIZE), query, DIRECT);
+        cache.lookup(AlertEvaluationCache.getKey("-1h:scope:metric:avg", now), query, DIRECT);
+        assertEquals(3, cache.size());
+        cache.expire(now);
+        assertEquals(2, cache.size());
+    }
+
+    private static class CountingQuery implements Callable<List<Metric>> {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public List<Metric> call() throws Exception {
+            count.incrementAndGet();
+            return Arrays.asList(new Metric("scope", "metric"));
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
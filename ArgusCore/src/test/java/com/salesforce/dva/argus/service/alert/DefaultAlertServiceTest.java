@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.alert;
+
+import com.google.inject.Provider;
+import com.salesforce.dva.argus.entity.Alert;
+import com.salesforce.dva.argus.entity.History;
+import com.salesforce.dva.argus.entity.History.JobStatus;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.entity.PrincipalUser;
+import com.salesforce.dva.argus.service.AnnotationService;
+import com.salesforce.dva.argus.service.AuditService;
+import com.salesforce.dva.argus.service.HistoryService;
+import com.salesforce.dva.argus.service.MQService;
+import com.salesforce.dva.argus.service.MailService;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.alert.DefaultAlertService.AlertEvaluation;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultAlertServiceTest {
+
+    private final PrincipalUser _user = new PrincipalUser("admin", "admin@example.com");
+    private String _expression;
+    private AtomicInteger _queries;
+    private MetricService _metricService;
+    private MonitorService _monitorService;
+
+    private final List<History> _created = new ArrayList<>();
+    private final AtomicInteger _interrupted = new AtomicInteger();
+    private volatile CountDownLatch _release;
+
+    @Before
+    public void setUp() {
+        _expression = "-1h:scope" + System.nanoTime() + ":metric:avg";
+        _queries = new AtomicInteger();
+        _release = new CountDownLatch(0);
+        _metricService = mock(MetricService.class);
+        _monitorService = mock(MonitorService.class);
+        when(_metricService.getMetrics(anyString(), anyLong())).thenAnswer(invocation -> {
+            Metric metric = new Metric("scope", "metric");
+            TreeMap<Long, String> datapoints = new TreeMap<>();
+
+            _queries.incrementAndGet();
+            try {
+                _release.await();
+            } catch (InterruptedException ex) {
+                _interrupted.incrementAndGet();
+                throw ex;
+            }
+            datapoints.put(System.currentTimeMillis(), "1");
+            metric.setDatapoints(datapoints);
+            return Arrays.asList(metric);
+        });
+    }
+
+    @Test
+    public void testServicesShareMetricQueries() throws Exception {
+        long now = System.currentTimeMillis();
+        DefaultAlertService first = _createService(new Properties(), Arrays.asList(_createEvaluation("first", now)));
+        DefaultAlertService second = _createService(new Properties(), Arrays.asList(_createEvaluation("second", now)));
+        List<History> histories = new ArrayList<>();
+
+        histories.addAll(first.executeScheduledAlerts(1, 1000));
+        histories.addAll(second.executeScheduledAlerts(1, 1000));
+        assertEquals(1, _queries.get());
+        assertEquals(2, histories.size());
+        for (History history : histories) {
+            assertEquals(JobStatus.SUCCESS, history.getJobStatus());
+        }
+    }
+
+    @Test
+    public void testServicesShareIncrementalQueries() throws Exception {
+        long now = System.currentTimeMillis();
+        Properties properties = new Properties();
+
+        properties.setProperty(DefaultAlertService.Property.ALERT_INCREMENTAL_EVALUATION.getName(), "true");
+
+        DefaultAlertService first = _createService(properties,
+                Arrays.asList(_createEvaluation("first", _expression, now - AlertEvaluationCache.BUCKET_SIZE, now)));
+        DefaultAlertService second = _createService(properties, Arrays.asList(_createEvaluation("second", _expression, now, now)));
+
+        assertEquals(JobStatus.SUCCESS, first.executeScheduledAlerts(1, 1000).get(0).getJobStatus());
+        verify(_monitorService, never()).modifyCustomCounter(eq("alerts.evaluation.queries.incremental"), anyDouble(), anyMapOf(String.class,
+                String.class));
+        assertEquals(JobStatus.SUCCESS, second.executeScheduledAlerts(1, 1000).get(0).getJobStatus());
+        assertEquals(2, _queries.get());
+        verify(_monitorService).modifyCustomCounter(eq("alerts.evaluation.queries.incremental"), anyDouble(), anyMapOf(String.class,
+                String.class));
+    }
+
+    @Test
+    public void testTimedOutQueryIsNotCancelledForWaitingAlerts() throws Exception {
+        long now = System.currentTimeMillis();
+        Properties properties = new Properties();
+
+        properties.setProperty(DefaultAlertService.Property.ALERT_EVALUATION_TIMEOUT.getName(), "10000");
+        _release = new CountDownLatch(1);
+
+        DefaultAlertService service = _createService(properties,
+                Arrays.asList(_createEvaluation("expired", _expression, now, now - 10000), _createEvaluation("waiting", _expression, now, now)));
+
+        _releaseAfter(500);
+
+        List<History> histories = service.executeScheduledAlerts(2, 1000);
+
+        assertEquals(1, _queries.get());
+        assertEquals(0, _interrupted.get());
+        assertSame(_created.get(0), histories.get(0));
+        assertSame(_created.get(1), histories.get(1));
+        assertEquals(JobStatus.FAILURE, histories.get(0).getJobStatus());
+        assertTrue(histories.get(0).getMessage().contains("did not complete within"));
+        assertEquals(JobStatus.SUCCESS, histories.get(1).getJobStatus());
+    }
+
+    @Test
+    public void testTimedOutQueryIsCancelledWithoutWaitingAlerts() throws Exception {
+        long now = System.currentTimeMillis();
+        Properties properties = new Properties();
+        final List<Runnable> submitted = new ArrayList<>();
+        ExecutorService executor = mock(ExecutorService.class);
+
+        properties.setProperty(DefaultAlertService.Property.ALERT_EVALUATION_TIMEOUT.getName(), "200");
+        doAnswer(invocation -> submitted.add((Runnable) invocation.getArguments()[0])).when(executor).execute(any(Runnable.class));
+
+        DefaultAlertService service = _createService(properties, Arrays.asList(_createEvaluation("timeout", _expression, now, now)), executor);
+        List<History> histories = service.executeScheduledAlerts(1, 1000);
+
+        assertEquals(JobStatus.FAILURE, histories.get(0).getJobStatus());
+        assertEquals(1, submitted.size());
+        assertTrue(((Future<?>) submitted.get(0)).isCancelled());
+
+        DefaultAlertService retry = _createService(properties,
+                Arrays.asList(_createEvaluation("retry", _expression, now, System.currentTimeMillis())));
+
+        histories = retry.executeScheduledAlerts(1, 1000);
+        assertEquals(1, _queries.get());
+        assertEquals(JobStatus.SUCCESS, histories.get(0).getJobStatus());
+    }
+
+    @Test
+    public void testQueriesRunConcurrentlyAndResultsKeepDequeueOrder() throws Exception {
+        long now = System.currentTimeMillis();
+        Properties properties = new Properties();
+        List<AlertEvaluation> evaluations = new ArrayList<>();
+
+        properties.setProperty(DefaultAlertService.Property.ALERT_EVALUATION_PARALLELISM.getName(), "4");
+        _release = new CountDownLatch(1);
+        for (int i = 0; i < 4; i++) {
+            evaluations.add(_createEvaluation("alert" + i, _expression.replace(":avg", ":" + (i % 2 == 0 ? "avg" : "sum")), now, now));
+        }
+        evaluations.add(_createEvaluation("alert4", _expression.replace(":avg", ":max"), now, now));
+
+        DefaultAlertService service = _createService(properties, evaluations);
+        final CountDownLatch release = _release;
+        final AtomicInteger started = new AtomicInteger();
+        Thread thread = new Thread(() -> {
+            for (long deadline = System.currentTimeMillis() + 5000; System.currentTimeMillis() < deadline && _queries.get() < 3;) {
+                Thread.yield();
+            }
+            started.set(_queries.get());
+            release.countDown();
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+
+        List<History> histories = service.executeScheduledAlerts(evaluations.size(), 1000);
+
+        thread.join();
+        assertEquals(3, started.get());
+        assertEquals(3, _queries.get());
+        assertEquals(evaluations.size(), histories.size());
+        for (int i = 0; i < evaluations.size(); i++) {
+            assertSame(_created.get(i), histories.get(i));
+            assertEquals(JobStatus.SUCCESS, histories.get(i).getJobStatus());
+        }
+    }
+
+    private void _releaseAfter(final long delay) {
+        final CountDownLatch release = _release;
+        Thread thread = new Thread(() -> {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private AlertEvaluation _createEvaluation(String name, long enqueueTime) {
+        return _createEvaluation(name, _expression, enqueueTime, System.currentTimeMillis());
+    }
+
+    private AlertEvaluation _createEvaluation(String name, String expression, long enqueueTime, long startTime) {
+        Alert alert = new Alert(_user, _user, name, expression, "* * * * *");
+        History history = new History(JobStatus.STARTED.getDescription(), "localhost", alert, JobStatus.STARTED);
+
+        _created.add(history);
+
+        return new AlertEvaluation(alert, history, enqueueTime, startTime);
+    }
+
+    private DefaultAlertService _createService(Properties properties, List<AlertEvaluation> evaluations) throws Exception {
+        return _initialize(new DefaultAlertService(mock(MQService.class), _metricService, mock(AnnotationService.class), mock(AuditService.class),
+                    mock(MailService.class), new SystemConfiguration(properties), mock(HistoryService.class), _monitorService, null), evaluations);
+    }
+
+    private DefaultAlertService _createService(Properties properties, List<AlertEvaluation> evaluations, ExecutorService executor)
+        throws Exception {
+        return _initialize(new DefaultAlertService(mock(MQService.class), _metricService, mock(AnnotationService.class), mock(AuditService.class),
+                    mock(MailService.class), new SystemConfiguration(properties), mock(HistoryService.class), _monitorService, null, executor),
+                evaluations);
+    }
+
+    @SuppressWarnings("unchecked")
+    private DefaultAlertService _initialize(DefaultAlertService created, List<AlertEvaluation> evaluations) throws Exception {
+        DefaultAlertService service = spy(created);
+        Provider<EntityManager> emf = mock(Provider.class);
+
+        when(emf.get()).thenReturn(mock(EntityManager.class));
+        _setField(service, "emf", emf);
+        _setField(service, "_logger", LoggerFactory.getLogger(DefaultAlertService.class));
+        doReturn(evaluations).when(service).startAlertEvaluations(anyListOf(DefaultAlertService.AlertIdWithTimestamp.class));
+        return service;
+    }
+
+    private static void _setField(Object target, String name, Object value) throws Exception {
+        Field field = DefaultAlertService.class.getDeclaredField(name);
+
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MetricService;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IncrementalQueryCacheTest {
+
+    private static final String EXPRESSION = "-1h:scope:metric{host=a}:avg";
+
+    private MetricService _metricService;
+    private TreeMap<Long, String> _datapoints;
+    private List<String> _queries;
+
+    @Before
+    public void setUp() {
+        long now = System.currentTimeMillis();
+
+        _datapoints = new TreeMap<>();
+        for (long timestamp = now - 7200000; timestamp <= now; timestamp += 10000) {
+            _datapoints.put(timestamp, String.valueOf(timestamp % 97));
+        }
+        _queries = new ArrayList<>();
+        _metricService = mock(MetricService.class);
+        when(_metricService.getMetrics(anyString(), anyLong())).thenAnswer(invocation -> {
+            String expression = (String) invocation.getArguments()[0];
+            String[] parts = expression.split(":");
+            Metric metric = new Metric("scope", "metric");
+
+            _queries.add(expression);
+            metric.setDatapoints(_datapoints.subMap(Long.parseLong(parts[0]), true, Long.parseLong(parts[1]), true));
+            return Arrays.asList(metric);
+        });
+    }
+
+    @Test
+    public void testIsEligible() {
+        assertTrue(IncrementalQueryCache.isEligible(EXPRESSION));
+        assertTrue(IncrementalQueryCache.isEligible("-30m:-__-ns:scope:metric:sum"));
+        assertTrue(IncrementalQueryCache.isEligible(" -1h:scope:metric{host=a,type=*}:zimsum\n"));
+        assertFalse(IncrementalQueryCache.isEligible("-1h:-5m:scope:metric:avg"));
+        assertFalse(IncrementalQueryCache.isEligible("1476000000000:scope:metric:avg"));
+        assertFalse(IncrementalQueryCache.isEligible("-1h:scope:metric:avg:1m-avg"));
+        assertFalse(IncrementalQueryCache.isEligible("DERIVATIVE(-1h:scope:metric:avg)"));
+    }
+
+    @Test
+    public void testIncrementalFetchMatchesWindow() {
+        IncrementalQueryCache cache = new IncrementalQueryCache(60000);
+        IncrementalQueryCache.Result first = cache.getMetrics(_metricService, EXPRESSION, 0);
+
+        assertFalse(first.incremental);
+
+        long firstEnd = Long.parseLong(_queries.get(0).split(":")[1]);
+        long late = _datapoints.floorKey(firstEnd - 30000);
+
+        _datapoints.put(late, "-1");
+
+        IncrementalQueryCache.Result second = cache.getMetrics(_metricService, EXPRESSION, 0);
+        String[] range = _queries.get(1).split(":");
+
+        assertTrue(second.incremental);
+        assertEquals(firstEnd - 120000, Long.parseLong(range[0]));
+        assertEquals(1, second.metrics.size());
+        assertEquals(_datapoints.subMap(_windowStart(Long.parseLong(range[1])), true, Long.parseLong(range[1]), true),
+            new TreeMap<>(second.metrics.get(0).getDatapoints()));
+        assertEquals("-1", second.metrics.get(0).getDatapoints().get(late));
+    }
+
+    @Test
+    public void testIneligibleExpressionIsPassedThrough() {
+        IncrementalQueryCache cache = new IncrementalQueryCache(60000);
+        MetricService metricService = mock(MetricService.class);
+        String expression = "DERIVATIVE(-1h:scope:metric:avg)";
+
+        when(metricService.getMetrics(eq(expression), anyLong())).thenReturn(new ArrayList<Metric>());
+        assertFalse(cache.getMetrics(metricService, expression, -5000).incremental);
+        verify(metricService).getMetrics(expression, -5000);
+        assertEquals(0, cache.size());
+    }
+
+    private static long _windowStart(long end) {
+        return end - 3600000 - (end - 3600000) % 1000;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
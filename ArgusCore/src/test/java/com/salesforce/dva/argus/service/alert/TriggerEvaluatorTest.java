@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.alert;
+
+import com.salesforce.dva.argus.entity.Alert;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.entity.PrincipalUser;
+import com.salesforce.dva.argus.entity.Trigger;
+import com.salesforce.dva.argus.entity.Trigger.TriggerType;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class TriggerEvaluatorTest {
+
+    private static final PrincipalUser USER = new PrincipalUser("aUser", "aUser@mycompany.abc");
+    private static final Alert ALERT = new Alert(USER, USER, "alert-name", "-1h:scope:metric:avg", "* * * * *");
+
+    @Test
+    public void testFiredTimeMatchesWindowScan() {
+        Random random = new Random(17);
+
+        for (int iteration = 0; iteration < 500; iteration++) {
+            TreeMap<Long, String> datapoints = new TreeMap<>();
+            long interval = 1 + random.nextInt(5);
+            int size = random.nextInt(40);
+
+            for (int i = 0; i < size; i++) {
+                datapoints.put(1000 + i * interval, random.nextInt(10) == 0 ? null : String.valueOf(random.nextInt(100)));
+            }
+
+            Metric metric = new Metric("scope", "metric");
+
+            metric.setDatapoints(datapoints);
+
+            TriggerEvaluator evaluator = new TriggerEvaluator(metric);
+
+            for (long inertia : new long[] { 0, 1, interval, 3 * interval + 1, 10 * interval }) {
+                Trigger trigger = new Trigger(ALERT, TriggerType.GREATER_THAN, "trigger", 20.0, inertia);
+
+                assertEquals(_scan(trigger, datapoints), evaluator.getFiredTime(trigger));
+            }
+        }
+    }
+
+    @Test
+    public void testLongInertiaOnDenseSeries() {
+        Metric metric = new Metric("scope", "metric");
+        TreeMap<Long, String> datapoints = new TreeMap<>();
+        int size = 100000;
+
+        for (int i = 0; i < size; i++) {
+            datapoints.put(i * 1000L, i % 1000 == 999 ? "0" : "100");
+        }
+        metric.setDatapoints(datapoints);
+
+        TriggerEvaluator evaluator = new TriggerEvaluator(metric);
+        Trigger fired = new Trigger(ALERT, TriggerType.GREATER_THAN, "fired", 50.0, 997000);
+        Trigger notFired = new Trigger(ALERT, TriggerType.GREATER_THAN, "not-fired", 50.0, 999000);
+
+        assertEquals(Long.valueOf(99998000L), evaluator.getFiredTime(fired));
+        assertNull(evaluator.getFiredTime(notFired));
+        assertEquals(_scan(fired, datapoints), evaluator.getFiredTime(fired));
+    }
+
+    @Test
+    public void testNullAndSingleDatapoint() {
+        Metric metric = new Metric("scope", "metric");
+        TreeMap<Long, String> datapoints = new TreeMap<>();
+
+        datapoints.put(1000L, null);
+        metric.setDatapoints(datapoints);
+        assertNull(new TriggerEvaluator(metric).getFiredTime(new Trigger(ALERT, TriggerType.NOT_EQUAL, "trigger", 1.0, 0)));
+        datapoints.put(1000L, "2");
+        metric.setDatapoints(datapoints);
+        assertEquals(Long.valueOf(1000L), new TriggerEvaluator(metric).getFiredTime(new Trigger(ALERT, TriggerType.NOT_EQUAL, "trigger", 1.0, 0)));
+    }
+
+    /* Finds the last data point ending a run of matching data points that covers the inertia by scanning every window. */
+    private static Long _scan(Trigger trigger, TreeMap<Long, String> datapoints) {
+        List<Long> timestamps = new ArrayList<>(datapoints.keySet());
+        List<String> values = new ArrayList<>(datapoints.values());
+        int size = timestamps.size();
+
+        if (size == 0) {
+            return null;
+        } else if (size == 1) {
+            return trigger.getInertia() <= 0 && values.get(0) != null && Trigger.evaluateTrigger(trigger, Double.valueOf(values.get(0)))
+                ? timestamps.get(0) : null;
+        }
+
+        long interval = timestamps.get(1) - timestamps.get(0);
+        long windowSize = trigger.getInertia() < interval ? 1 : (trigger.getInertia() + interval - 1) / interval + 1;
+
+        for (int end = size - 1; end >= windowSize - 1; end--) {
+            boolean matches = true;
+
+            for (int i = end; i > end - windowSize && matches; i--) {
+                matches = values.get(i) != null && Trigger.evaluateTrigger(trigger, Double.valueOf(values.get(i)));
+            }
+            if (matches) {
+                return timestamps.get(end);
+            }
+        }
+        return null;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
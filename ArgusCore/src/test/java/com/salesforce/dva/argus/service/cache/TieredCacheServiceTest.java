@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.cache;
+
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TieredCacheServiceTest {
+
+    private RedisCacheService _redis;
+    private MonitorService _monitorService;
+
+    @Before
+    public void setUp() {
+        _redis = mock(RedisCacheService.class);
+        _monitorService = mock(MonitorService.class);
+    }
+
+    @Test
+    public void testGetRangeOnlyFetchesMissesFromRedis() {
+        TieredCacheService cache = createService("1000");
+        Map<String, List<String>> loaded = new HashMap<>();
+
+        loaded.put("a", Arrays.asList("1", "2"));
+        loaded.put("b", Arrays.asList("3"));
+        when(_redis.<List<String>>getRange(new LinkedHashSet<>(Arrays.asList("a", "b")), 0, -1)).thenReturn(loaded);
+
+        Map<String, List<String>> first = cache.getRange(new LinkedHashSet<>(Arrays.asList("a", "b")), 0, -1);
+
+        assertEquals(loaded, first);
+
+        Map<String, List<String>> cLoaded = new HashMap<>();
+
+        cLoaded.put("c", Arrays.asList("4"));
+        when(_redis.<List<String>>getRange(Collections.singleton("c"), 0, -1)).thenReturn(cLoaded);
+
+        Map<String, List<String>> second = cache.getRange(new LinkedHashSet<>(Arrays.asList("a", "b", "c")), 0, -1);
+
+        assertEquals(3, second.size());
+        assertEquals(Arrays.asList("1", "2"), second.get("a"));
+        assertEquals(Arrays.asList("4"), second.get("c"));
+        verify(_redis).getRange(Collections.singleton("c"), 0, -1);
+        verify(_monitorService).modifyCustomCounter(eq("cache.l1.hits"), eq(2.0), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testAppendInvalidatesEntry() {
+        TieredCacheService cache = createService("1000");
+        Set<String> keys = Collections.singleton("a");
+        Map<String, List<String>> loaded = new HashMap<>();
+
+        loaded.put("a", Arrays.asList("1"));
+        when(_redis.<List<String>>getRange(keys, 0, -1)).thenReturn(loaded);
+        cache.getRange("a", 0, -1);
+        cache.getRange("a", 0, -1);
+        verify(_redis, times(1)).getRange(keys, 0, -1);
+        cache.append("a", "2", 60);
+        cache.getRange("a", 0, -1);
+        verify(_redis, times(2)).getRange(keys, 0, -1);
+    }
+
+    @Test
+    public void testEntriesAreEvictedByWeight() {
+        TieredCacheService cache = createService("10");
+
+        cache.put("a", "123456", 60);
+        cache.put("b", "123456", 60);
+        when(_redis.get("a")).thenReturn("123456");
+        assertEquals("123456", cache.get("a"));
+        verify(_redis).get("a");
+        verify(_monitorService, atLeastOnce()).modifyCustomCounter(eq("cache.l1.evictions"), eq(1.0), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testEmptyValuesAreNotCached() {
+        TieredCacheService cache = createService("1000");
+        Map<String, List<String>> loaded = new HashMap<>();
+
+        loaded.put("a", Collections.<String>emptyList());
+        when(_redis.<List<String>>getRange(Collections.singleton("a"), 0, -1)).thenReturn(loaded);
+        cache.getRange("a", 0, -1);
+        cache.getRange("a", 0, -1);
+        verify(_redis, times(2)).getRange(Collections.singleton("a"), 0, -1);
+    }
+
+    @Test
+    public void testCachedValuesAreCopied() {
+        TieredCacheService cache = createService("1000");
+        List<String> value = new ArrayList<>(Arrays.asList("1", "2"));
+
+        cache.put("a", value, 60);
+        value.add("3");
+
+        List<String> first = cache.get("a");
+
+        assertEquals(Arrays.asList("1", "2"), first);
+        first.clear();
+        assertEquals(Arrays.asList("1", "2"), cache.get("a"));
+
+        Map<String, List<byte[]>> loaded = new HashMap<>();
+
+        loaded.put("b", new ArrayList<>(Arrays.asList(new byte[] { 1, 2 })));
+        when(_redis.getBytesRange(Collections.singleton("b"), 0, -1)).thenReturn(loaded);
+        cache.getBytesRange(Collections.singleton("b"), 0, -1).get("b").get(0)[0] = 9;
+        assertEquals(1, cache.getBytesRange(Collections.singleton("b"), 0, -1).get("b").get(0)[0]);
+        verify(_redis, times(1)).getBytesRange(Collections.singleton("b"), 0, -1);
+    }
+
+    @Test
+    public void testValueLoadedDuringAppendIsNotCached() {
+        final TieredCacheService cache = createService("1000");
+        Set<String> keys = Collections.singleton("a");
+
+        when(_redis.<List<String>>getRange(keys, 0, -1)).thenAnswer(new Answer<Map<String, List<String>>>() {
+
+                @Override
+                public Map<String, List<String>> answer(InvocationOnMock invocation) {
+                    Map<String, List<String>> loaded = new HashMap<>();
+
+                    loaded.put("a", Arrays.asList("1"));
+                    cache.append("a", "2", 60);
+                    return loaded;
+                }
+            });
+        cache.getRange("a", 0, -1);
+        cache.getRange("a", 0, -1);
+        verify(_redis, times(2)).getRange(keys, 0, -1);
+    }
+
+    private TieredCacheService createService(String maxWeight) {
+        Properties props = new Properties();
+
+        props.setProperty(TieredCacheService.Property.L1_MAX_WEIGHT.getName(), maxWeight);
+        return new TieredCacheService(new SystemConfiguration(props), _monitorService, _redis);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
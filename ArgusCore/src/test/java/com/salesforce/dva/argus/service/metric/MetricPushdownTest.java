@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.DiscoveryService;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.metric.transform.TransformFactory;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery.Aggregator;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the results of expressions whose functions are pushed into the TSDB query with the results of evaluating the same functions in process.
+ * The TSDB is simulated by grouping raw series by the tags of the query, downsampling each series into period aligned buckets and then
+ * aggregating the series of every group.
+ */
+public class MetricPushdownTest {
+
+    private static final String LEAF = "1000:400000:scope:metric'{'host=*'}':{0}";
+
+    private final Map<Map<String, String>, Map<Long, Double>> _rawSeries = new LinkedHashMap<>();
+    private final List<MetricQuery> _executedQueries = new ArrayList<>();
+    private TSDBService _tsdbService;
+    private DiscoveryService _discoveryService;
+
+    @Before
+    public void setUp() {
+        _addRawSeries("host1", "dc1", new long[] { 10000, 30000, 50000, 70000, 130000, 190000 }, new double[] { 1, 5, 2, 8, 3, 7 });
+        _addRawSeries("host1", "dc2", new long[] { 30000, 90000, 150000 }, new double[] { 4, 6, 9 });
+        _addRawSeries("host2", "dc1", new long[] { 10000, 50000, 110000, 170000, 230000 }, new double[] { 2.5, 11, 4, 1, 6 });
+        _addRawSeries("host3", "dc1", new long[] { 70000, 130000, 250000 }, new double[] { 3, 12, 0.5 });
+        _tsdbService = mock(TSDBService.class);
+        _discoveryService = mock(DiscoveryService.class);
+        when(_discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(new Answer<List<MetricQuery>>() {
+
+                @Override
+                public List<MetricQuery> answer(InvocationOnMock invocation) throws Throwable {
+                    return Arrays.asList((MetricQuery) invocation.getArguments()[0]);
+                }
+            });
+        when(_tsdbService.getMetrics(any(List.class))).thenAnswer(new Answer<Map<MetricQuery, List<Metric>>>() {
+
+                @Override
+                public Map<MetricQuery, List<Metric>> answer(InvocationOnMock invocation) throws Throwable {
+                    Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+                    for (MetricQuery query : (List<MetricQuery>) invocation.getArguments()[0]) {
+                        _executedQueries.add(new MetricQuery(query));
+                        result.put(query, _query(query));
+                    }
+                    return result;
+                }
+            });
+    }
+
+    @Test
+    public void testZeroIfMissingSumOverGroupByIsPushedDown() throws Exception {
+        _assertEquivalent("ZEROIFMISSINGSUM", "zimsum", null);
+        assertTrue(_executedQueries.get(_executedQueries.size() - 1).getTags().isEmpty());
+    }
+
+    @Test
+    public void testMinOverGroupByIsPushedDown() throws Exception {
+        _assertEquivalent("MIN", "minmin", null);
+        assertTrue(_executedQueries.get(_executedQueries.size() - 1).getTags().isEmpty());
+    }
+
+    @Test
+    public void testMaxOverGroupByIsPushedDown() throws Exception {
+        _assertEquivalent("MAX", "minmax", null);
+        assertTrue(_executedQueries.get(_executedQueries.size() - 1).getTags().isEmpty());
+    }
+
+    @Test
+    public void testInterpolatingAggregatorIsNotPushedDown() throws Exception {
+        _assertEquivalent("MAX", "avg", null);
+        assertEquals("*", _executedQueries.get(_executedQueries.size() - 1).getTag("host"));
+    }
+
+    @Test
+    public void testSumIsNotPushedDown() throws Exception {
+        _assertEquivalent("SUM", "zimsum", null);
+        assertEquals("*", _executedQueries.get(_executedQueries.size() - 1).getTag("host"));
+    }
+
+    @Test
+    public void testDownsampleIsPushedDownWhenEnabled() throws Exception {
+        _assertEquivalent("DOWNSAMPLE", "zimsum", "1m-sum");
+
+        MetricQuery pushed = _executedQueries.get(_executedQueries.size() - 1);
+
+        assertEquals(Aggregator.SUM, pushed.getDownsampler());
+        assertEquals(Long.valueOf(60000L), pushed.getDownsamplingPeriod());
+    }
+
+    @Test
+    public void testDownsampleWithMismatchedReducerIsNotPushedDown() throws Exception {
+        _assertEquivalent("DOWNSAMPLE", "zimsum", "1m-max");
+        assertNull(_executedQueries.get(_executedQueries.size() - 1).getDownsampler());
+    }
+
+    @Test
+    public void testDownsampleIsNotPushedDownByDefault() throws Exception {
+        MetricReader<Metric> reader = new MetricReader<>(_tsdbService, _discoveryService, new TransformFactory(_tsdbService));
+
+        reader.parse("DOWNSAMPLE(" + MessageFormat.format(LEAF, "zimsum") + ", $1m-sum)", 0, Metric.class);
+        assertNull(_executedQueries.get(0).getDownsampler());
+    }
+
+    /* Evaluates the function over the leaf with push down enabled and compares it to applying the transform to the leaf in process. */
+    private void _assertEquivalent(String function, String aggregator, String constant) throws Exception {
+        String leaf = MessageFormat.format(LEAF, aggregator);
+        String expression = function + "(" + leaf + (constant == null ? "" : ", $" + constant) + ")";
+        TransformFactory factory = new TransformFactory(_tsdbService);
+        MetricReader<Metric> reader = new MetricReader<>(_tsdbService, _discoveryService, factory);
+        List<Metric> leafMetrics = reader.parse(leaf, 0, Metric.class);
+        List<Metric> expected = constant == null ? factory.getTransform(function).transform(leafMetrics)
+                                                 : factory.getTransform(function).transform(leafMetrics, Arrays.asList(constant));
+
+        reader = new MetricReader<>(_tsdbService, _discoveryService, factory);
+        reader.setDownsamplePushdown(true);
+
+        List<Metric> actual = reader.parse(expression, 0, Metric.class);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getScope(), actual.get(i).getScope());
+            assertEquals(expected.get(i).getMetric(), actual.get(i).getMetric());
+            assertEquals(_toDoubles(expected.get(i).getDatapoints()), _toDoubles(actual.get(i).getDatapoints()));
+        }
+    }
+
+    private Map<Long, Double> _toDoubles(Map<Long, String> datapoints) {
+        Map<Long, Double> result = new TreeMap<>();
+
+        for (Map.Entry<Long, String> entry : datapoints.entrySet()) {
+            result.put(entry.getKey(), Double.parseDouble(entry.getValue()));
+        }
+        return result;
+    }
+
+    private void _addRawSeries(String host, String dc, long[] timestamps, double[] values) {
+        Map<String, String> tags = new HashMap<>();
+        Map<Long, Double> datapoints = new TreeMap<>();
+
+        tags.put("host", host);
+        tags.put("dc", dc);
+        for (int i = 0; i < timestamps.length; i++) {
+            datapoints.put(timestamps[i], values[i]);
+        }
+        _rawSeries.put(tags, datapoints);
+    }
+
+    /* Simulates the TSDB for the given query. */
+    private List<Metric> _query(MetricQuery query) {
+        Map<Map<String, String>, List<Map<Long, Double>>> groups = new LinkedHashMap<>();
+
+        for (Map.Entry<Map<String, String>, Map<Long, Double>> series : _rawSeries.entrySet()) {
+            Map<String, String> groupTags = new TreeMap<>();
+            boolean matches = true;
+
+            for (Map.Entry<String, String> tag : query.getTags().entrySet()) {
+                String value = series.getKey().get(tag.getKey());
+
+                if (value == null || (!"*".equals(tag.getValue()) && !tag.getValue().equals(value))) {
+                    matches = false;
+                    break;
+                }
+                groupTags.put(tag.getKey(), value);
+            }
+            if (matches) {
+                List<Map<Long, Double>> group = groups.get(groupTags);
+
+                if (group == null) {
+                    group = new ArrayList<>();
+                    groups.put(groupTags, group);
+                }
+                group.add(_downsample(series.getValue(), query));
+            }
+        }
+
+        List<Metric> result = new ArrayList<>();
+
+        for (Map.Entry<Map<String, String>, List<Map<Long, Double>>> group : groups.entrySet()) {
+            Metric metric = new Metric(query.getScope(), query.getMetric());
+            Map<Long, String> datapoints = new TreeMap<>();
+
+            for (Map.Entry<Long, List<Double>> entry : _collate(group.getValue()).entrySet()) {
+                datapoints.put(entry.getKey(), String.valueOf(_reduce(query.getAggregator(), entry.getValue())));
+            }
+            metric.setTags(group.getKey());
+            metric.setDatapoints(datapoints);
+            result.add(metric);
+        }
+        return result;
+    }
+
+    private Map<Long, Double> _downsample(Map<Long, Double> datapoints, MetricQuery query) {
+        if (query.getDownsampler() == null) {
+            return datapoints;
+        }
+
+        long period = query.getDownsamplingPeriod();
+        Map<Long, List<Double>> buckets = new TreeMap<>();
+
+        for (Map.Entry<Long, Double> entry : datapoints.entrySet()) {
+            long bucket = entry.getKey() - entry.getKey() % period;
+
+            if (!buckets.containsKey(bucket)) {
+                buckets.put(bucket, new ArrayList<Double>());
+            }
+            buckets.get(bucket).add(entry.getValue());
+        }
+
+        Map<Long, Double> result = new TreeMap<>();
+
+        for (Map.Entry<Long, List<Double>> entry : buckets.entrySet()) {
+            result.put(entry.getKey(), _reduce(query.getDownsampler(), entry.getValue()));
+        }
+        return result;
+    }
+
+    private Map<Long, List<Double>> _collate(List<Map<Long, Double>> series) {
+        Map<Long, List<Double>> collated = new TreeMap<>();
+
+        for (Map<Long, Double> datapoints : series) {
+            for (Map.Entry<Long, Double> entry : datapoints.entrySet()) {
+                if (!collated.containsKey(entry.getKey())) {
+                    collated.put(entry.getKey(), new ArrayList<Double>());
+                }
+                collated.get(entry.getKey()).add(entry.getValue());
+            }
+        }
+        return collated;
+    }
+
+    /* Aggregates values present at a timestamp. The interpolating aggregators are approximated without interpolation. */
+    private double _reduce(Aggregator aggregator, List<Double> values) {
+        switch (aggregator) {
+            case SUM:
+            case ZIMSUM:
+
+                double sum = 0;
+
+                for (double value : values) {
+                    sum += value;
+                }
+                return sum;
+            case MIN:
+            case MINMIN:
+                return Collections.min(values);
+            case MAX:
+            case MINMAX:
+                return Collections.max(values);
+            case AVG:
+
+                double total = 0;
+
+                for (double value : values) {
+                    total += value;
+                }
+                return total / values.size();
+            default:
+                throw new UnsupportedOperationException(aggregator.name());
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
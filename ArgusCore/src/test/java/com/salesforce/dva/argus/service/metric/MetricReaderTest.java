@@ -31,15 +31,40 @@
      
 package com.salesforce.dva.argus.service.metric;
 
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.DiscoveryService;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.metric.transform.SeriesTransform;
+import com.salesforce.dva.argus.service.metric.transform.TransformFactory;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
 import com.salesforce.dva.argus.system.SystemException;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class MetricReaderTest {
 
@@ -93,6 +118,254 @@ public class MetricReaderTest {
         }
     }
 
+    @Test(timeout = 10000L)
+    public void testLeafDiscoveryRunsConcurrently() throws ParseException {
+        final CyclicBarrier barrier = new CyclicBarrier(3);
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        when(discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(new Answer<List<MetricQuery>>() {
+
+                @Override
+                public List<MetricQuery> answer(InvocationOnMock invocation) throws Throwable {
+                    barrier.await(5, TimeUnit.SECONDS);
+                    return Arrays.asList((MetricQuery) invocation.getArguments()[0]);
+                }
+            });
+        when(tsdbService.getMetrics(any(List.class))).thenAnswer(new Answer<Map<MetricQuery, List<Metric>>>() {
+
+                @Override
+                public Map<MetricQuery, List<Metric>> answer(InvocationOnMock invocation) throws Throwable {
+                    Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+                    for (MetricQuery query : (List<MetricQuery>) invocation.getArguments()[0]) {
+                        result.put(query, Arrays.asList(_createMetric(query.getScope(), 1500L, "1")));
+                    }
+                    return result;
+                }
+            });
+
+        MetricReader<Metric> reader = new MetricReader<>(tsdbService, discoveryService, new TransformFactory(tsdbService));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        reader.setExecutors(executor, null);
+        try {
+            List<Metric> result = reader.parse("SUM(1000:2000:scope1:metric:avg, 1000:2000:scope2:metric:avg, 1000:2000:scope3:metric:avg)", 0,
+                Metric.class);
+
+            assertEquals(1, result.size());
+            assertEquals(3.0, Double.parseDouble(result.get(0).getDatapoints().get(1500L)), 0.0);
+            verify(tsdbService, times(1)).getMetrics(any(List.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSharedLeafQueryIsFetchedOnce() throws ParseException {
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        when(discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(new Answer<List<MetricQuery>>() {
+
+                @Override
+                public List<MetricQuery> answer(InvocationOnMock invocation) throws Throwable {
+                    return Arrays.asList((MetricQuery) invocation.getArguments()[0]);
+                }
+            });
+
+        final Metric fetched = _createMetric("scope", 1500L, "2");
+
+        when(tsdbService.getMetrics(any(List.class))).thenAnswer(new Answer<Map<MetricQuery, List<Metric>>>() {
+
+                @Override
+                public Map<MetricQuery, List<Metric>> answer(InvocationOnMock invocation) throws Throwable {
+                    Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+                    for (MetricQuery query : (List<MetricQuery>) invocation.getArguments()[0]) {
+                        result.put(query, Arrays.asList(fetched));
+                    }
+                    return result;
+                }
+            });
+
+        MetricReader<Metric> reader = new MetricReader<>(tsdbService, discoveryService, new TransformFactory(tsdbService));
+        List<Metric> result = reader.parse("UNION(1000:2000:scope:metric:avg, 1000:2000:scope:metric:avg)", 0, Metric.class);
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(tsdbService, times(1)).getMetrics(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(1, result.size());
+        assertEquals("2", result.get(0).getDatapoints().get(1500L));
+    }
+
+    @Test
+    public void testSharedRelativeLeafQueryIsFetchedOnce() throws ParseException {
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        when(discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(new Answer<List<MetricQuery>>() {
+
+                @Override
+                public List<MetricQuery> answer(InvocationOnMock invocation) throws Throwable {
+                    return Arrays.asList((MetricQuery) invocation.getArguments()[0]);
+                }
+            });
+        when(tsdbService.getMetrics(any(List.class))).thenAnswer(new Answer<Map<MetricQuery, List<Metric>>>() {
+
+                @Override
+                public Map<MetricQuery, List<Metric>> answer(InvocationOnMock invocation) throws Throwable {
+                    Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+                    for (MetricQuery query : (List<MetricQuery>) invocation.getArguments()[0]) {
+                        result.put(query, Arrays.asList(_createMetric("scope", 1500L, "2")));
+                    }
+                    return result;
+                }
+            });
+
+        List<String> expressions = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            expressions.add(i % 2 == 0 ? "-1h:scope:metric:avg" : "UNION(-1h:scope:metric:avg, -1h:scope:metric:avg)");
+        }
+
+        MetricReader<Metric> reader = new MetricReader<>(tsdbService, discoveryService, new TransformFactory(tsdbService));
+        List<Metric> result = reader.parse(expressions, 0, Metric.class);
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(tsdbService, times(1)).getMetrics(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(149, reader.getSavedQueryCount());
+        assertEquals(100, result.size());
+    }
+
+    @Test
+    public void testQueriesAreReturnedInExpressionOrder() throws ParseException {
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        when(discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(new Answer<List<MetricQuery>>() {
+
+                @Override
+                public List<MetricQuery> answer(InvocationOnMock invocation) throws Throwable {
+                    return Arrays.asList((MetricQuery) invocation.getArguments()[0]);
+                }
+            });
+
+        MetricReader<MetricQuery> reader = new MetricReader<>(tsdbService, discoveryService, new TransformFactory(tsdbService));
+        List<MetricQuery> result = reader.parse("SUM(1000:2000:scope1:metric:avg, DIVIDE(1000:2000:scope2:metric:avg, 1000:2000:scope3:metric:avg))", 0,
+            MetricQuery.class);
+        List<String> scopes = new ArrayList<>();
+
+        for (MetricQuery query : result) {
+            scopes.add(query.getScope());
+        }
+        assertEquals(Arrays.asList("scope1", "scope2", "scope3"), scopes);
+    }
+
+    @Test
+    public void testParallelSeriesTransformPreservesOrder() throws ParseException {
+        TSDBService tsdbService = _createWildcardTSDBService(40);
+        DiscoveryService discoveryService = _createIdentityDiscoveryService();
+        MetricReader<Metric> reader = new MetricReader<>(tsdbService, discoveryService, new TransformFactory(tsdbService));
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        reader.setTransformParallelism(4);
+        reader.setExecutors(null, executor);
+        try {
+            List<Metric> result = reader.parse("ABSOLUTE(1000:2000:scope:metric:avg)", 0, Metric.class);
+
+            assertEquals(40, result.size());
+            for (int i = 0; i < 40; i++) {
+                assertEquals("scope" + i, result.get(i).getScope());
+                assertEquals(String.valueOf((double) i), result.get(i).getDatapoints().get(1500L));
+            }
+            assertTrue(reader.getTransformCpuTimes().containsKey("ABSOLUTE"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testSeriesTransformChunksRunConcurrently() throws ParseException {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        TSDBService tsdbService = _createWildcardTSDBService(4);
+        TransformFactory factory = mock(TransformFactory.class);
+        SeriesTransform transform = mock(SeriesTransform.class);
+
+        when(transform.transform(any(List.class))).thenAnswer(new Answer<List<Metric>>() {
+
+                @Override
+                public List<Metric> answer(InvocationOnMock invocation) throws Throwable {
+                    barrier.await(5, TimeUnit.SECONDS);
+                    return (List<Metric>) invocation.getArguments()[0];
+                }
+            });
+        when(factory.getTransform(any(String.class))).thenReturn(transform);
+
+        MetricReader<Metric> reader = new MetricReader<>(tsdbService, _createIdentityDiscoveryService(), factory);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        reader.setTransformParallelism(2);
+        reader.setExecutors(null, executor);
+        try {
+            List<Metric> result = reader.parse("IDENTITY(1000:2000:scope:metric:avg)", 0, Metric.class);
+
+            assertEquals(4, result.size());
+            verify(transform, times(2)).transform(any(List.class));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private DiscoveryService _createIdentityDiscoveryService() {
+        DiscoveryService discoveryService = mock(DiscoveryService.class);
+
+        when(discoveryService.getMatchingQueries(any(MetricQuery.class))).thenAnswer(new Answer<List<MetricQuery>>() {
+
+                @Override
+                public List<MetricQuery> answer(InvocationOnMock invocation) throws Throwable {
+                    return Arrays.asList((MetricQuery) invocation.getArguments()[0]);
+                }
+            });
+        return discoveryService;
+    }
+
+    private TSDBService _createWildcardTSDBService(final int seriesCount) {
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        when(tsdbService.getMetrics(any(List.class))).thenAnswer(new Answer<Map<MetricQuery, List<Metric>>>() {
+
+                @Override
+                public Map<MetricQuery, List<Metric>> answer(InvocationOnMock invocation) throws Throwable {
+                    Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+                    for (MetricQuery query : (List<MetricQuery>) invocation.getArguments()[0]) {
+                        List<Metric> metrics = new ArrayList<>();
+
+                        for (int i = 0; i < seriesCount; i++) {
+                            metrics.add(_createMetric("scope" + i, 1500L, String.valueOf(-i)));
+                        }
+                        result.put(query, metrics);
+                    }
+                    return result;
+                }
+            });
+        return tsdbService;
+    }
+
+    private Metric _createMetric(String scope, long timestamp, String value) {
+        Metric metric = new Metric(scope, "metric");
+        Map<Long, String> datapoints = new HashMap<>();
+
+        datapoints.put(timestamp, value);
+        metric.setDatapoints(datapoints);
+        return metric;
+    }
+
     private Properties readFile(String fileName) {
         if ((fileName != null) && !fileName.isEmpty()) {
             Properties result = new Properties();
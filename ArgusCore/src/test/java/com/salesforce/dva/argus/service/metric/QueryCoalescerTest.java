@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.metric;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery.Aggregator;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueryCoalescerTest {
+
+    @Test
+    public void testIdenticalQueriesAreFetchedOnce() {
+        TSDBService tsdbService = _mockTSDBService(1000L, 10000L);
+        QueryCoalescer coalescer = new QueryCoalescer(tsdbService);
+        MetricQuery first = _createQuery("host1", 1000L, 5000L);
+        MetricQuery second = _createQuery("host1", 1000L, 5000L);
+        List<List<Metric>> result = coalescer.getMetrics(Arrays.asList(first, second));
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(tsdbService, times(1)).getMetrics(captor.capture());
+        assertEquals(1, captor.getValue().size());
+        assertEquals(Arrays.asList(1000L, 2000L, 3000L, 4000L, 5000L), _getTimestamps(result.get(0)));
+        assertEquals(Arrays.asList(1000L, 2000L, 3000L, 4000L, 5000L), _getTimestamps(result.get(1)));
+        assertSame(first, result.get(0).get(0).getQuery());
+        assertSame(second, result.get(1).get(0).getQuery());
+        assertNotSame(result.get(0).get(0), result.get(1).get(0));
+        assertEquals(1, coalescer.getSavedQueryCount());
+    }
+
+    @Test
+    public void testOverlappingWindowsAreNotMerged() {
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        // Emulates the TSDB summing two series, where host2 only reports at 4000 and 6000 and is linearly interpolated at the timestamps of
+        // host1. At the edge 5000 of the first window, host2 is only interpolated if the window extends to 6000.
+        when(tsdbService.getMetrics(any(List.class))).thenAnswer(new Answer<Map<MetricQuery, List<Metric>>>() {
+
+                @Override
+                public Map<MetricQuery, List<Metric>> answer(InvocationOnMock invocation) throws Throwable {
+                    Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+                    for (MetricQuery query : (List<MetricQuery>) invocation.getArguments()[0]) {
+                        Metric metric = new Metric(query.getScope(), query.getMetric());
+                        boolean interpolate = query.getStartTimestamp() <= 4000L && query.getEndTimestamp() >= 6000L;
+
+                        for (long timestamp = query.getStartTimestamp(); timestamp <= query.getEndTimestamp(); timestamp += 1000L) {
+                            double host2 = timestamp == 4000L ? 10 : (timestamp == 5000L && interpolate ? 20 : (timestamp == 6000L ? 30 : 0));
+
+                            metric.addDatapoint(timestamp, String.valueOf(1 + host2));
+                        }
+                        result.put(query, Arrays.asList(metric));
+                    }
+                    return result;
+                }
+            });
+
+        QueryCoalescer coalescer = new QueryCoalescer(tsdbService);
+        MetricQuery first = _createQuery("*", 3000L, 5000L);
+        MetricQuery second = _createQuery("*", 4000L, 8000L);
+        List<List<Metric>> result = coalescer.getMetrics(Arrays.asList(first, second));
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(tsdbService, times(1)).getMetrics(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals("1.0", result.get(0).get(0).getDatapoints().get(5000L));
+        assertEquals("21.0", result.get(1).get(0).getDatapoints().get(5000L));
+        assertEquals(0, coalescer.getSavedQueryCount());
+    }
+
+    @Test
+    public void testDistinctSeriesAndDisjointWindowsAreNotMerged() {
+        TSDBService tsdbService = _mockTSDBService(1000L, 10000L);
+        QueryCoalescer coalescer = new QueryCoalescer(tsdbService);
+        List<MetricQuery> queries = Arrays.asList(_createQuery("host1", 1000L, 2000L), _createQuery("host2", 1000L, 2000L),
+            _createQuery("host1", 5000L, 6000L));
+        List<List<Metric>> result = coalescer.getMetrics(queries);
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(tsdbService, times(1)).getMetrics(captor.capture());
+        assertEquals(3, captor.getValue().size());
+        assertEquals(Arrays.asList(1000L, 2000L), _getTimestamps(result.get(0)));
+        assertEquals("host2", result.get(1).get(0).getTag("host"));
+        assertEquals(Arrays.asList(5000L, 6000L), _getTimestamps(result.get(2)));
+        assertEquals(0, coalescer.getSavedQueryCount());
+    }
+
+    @Test
+    public void testQueriesWithDifferentDownsamplingAreNotMerged() {
+        TSDBService tsdbService = _mockTSDBService(0L, 20000L);
+        QueryCoalescer coalescer = new QueryCoalescer(tsdbService);
+        MetricQuery first = _createQuery("host1", 0L, 10000L);
+        MetricQuery second = _createQuery("host1", 0L, 10000L);
+        MetricQuery third = _createQuery("host1", 0L, 10000L);
+
+        for (MetricQuery query : Arrays.asList(first, second, third)) {
+            query.setDownsampler(Aggregator.AVG);
+            query.setDownsamplingPeriod(5000L);
+        }
+        third.setDownsamplingPeriod(1000L);
+        coalescer.getMetrics(Arrays.asList(first, second, third));
+
+        ArgumentCaptor<List> captor = ArgumentCaptor.forClass(List.class);
+
+        verify(tsdbService, times(1)).getMetrics(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals(1, coalescer.getSavedQueryCount());
+    }
+
+    private TSDBService _mockTSDBService(final long start, final long end) {
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        when(tsdbService.getMetrics(any(List.class))).thenAnswer(new Answer<Map<MetricQuery, List<Metric>>>() {
+
+                @Override
+                public Map<MetricQuery, List<Metric>> answer(InvocationOnMock invocation) throws Throwable {
+                    Map<MetricQuery, List<Metric>> result = new HashMap<>();
+
+                    for (MetricQuery query : (List<MetricQuery>) invocation.getArguments()[0]) {
+                        Metric metric = new Metric(query.getScope(), query.getMetric());
+                        Map<Long, String> datapoints = new TreeMap<>();
+
+                        for (long timestamp = Math.max(start, query.getStartTimestamp());
+                                timestamp <= Math.min(end, query.getEndTimestamp()); timestamp += 1000L) {
+                            datapoints.put(timestamp, String.valueOf(timestamp / 1000));
+                        }
+                        metric.setTags(query.getTags());
+                        metric.setDatapoints(datapoints);
+                        metric.setQuery(query);
+                        result.put(query, Arrays.asList(metric));
+                    }
+                    return result;
+                }
+            });
+        return tsdbService;
+    }
+
+    private MetricQuery _createQuery(String host, long start, long end) {
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("host", host);
+
+        MetricQuery query = new MetricQuery("scope", "metric", tags, start, end);
+
+        query.setAggregator(Aggregator.SUM);
+        return query;
+    }
+
+    private List<Long> _getTimestamps(List<Metric> metrics) {
+        assertEquals(1, metrics.size());
+        return new ArrayList<>(metrics.get(0).getDatapoints().keySet());
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.metric.transform;
+
+import com.salesforce.dva.argus.entity.Metric;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+public class ColumnReducerTest {
+
+    private static final String TEST_SCOPE = "test-scope";
+    private static final String TEST_METRIC = "test-metric";
+    private static final String[] TIED_VALUES = new String[] { "1", "1.0", "1.00", "2", "2.0", "-0.0", "0.0" };
+
+    @Test
+    public void testReducersMatchCollatedStringPath() {
+        Random random = new Random(42);
+
+        for (int run = 0; run < 20; run++) {
+            List<Metric> metrics = _createMetrics(random, 1 + random.nextInt(12), 200, false);
+
+            _assertReduced(new MinValueReducer()::reduce, new MetricReducerTransform(new MinValueReducer()).transform(metrics), metrics, false);
+            _assertReduced(new MaxValueReducer()::reduce, new MetricReducerTransform(new MaxValueReducer()).transform(metrics), metrics, false);
+            _assertReduced(new AverageValueReducer()::reduce, new MetricReducerTransform(new AverageValueReducer()).transform(metrics), metrics,
+                false);
+            _assertReduced(Reducers::sumReducer, new MetricReducerOrMappingTransform(new SumValueReducerOrMapping()).transform(metrics), metrics,
+                true);
+        }
+    }
+
+    @Test
+    public void testReducersWithConstantsMatchCollatedStringPath() {
+        Random random = new Random(7);
+
+        for (int run = 0; run < 20; run++) {
+            List<Metric> metrics = _createMetrics(random, 1 + random.nextInt(12), 200, true);
+
+            for (String percentile : Arrays.asList("1", "25", "50", "90", "99.9")) {
+                List<String> constants = Arrays.asList(percentile);
+                List<Metric> actual = new MetricReducerOrMappingWithConstantTransform(new PercentileValueReducerOrMapping()).transform(metrics,
+                    constants);
+
+                _assertReduced(new PercentileValueReducerOrMapping(), constants, actual, metrics);
+            }
+
+            List<String> constants = Arrays.asList("0.5");
+            List<Metric> actual = new MetricReducerOrMappingWithConstantTransform(new DeviationValueReducerOrMapping()).transform(metrics,
+                constants);
+
+            _assertReduced(new DeviationValueReducerOrMapping(), constants, actual, metrics);
+        }
+    }
+
+    @Test
+    public void testCountMatchesCollatedStringPath() {
+        Random random = new Random(11);
+        List<Metric> metrics = _createMetrics(random, 8, 200, true);
+        Map<Long, List<String>> collated = _collate(metrics);
+        Map<Long, String> expected = new TreeMap<>();
+
+        for (Map.Entry<Long, List<String>> entry : collated.entrySet()) {
+            int count = entry.getValue().size();
+
+            expected.put(entry.getKey(), count == metrics.size() ? String.valueOf((double) count) : "1.0");
+        }
+
+        List<Metric> actual = new CountTransformWrapUnion().transform(metrics);
+
+        assertEquals(1, actual.size());
+        assertEquals(expected, actual.get(0).getDatapoints());
+        assertEquals(TransformFactory.Function.UNION.name(), actual.get(0).getScope());
+    }
+
+    @Test
+    public void testNonNumericValuesFallBackToCollatedStringPath() {
+        Metric metric_1 = new Metric(TEST_SCOPE, TEST_METRIC);
+        Metric metric_2 = new Metric(TEST_SCOPE, TEST_METRIC);
+        Map<Long, String> datapoints_1 = new HashMap<>();
+        Map<Long, String> datapoints_2 = new HashMap<>();
+
+        datapoints_1.put(1000L, "1.5");
+        datapoints_1.put(2000L, "");
+        datapoints_1.put(3000L, "abc");
+        datapoints_2.put(1000L, "2.5");
+        datapoints_2.put(2000L, "4.0");
+        datapoints_2.put(3000L, "5.0");
+        metric_1.setDatapoints(datapoints_1);
+        metric_2.setDatapoints(datapoints_2);
+
+        Map<Long, String> expected = new TreeMap<>();
+
+        expected.put(1000L, "4.0");
+        expected.put(2000L, "4.0");
+        expected.put(3000L, "5.0");
+
+        List<Metric> actual = new MetricReducerOrMappingTransform(new SumValueReducerOrMapping()).transform(Arrays.asList(metric_1, metric_2));
+
+        assertEquals(expected, actual.get(0).getDatapoints());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testNonNumericValuesStillFailForMin() {
+        Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+        Map<Long, String> datapoints = new HashMap<>();
+
+        datapoints.put(1000L, "a");
+        metric.setDatapoints(datapoints);
+        new MetricReducerTransform(new MinValueReducer()).transform(Arrays.asList(metric));
+    }
+
+    private void _assertReduced(Function<List<String>, String> reducer, List<Metric> actual, List<Metric> metrics, boolean requireAll) {
+        Map<Long, String> expected = new TreeMap<>();
+
+        for (Map.Entry<Long, List<String>> entry : _collate(metrics).entrySet()) {
+            if (!requireAll || entry.getValue().size() == metrics.size()) {
+                expected.put(entry.getKey(), reducer.apply(entry.getValue()));
+            }
+        }
+        assertEquals(1, actual.size());
+        assertEquals(expected, actual.get(0).getDatapoints());
+    }
+
+    private void _assertReduced(ValueReducerOrMapping reducer, List<String> constants, List<Metric> actual, List<Metric> metrics) {
+        Map<Long, String> expected = new TreeMap<>();
+
+        for (Map.Entry<Long, List<String>> entry : _collate(metrics).entrySet()) {
+            if (entry.getValue().size() == metrics.size()) {
+                expected.put(entry.getKey(), reducer.reduce(entry.getValue(), constants));
+            }
+        }
+        assertEquals(1, actual.size());
+        assertEquals(expected, actual.get(0).getDatapoints());
+    }
+
+    private Map<Long, List<String>> _collate(List<Metric> metrics) {
+        Map<Long, List<String>> collated = new TreeMap<>();
+
+        for (Metric metric : metrics) {
+            for (Map.Entry<Long, String> point : metric.getDatapoints().entrySet()) {
+                if (!collated.containsKey(point.getKey())) {
+                    collated.put(point.getKey(), new ArrayList<String>());
+                }
+                collated.get(point.getKey()).add(point.getValue());
+            }
+        }
+        return collated;
+    }
+
+    private List<Metric> _createMetrics(Random random, int count, int points, boolean dense) {
+        List<Metric> metrics = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+            Map<Long, String> datapoints = new HashMap<>();
+
+            for (long timestamp = 0; timestamp < points; timestamp++) {
+                if (random.nextInt(dense ? 20 : 4) == 0) {
+                    continue;
+                }
+
+                int kind = random.nextInt(10);
+                String value;
+
+                if (kind < 3) {
+                    value = TIED_VALUES[random.nextInt(TIED_VALUES.length)];
+                } else if (kind == 3 && !dense) {
+                    value = null;
+                } else {
+                    value = String.valueOf((random.nextDouble() - 0.5) * 1000);
+                }
+                datapoints.put(timestamp * 1000, value);
+            }
+            metric.setDatapoints(datapoints);
+            metrics.add(metric);
+        }
+        return metrics;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -34,9 +34,12 @@ package com.salesforce.dva.argus.service.metric.transform;
 import com.salesforce.dva.argus.entity.Metric;
 import org.junit.Test;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 
 import static org.junit.Assert.assertEquals;
 
@@ -562,5 +565,79 @@ public class DownsampleTransformTest {
         assertEquals(result.size(), 1);
         assertEquals(expected_1, result.get(0).getDatapoints());
     }
+
+    @Test
+    public void testDownsampleTransformMissingValuesCountAsZero() {
+        Transform downsampleTransform = new DownsampleTransform();
+        Map<Long, String> datapoints_1 = new HashMap<Long, String>();
+
+        datapoints_1.put(1000L, "4");
+        datapoints_1.put(2000L, "");
+        datapoints_1.put(3000L, null);
+        datapoints_1.put(4000L, "8");
+
+        Metric metric_1 = new Metric(TEST_SCOPE, TEST_METRIC);
+
+        metric_1.setDatapoints(datapoints_1);
+
+        List<Metric> metrics = new ArrayList<Metric>();
+
+        metrics.add(metric_1);
+
+        List<String> constants = new ArrayList<String>();
+
+        constants.add("2s-min");
+
+        Map<Long, String> expected_1 = new HashMap<Long, String>();
+
+        expected_1.put(1000L, "0.0");
+        expected_1.put(4000L, "8.0");
+
+        List<Metric> result = downsampleTransform.transform(metrics, constants);
+
+        assertEquals(result.size(), 1);
+        assertEquals(expected_1, result.get(0).getDatapoints());
+    }
+
+    @Test
+    public void testDownsampleTransformMatchesReducer() {
+        Random random = new Random(3);
+        Map<Long, String> datapoints = new TreeMap<Long, String>();
+
+        for (long timestamp = 0; timestamp < 6 * 60 * 60 * 1000L; timestamp += 10000L) {
+            datapoints.put(timestamp + random.nextInt(1000), String.valueOf(random.nextGaussian() * 100));
+        }
+        for (String type : new String[] { "avg", "min", "max", "sum", "dev" }) {
+            Map<Long, String> expected = new TreeMap<Long, String>();
+            List<String> window = new ArrayList<String>();
+            long windowStart = 0L;
+
+            for (Map.Entry<Long, String> entry : datapoints.entrySet()) {
+                if (!window.isEmpty() && entry.getKey() > windowStart + 5 * 60 * 1000L) {
+                    expected.put(windowStart, DownsampleTransform.downsamplerReducer(window, type));
+                    window.clear();
+                }
+                if (window.isEmpty()) {
+                    windowStart = DownsampleTransform.downsamplerTimestamp(entry.getKey(), "m");
+                }
+                window.add(entry.getValue());
+            }
+            expected.put(windowStart, DownsampleTransform.downsamplerReducer(window, type));
+
+            Metric metric = new Metric(TEST_SCOPE, TEST_METRIC);
+
+            metric.setDatapoints(datapoints);
+
+            Map<Long, String> actual = new DownsampleTransform().transform(Arrays.asList(metric), Arrays.asList("5m-" + type)).get(0)
+                .getDatapoints();
+
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<Long, String> entry : expected.entrySet()) {
+                double value = Double.parseDouble(entry.getValue());
+
+                assertEquals(value, Double.parseDouble(actual.get(entry.getKey())), Math.abs(value) * 1e-9);
+            }
+        }
+    }
 }
 /* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
\ No newline at end of file
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.mq.kafka;
+
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import kafka.consumer.KafkaStream;
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ConsumerTest {
+
+    private static final String TOPIC = "topic";
+
+    private Consumer _consumer;
+    private BlockingQueue<byte[]> _buffer;
+
+    @Before
+    public void setUp() {
+        Properties props = new Properties();
+
+        props.setProperty(KafkaMessageService.Property.KAFKA_CONSUMER_MESSAGES_TO_BUFFER.getName(), "10");
+        _consumer = new Consumer(new SystemConfiguration(props), mock(MonitorService.class));
+        _consumer.initializeTopic(TOPIC, null, Collections.<KafkaStream<byte[], byte[]>>emptyList());
+        _buffer = _consumer.getBuffer(TOPIC);
+    }
+
+    private void buffer(String... messages) throws InterruptedException {
+        for (String message : messages) {
+            _buffer.put(message.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testBufferIsBounded() throws InterruptedException {
+        assertEquals(10, _buffer.remainingCapacity());
+        for (int i = 0; i < 10; i++) {
+            buffer(String.valueOf(i));
+        }
+        assertFalse(_buffer.offer("10".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(4, _consumer.dequeueFromBuffer(TOPIC, String.class, 100, 4).size());
+        assertEquals(4, _buffer.remainingCapacity());
+        assertTrue(_buffer.offer("10".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test(timeout = 5000L)
+    public void testDequeueDrainsAvailableMessagesUpToLimit() throws InterruptedException {
+        buffer("a", "b", "c", "d", "e");
+
+        long start = System.currentTimeMillis();
+        List<String> messages = _consumer.dequeueFromBuffer(TOPIC, String.class, 2000, 3);
+
+        assertTrue(System.currentTimeMillis() - start < 1000);
+        assertEquals(Arrays.asList("a", "b", "c"), messages);
+        assertEquals(2, _buffer.size());
+        assertEquals(Arrays.asList("d", "e"), _consumer.dequeueFromBuffer(TOPIC, String.class, 50, -1));
+        assertTrue(_buffer.isEmpty());
+    }
+
+    @Test(timeout = 5000L)
+    public void testDequeueWaitsForMessagesUntilTimeout() throws Exception {
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+                buffer("a");
+                Thread.sleep(100);
+                buffer("b", "c");
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        producer.start();
+
+        List<String> messages = _consumer.dequeueFromBuffer(TOPIC, String.class, 2000, 3);
+
+        producer.join();
+        assertEquals(Arrays.asList("a", "b", "c"), messages);
+
+        long start = System.currentTimeMillis();
+
+        assertTrue(_consumer.dequeueFromBuffer(TOPIC, String.class, 200, 3).isEmpty());
+        assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    @Test
+    public void testDequeueSkipsEmptyAndInvalidMessages() throws InterruptedException {
+        buffer("1", "", "not a number", "2");
+        assertEquals(Arrays.asList(1, 2), _consumer.dequeueFromBuffer(TOPIC, Integer.class, 100, -1));
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
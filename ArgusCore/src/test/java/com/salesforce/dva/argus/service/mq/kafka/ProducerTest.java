@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.mq.kafka;
+
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ProducerTest {
+
+    private org.apache.kafka.clients.producer.Producer<String, byte[]> _kafkaProducer;
+    private MonitorService _monitorService;
+    private List<ProducerRecord<String, byte[]>> _records;
+    private List<Callback> _callbacks;
+    private Producer _producer;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        _kafkaProducer = mock(org.apache.kafka.clients.producer.Producer.class);
+        _monitorService = mock(MonitorService.class);
+        _records = Collections.synchronizedList(new ArrayList<ProducerRecord<String, byte[]>>());
+        _callbacks = Collections.synchronizedList(new ArrayList<Callback>());
+        when(_kafkaProducer.send(any(ProducerRecord.class), any(Callback.class))).thenAnswer(invocation -> {
+            _records.add((ProducerRecord<String, byte[]>) invocation.getArguments()[0]);
+            _callbacks.add((Callback) invocation.getArguments()[1]);
+            return null;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (_producer != null) {
+            _producer.shutdown();
+        }
+    }
+
+    private Producer createProducer(String maxOutstandingBytes, String timeoutMillis) {
+        Properties props = new Properties();
+
+        props.setProperty(KafkaMessageService.Property.KAFKA_PRODUCER_MAX_OUTSTANDING_BYTES.getName(), maxOutstandingBytes);
+        props.setProperty(KafkaMessageService.Property.KAFKA_PRODUCER_ENQUEUE_TIMEOUT_MS.getName(), timeoutMillis);
+        _producer = new Producer(new SystemConfiguration(props), _monitorService, _kafkaProducer);
+        return _producer;
+    }
+
+    private String _value(int index) {
+        return new String(_records.get(index).value(), StandardCharsets.UTF_8);
+    }
+
+    private void complete(int index, Exception exception) {
+        RecordMetadata metaData = new RecordMetadata(new TopicPartition("topic", 0), 0, index);
+
+        _callbacks.get(index).onCompletion(exception == null ? metaData : null, exception);
+    }
+
+    @Test
+    public void testEnqueueDoesNotWaitForAcknowledgement() {
+        Producer producer = createProducer("1000", "1000");
+
+        assertEquals(3, producer.enqueue("topic", Arrays.asList("a", "b", "c")));
+        assertEquals(3, _records.size());
+        assertEquals("b", _value(1));
+        assertFalse(producer.flush(10));
+        for (int i = 0; i < 3; i++) {
+            complete(i, null);
+        }
+        assertTrue(producer.flush(10));
+        verify(_monitorService).modifyCustomCounter("kafka.enqueue.count", 3, Collections.singletonMap("topic", "topic"));
+        verify(_monitorService).modifyCustomCounter(eq("kafka.enqueue.latency"), anyDouble(), eq(Collections.singletonMap("topic", "topic")));
+    }
+
+    @Test
+    public void testEnqueueSkipsMessagesWhenOutstandingBytesExceeded() {
+        Producer producer = createProducer("10", "50");
+
+        assertEquals(1, producer.enqueue("topic", Arrays.asList("123456", "789012")));
+        assertEquals(1, _records.size());
+        verify(_monitorService).modifyCustomCounter("kafka.enqueue.failures", 1, Collections.singletonMap("topic", "topic"));
+        complete(0, null);
+        assertEquals(1, producer.enqueue("topic", Arrays.asList("789012")));
+        assertEquals("789012", _value(1));
+    }
+
+    @Test
+    public void testEnqueueUnblocksWhenAcknowledged() throws Exception {
+        final Producer producer = createProducer("10", "10000");
+
+        producer.enqueue("topic", Arrays.asList("123456"));
+
+        Thread acknowledger = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            complete(0, null);
+        });
+
+        acknowledger.start();
+        assertEquals(1, producer.enqueue("topic", Arrays.asList("789012")));
+        acknowledger.join();
+        assertEquals(2, _records.size());
+    }
+
+    @Test
+    public void testOutstandingBytesAreCountedAfterSerialization() {
+        Producer producer = createProducer("10", "50");
+
+        assertEquals(1, producer.enqueue("topic", Arrays.asList("\u00e9\u00e9\u00e9\u00e9", "\u00e9\u00e9\u00e9\u00e9")));
+        assertEquals(1, _records.size());
+        complete(0, null);
+        assertTrue(producer.flush(10));
+    }
+
+    @Test
+    public void testFailedSendIsCounted() {
+        Producer producer = createProducer("1000", "1000");
+
+        producer.enqueue("topic", Arrays.asList("a"));
+        complete(0, new RuntimeException("Broker unavailable."));
+        assertTrue(producer.flush(10));
+        verify(_monitorService, times(1)).modifyCustomCounter("kafka.enqueue.failures", 1, Collections.singletonMap("topic", "topic"));
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.schema;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.stumbleupon.async.Deferred;
+import org.hbase.async.PutRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class AsyncHbaseSchemaServiceTest {
+
+    private MonitorService _monitorService;
+    private List<PutRequest> _puts;
+    private volatile Exception _putFailure;
+    private AsyncHbaseSchemaService _service;
+
+    @Before
+    public void setUp() {
+        _monitorService = mock(MonitorService.class);
+        _puts = Collections.synchronizedList(new ArrayList<PutRequest>());
+    }
+
+    @After
+    public void tearDown() {
+        if (_service != null) {
+            _service.dispose();
+        }
+    }
+
+    @Test
+    public void testRepeatedPutsAreDeduplicated() throws Exception {
+        _service = createService(1000);
+
+        Metric metric = createMetric("host", "a", "dc", "b");
+
+        _service.put(metric);
+        assertEquals(4, _puts.size());
+        verify(_monitorService).modifyCustomCounter("schema.put.dedup.misses", 2, null);
+        verify(_monitorService, never()).modifyCustomCounter(eq("schema.put.dedup.hits"), anyDouble(), anyMapOf(String.class, String.class));
+        reset(_monitorService);
+        _service.put(Collections.singletonList(metric));
+        assertEquals(4, _puts.size());
+        verify(_monitorService).modifyCustomCounter("schema.put.dedup.hits", 2, null);
+        verify(_monitorService, never()).modifyCustomCounter(eq("schema.put.dedup.misses"), anyDouble(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testMetricWithoutTagsIsDeduplicated() throws Exception {
+        _service = createService(1000);
+        _service.put(createMetric());
+        _service.put(createMetric());
+        assertEquals(2, _puts.size());
+        verify(_monitorService).modifyCustomCounter("schema.put.dedup.misses", 1, null);
+        verify(_monitorService).modifyCustomCounter("schema.put.dedup.hits", 1, null);
+    }
+
+    @Test
+    public void testFailedPutIsNotDeduplicated() throws Exception {
+        _service = createService(1000);
+        _putFailure = new Exception("Region server unavailable.");
+        _service.put(createMetric("host", "a"));
+        _service.put(createMetric("host", "a"));
+        assertEquals(4, _puts.size());
+        verify(_monitorService, times(2)).modifyCustomCounter("schema.put.dedup.misses", 1, null);
+        verify(_monitorService, never()).modifyCustomCounter(eq("schema.put.dedup.hits"), anyDouble(), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedRowKeyIsEvicted() throws Exception {
+        _service = createService(2);
+        _service.put(createMetric("host", "a"));
+        _service.put(createMetric("host", "b"));
+        _service.put(createMetric("host", "a"));
+
+        // Writing a third row key evicts b, which was used least recently.
+        _service.put(createMetric("host", "c"));
+        _service.put(createMetric("host", "a"));
+        _service.put(createMetric("host", "b"));
+        assertEquals(8, _puts.size());
+        verify(_monitorService, times(4)).modifyCustomCounter("schema.put.dedup.misses", 1, null);
+        verify(_monitorService, times(2)).modifyCustomCounter("schema.put.dedup.hits", 1, null);
+    }
+
+    @Test
+    public void testZeroMaxRowKeysDisablesDeduplication() throws Exception {
+        _service = createService(0);
+        _service.put(createMetric("host", "a"));
+        _service.put(createMetric("host", "a"));
+        assertEquals(4, _puts.size());
+        verify(_monitorService, times(2)).modifyCustomCounter("schema.put.dedup.misses", 1, null);
+    }
+
+    private AsyncHbaseSchemaService createService(long maxRowKeys) throws Exception {
+        Properties props = new Properties();
+
+        props.setProperty(AsyncHbaseSchemaService.Property.DEDUP_MAX_ROW_KEYS.getName(), String.valueOf(maxRowKeys));
+
+        Constructor<AsyncHbaseSchemaService> constructor = AsyncHbaseSchemaService.class.getDeclaredConstructor(SystemConfiguration.class,
+            MonitorService.class);
+
+        constructor.setAccessible(true);
+
+        AsyncHbaseSchemaService service = constructor.newInstance(new SystemConfiguration(props), _monitorService);
+
+        setField(service, "_logger", LoggerFactory.getLogger(AsyncHbaseSchemaService.class));
+        setField(service, "_putter", (Function<PutRequest, Deferred<Object>>) request -> {
+            _puts.add(request);
+            return _putFailure == null ? Deferred.fromResult(null) : Deferred.<Object>fromError(_putFailure);
+        });
+        return service;
+    }
+
+    private static void setField(AsyncHbaseSchemaService service, String name, Object value) throws Exception {
+        Field field = AsyncHbaseSchemaService.class.getDeclaredField(name);
+
+        field.setAccessible(true);
+        field.set(service, value);
+    }
+
+    private static Metric createMetric(String... tagPairs) {
+        Metric metric = new Metric("scope", "metric");
+        Map<String, String> tags = new HashMap<>();
+
+        for (int i = 0; i < tagPairs.length; i += 2) {
+            tags.put(tagPairs[i], tagPairs[i + 1]);
+        }
+        metric.setTags(tags);
+        return metric;
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.schema;
+
+import com.salesforce.dva.argus.entity.MetricSchemaRecord;
+import com.salesforce.dva.argus.entity.MetricSchemaRecordQuery;
+import com.salesforce.dva.argus.service.SchemaService;
+import com.salesforce.dva.argus.service.tsdb.MetricQuery;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultDiscoveryServiceTest {
+
+    private SchemaService _schemaService;
+    private DefaultDiscoveryService _discoveryService;
+
+    @Before
+    public void setUp() throws Exception {
+        _schemaService = mock(SchemaService.class);
+        _discoveryService = new DefaultDiscoveryService(_schemaService, new SystemConfiguration(new Properties()));
+
+        Field field = DefaultDiscoveryService.class.getDeclaredField("_logger");
+
+        field.setAccessible(true);
+        field.set(_discoveryService, LoggerFactory.getLogger(DefaultDiscoveryService.class));
+    }
+
+    @After
+    public void tearDown() {
+        _discoveryService.dispose();
+    }
+
+    private static List<MetricSchemaRecord> createRecords(String metric, String tagKey, int from, int to) {
+        List<MetricSchemaRecord> records = new ArrayList<>();
+
+        for (int i = from; i < to; i++) {
+            records.add(new MetricSchemaRecord(null, "scope", metric, tagKey, tagKey + i));
+        }
+        return records;
+    }
+
+    @Test
+    public void testScanResumesAfterLastRecord() {
+        final List<MetricSchemaRecord> firstPage = createRecords("metric", "host", 0, 200);
+        final List<MetricSchemaRecord> secondPage = createRecords("metric", "host", 200, 205);
+
+        when(_schemaService.get(any(MetricSchemaRecordQuery.class), anyInt(), any(MetricSchemaRecord.class))).thenAnswer(invocation -> {
+            Object startAfter = invocation.getArguments()[2];
+
+            if (startAfter == null) {
+                return firstPage;
+            }
+            return startAfter == firstPage.get(199) ? secondPage : Collections.emptyList();
+        });
+
+        List<MetricQuery> queries = _discoveryService.getMatchingQueries(new MetricQuery("scope*", "metric", null, 0L, 1L));
+
+        assertEquals(1, queries.size());
+        verify(_schemaService).get(any(MetricSchemaRecordQuery.class), eq(200), (MetricSchemaRecord) isNull());
+        verify(_schemaService).get(any(MetricSchemaRecordQuery.class), eq(200), eq(firstPage.get(199)));
+        verify(_schemaService, times(2)).get(any(MetricSchemaRecordQuery.class), anyInt(), any(MetricSchemaRecord.class));
+        verify(_schemaService, never()).get(any(MetricSchemaRecordQuery.class), anyInt(), anyInt());
+    }
+
+    @Test(timeout = 10000L)
+    public void testTagScansRunConcurrently() {
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+
+        when(_schemaService.get(any(MetricSchemaRecordQuery.class), anyInt(), any(MetricSchemaRecord.class))).thenAnswer(invocation -> {
+            MetricSchemaRecordQuery query = (MetricSchemaRecordQuery) invocation.getArguments()[0];
+
+            if (invocation.getArguments()[2] != null) {
+                return Collections.emptyList();
+            }
+
+            // Each scan waits for the other one to start, which only succeeds if both run at the same time.
+            barrier.await(5, TimeUnit.SECONDS);
+            return createRecords("metric", query.getTagKey(), 0, 2);
+        });
+
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("host", "*");
+        tags.put("dc", "*");
+
+        List<MetricQuery> queries = _discoveryService.getMatchingQueries(new MetricQuery("scope*", "metric", tags, 0L, 1L));
+
+        assertEquals(1, queries.size());
+        assertEquals("host0|host1", queries.get(0).getTag("host"));
+        assertEquals("dc0|dc1", queries.get(0).getTag("dc"));
+    }
+
+    @Test
+    public void testMatchingQueriesAreLimited() {
+        final List<MetricSchemaRecord> records = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            records.add(new MetricSchemaRecord(null, "scope", "metric" + i, "host", "host"));
+        }
+        when(_schemaService.get(any(MetricSchemaRecordQuery.class), anyInt(), any(MetricSchemaRecord.class))).thenAnswer(
+            invocation -> invocation.getArguments()[2] == null ? records : Collections.emptyList());
+
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("host", "*");
+        assertEquals(20, _discoveryService.getMatchingQueries(new MetricQuery("scope", "metric*", tags, 0L, 1L)).size());
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.CacheService;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.TSDBService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class CachedTSDBServiceTest {
+
+    private static final long DAY = 86400000L;
+
+    /* Each query touches three days, and the metric is cached under a distinct metric key and query key for each day. */
+    private static final int ENTRIES_PER_QUERY = 6;
+
+    private MonitorService _monitorService;
+    private CacheService _cacheService;
+    private List<Map<String, List<byte[]>>> _writes;
+    private CountDownLatch _writeStarted;
+    private CountDownLatch _releaseWrites;
+    private CachedTSDBService _service;
+
+    @SuppressWarnings("unchecked")
+    @Before
+    public void setUp() {
+        _monitorService = mock(MonitorService.class);
+        _cacheService = mock(CacheService.class);
+        _writes = Collections.synchronizedList(new ArrayList<Map<String, List<byte[]>>>());
+        _writeStarted = new CountDownLatch(1);
+        _releaseWrites = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            _writes.add((Map<String, List<byte[]>>) invocation.getArguments()[0]);
+            _writeStarted.countDown();
+            _releaseWrites.await(10, TimeUnit.SECONDS);
+            return null;
+        }).when(_cacheService).appendBytes(anyMapOf(String.class, (Class<List<byte[]>>) (Class<?>) List.class), anyInt());
+    }
+
+    @After
+    public void tearDown() {
+        _releaseWrites.countDown();
+        if (_service != null) {
+            _service.dispose();
+        }
+    }
+
+    @Test(timeout = 10000L)
+    public void testCacheWritesAreFlushedInBatches() throws Exception {
+        _service = createService(1000, 2);
+        _service.enqueueCacheWrite(createMetrics("metric0"), createQuery("metric0"));
+        assertTrue(_writeStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < 3; i++) {
+            _service.enqueueCacheWrite(createMetrics("metric" + i), createQuery("metric" + i));
+        }
+        _releaseWrites.countDown();
+        verify(_monitorService, timeout(5000).times(3 * ENTRIES_PER_QUERY / 2)).modifyCustomCounter(eq("cache.write.written"), eq(2.0),
+            isNull(Map.class));
+
+        Set<String> keys = new HashSet<>();
+
+        for (Map<String, List<byte[]>> write : _writes) {
+            assertTrue(write.size() <= 2);
+            keys.addAll(write.keySet());
+        }
+        assertEquals(3 * ENTRIES_PER_QUERY, keys.size());
+        verify(_monitorService, times(3)).modifyCustomCounter("cache.write.queued", ENTRIES_PER_QUERY, null);
+        verify(_monitorService, never()).modifyCustomCounter(eq("cache.write.dropped"), eq((double) ENTRIES_PER_QUERY), isNull(Map.class));
+    }
+
+    @Test(timeout = 10000L)
+    public void testCacheWritesAreDroppedWhenMaxPendingExceeded() throws Exception {
+        _service = createService(ENTRIES_PER_QUERY + 2, 100);
+        _service.enqueueCacheWrite(createMetrics("metric0"), createQuery("metric0"));
+        assertTrue(_writeStarted.await(5, TimeUnit.SECONDS));
+
+        // The writer is blocked, so the following writes stay pending.
+        _service.enqueueCacheWrite(createMetrics("metric1"), createQuery("metric1"));
+        _service.enqueueCacheWrite(createMetrics("metric2"), createQuery("metric2"));
+        verify(_monitorService).modifyCustomCounter("cache.write.dropped", ENTRIES_PER_QUERY, null);
+
+        // Pending writes for the same keys are replaced rather than added.
+        _service.enqueueCacheWrite(createMetrics("metric1"), createQuery("metric1"));
+        verify(_monitorService, times(1)).modifyCustomCounter("cache.write.dropped", ENTRIES_PER_QUERY, null);
+        verify(_monitorService, times(3)).modifyCustomCounter("cache.write.queued", ENTRIES_PER_QUERY, null);
+        _releaseWrites.countDown();
+        verify(_monitorService, timeout(5000).times(2)).modifyCustomCounter("cache.write.written", ENTRIES_PER_QUERY, null);
+
+        Set<String> keys = new HashSet<>();
+
+        for (Map<String, List<byte[]>> write : _writes) {
+            keys.addAll(write.keySet());
+        }
+        assertEquals(2 * ENTRIES_PER_QUERY, keys.size());
+        for (String key : keys) {
+            assertTrue(key, !key.contains("metric2"));
+        }
+    }
+
+    private CachedTSDBService createService(int maxPending, int batchSize) throws Exception {
+        Properties props = new Properties();
+
+        props.setProperty(CachedTSDBService.Property.CACHE_WRITE_MAX_PENDING.getName(), String.valueOf(maxPending));
+        props.setProperty(CachedTSDBService.Property.CACHE_WRITE_BATCH_SIZE.getName(), String.valueOf(batchSize));
+
+        Constructor<CachedTSDBService> constructor = CachedTSDBService.class.getDeclaredConstructor(SystemConfiguration.class,
+            MonitorService.class, CacheService.class, TSDBService.class);
+
+        constructor.setAccessible(true);
+        return constructor.newInstance(new SystemConfiguration(props), _monitorService, _cacheService, mock(TSDBService.class));
+    }
+
+    private static MetricQuery createQuery(String metric) {
+        return new MetricQuery("scope", metric, Collections.singletonMap("host", "host1"), 0L, 2 * DAY + 3600000L);
+    }
+
+    private static List<Metric> createMetrics(String name) {
+        Metric metric = new Metric("scope", name);
+
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("host", "host1");
+        tags.put("dc", "dc1");
+        metric.setTags(tags);
+        for (long day = 0; day < 3; day++) {
+            metric.addDatapoint(day * DAY + 3600000L, String.valueOf(day));
+        }
+        return Collections.singletonList(metric);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.system.SystemConfiguration;
+import com.salesforce.dva.argus.system.SystemException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DefaultTSDBServiceTest {
+
+    private HttpServer _server;
+    private ExecutorService _serverExecutor;
+    private StubHandler _handler;
+    private QueryHandler _queryHandler;
+    private MonitorService _monitorService;
+    private DefaultTSDBService _tsdbService;
+
+    @Before
+    public void setUp() throws IOException {
+        _handler = new StubHandler();
+        _serverExecutor = Executors.newCachedThreadPool();
+        _server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        _queryHandler = new QueryHandler();
+        _server.createContext("/api/put", _handler);
+        _server.createContext("/api/query", _queryHandler);
+        _server.setExecutor(_serverExecutor);
+        _server.start();
+        _monitorService = mock(MonitorService.class);
+    }
+
+    @After
+    public void tearDown() {
+        if (_tsdbService != null) {
+            _tsdbService.dispose();
+        }
+        _server.stop(0);
+        _serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testPutMetricsPipelinesChunks() {
+        _handler.delayMillis = 100;
+        _tsdbService = createService(3, 0);
+        _tsdbService.putMetrics(createMetrics(500));
+        assertEquals(10, _handler.requests.get());
+        assertTrue(_handler.maxConcurrent.get() > 1);
+        assertTrue(_handler.maxConcurrent.get() <= 3);
+        verify(_monitorService, atLeastOnce()).modifyCustomCounter(eq("write.count"), eq(50.0), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testPutMetricsRetriesFailedChunk() {
+        _handler.failures.set(1);
+        _tsdbService = createService(1, 1);
+        _tsdbService.putMetrics(createMetrics(10));
+        assertEquals(2, _handler.requests.get());
+        verify(_monitorService).modifyCustomCounter(eq("write.retries"), eq(1.0), anyMapOf(String.class, String.class));
+    }
+
+    @Test
+    public void testPutMetricsFailsAfterRetriesExhausted() {
+        _handler.failures.set(Integer.MAX_VALUE);
+        _tsdbService = createService(2, 1);
+        try {
+            _tsdbService.putMetrics(createMetrics(100));
+            fail("Expected the write to fail.");
+        } catch (SystemException ex) {
+            assertEquals(4, _handler.requests.get());
+            verify(_monitorService, atLeastOnce()).modifyCustomCounter(eq("write.failures"), eq(1.0), anyMapOf(String.class, String.class));
+        }
+    }
+
+    @Test
+    public void testPutMetricsDoesNotRetryClientErrors() {
+        _handler.failures.set(Integer.MAX_VALUE);
+        _handler.failureStatus = 400;
+        _tsdbService = createService(1, 2);
+        try {
+            _tsdbService.putMetrics(createMetrics(10));
+            fail("Expected the write to fail.");
+        } catch (SystemException ex) {
+            assertEquals(1, _handler.requests.get());
+            verify(_monitorService, never()).modifyCustomCounter(eq("write.retries"), eq(1.0), anyMapOf(String.class, String.class));
+        }
+    }
+
+    @Test
+    public void testPutMetricsDoesNotRetryClientErrorsWithoutJsonBody() {
+        _handler.failures.set(Integer.MAX_VALUE);
+        _handler.failureStatus = 413;
+        _handler.failureBody = "<html>Request Entity Too Large</html>";
+        _tsdbService = createService(1, 2);
+        try {
+            _tsdbService.putMetrics(createMetrics(10));
+            fail("Expected the write to fail.");
+        } catch (SystemException ex) {
+            assertEquals(1, _handler.requests.get());
+            verify(_monitorService, never()).modifyCustomCounter(eq("write.retries"), eq(1.0), anyMapOf(String.class, String.class));
+        }
+    }
+
+    @Test
+    public void testPutMetricsRetriesTransportFailures() {
+        _server.stop(0);
+        _tsdbService = createService(1, 1);
+        try {
+            _tsdbService.putMetrics(createMetrics(10));
+            fail("Expected the write to fail.");
+        } catch (SystemException ex) {
+            verify(_monitorService).modifyCustomCounter(eq("write.retries"), eq(1.0), anyMapOf(String.class, String.class));
+            verify(_monitorService).modifyCustomCounter(eq("write.failures"), eq(1.0), anyMapOf(String.class, String.class));
+        }
+    }
+
+    @Test
+    public void testPutMetricsBacksOffBetweenRetries() {
+        _handler.failures.set(2);
+        _tsdbService = createService(1, 2, 200);
+
+        long start = System.currentTimeMillis();
+
+        _tsdbService.putMetrics(createMetrics(10));
+        assertEquals(3, _handler.requests.get());
+        assertTrue(System.currentTimeMillis() - start >= 600);
+    }
+
+    @Test(timeout = 10000L)
+    public void testConcurrentIdenticalQueriesShareOneRequest() throws Exception {
+        _queryHandler.delayMillis = 300;
+        _tsdbService = createQueryService(10000);
+
+        MetricQuery leader = createQuery("host", "host1", "dc", "dc1");
+        MetricQuery follower = createQuery("dc", "dc1", "host", "host1");
+        Future<Map<MetricQuery, List<Metric>>> first = _serverExecutor.submit(() -> _tsdbService.getMetrics(Arrays.asList(leader)));
+
+        while (_queryHandler.requests.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        Map<MetricQuery, List<Metric>> second = _tsdbService.getMetrics(Arrays.asList(follower));
+        Metric leaderMetric = first.get().get(leader).get(0);
+        Metric followerMetric = second.get(follower).get(0);
+
+        assertEquals(1, _queryHandler.requests.get());
+        assertNotSame(leaderMetric, followerMetric);
+        assertEquals(leaderMetric.getDatapoints(), followerMetric.getDatapoints());
+        assertSame(follower, followerMetric.getQuery());
+        verify(_monitorService).modifyCustomCounter("query.singleflight.collapsed", 1, null);
+    }
+
+    @Test(timeout = 10000L)
+    public void testJoinedQueryFetchesIndependentlyAfterMaxWait() throws Exception {
+        _queryHandler.delayMillis = 1000;
+        _tsdbService = createQueryService(50);
+
+        MetricQuery leader = createQuery("host", "host1");
+        MetricQuery follower = createQuery("host", "host1");
+        Future<Map<MetricQuery, List<Metric>>> first = _serverExecutor.submit(() -> _tsdbService.getMetrics(Arrays.asList(leader)));
+
+        while (_queryHandler.requests.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        Map<MetricQuery, List<Metric>> second = _tsdbService.getMetrics(Arrays.asList(follower));
+
+        assertEquals(1, second.get(follower).size());
+        assertEquals(1, first.get().get(leader).size());
+        assertEquals(2, _queryHandler.requests.get());
+        verify(_monitorService).modifyCustomCounter("query.singleflight.timeouts", 1, null);
+    }
+
+    @Test(timeout = 10000L)
+    public void testQueryJoinsFlightCoveringItsWindow() throws Exception {
+        _queryHandler.delayMillis = 300;
+        _tsdbService = createQueryService(10000);
+
+        MetricQuery leader = createQuery(1000L, 5500L, "host", "host1");
+        MetricQuery follower = createQuery(1500L, 5000L, "host", "host1");
+        Future<Map<MetricQuery, List<Metric>>> first = _serverExecutor.submit(() -> _tsdbService.getMetrics(Arrays.asList(leader)));
+
+        while (_queryHandler.requests.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        Map<MetricQuery, List<Metric>> second = _tsdbService.getMetrics(Arrays.asList(follower));
+
+        assertEquals(2, first.get().get(leader).get(0).getDatapoints().size());
+        assertEquals(Collections.singletonMap(2000L, "2"), second.get(follower).get(0).getDatapoints());
+        assertEquals(1, _queryHandler.requests.get());
+        verify(_monitorService).modifyCustomCounter("query.singleflight.collapsed", 1, null);
+    }
+
+    @Test(timeout = 10000L)
+    public void testQueryDoesNotJoinFlightMissingPartOfItsWindow() throws Exception {
+        _queryHandler.delayMillis = 300;
+        _tsdbService = createQueryService(10000);
+
+        MetricQuery leader = createQuery(1500L, 5000L, "host", "host1");
+        MetricQuery follower = createQuery(1000L, 5000L, "host", "host1");
+        Future<Map<MetricQuery, List<Metric>>> first = _serverExecutor.submit(() -> _tsdbService.getMetrics(Arrays.asList(leader)));
+
+        while (_queryHandler.requests.get() == 0) {
+            Thread.sleep(5);
+        }
+
+        Map<MetricQuery, List<Metric>> second = _tsdbService.getMetrics(Arrays.asList(follower));
+
+        assertEquals(2, second.get(follower).get(0).getDatapoints().size());
+        first.get();
+        assertEquals(2, _queryHandler.requests.get());
+        verify(_monitorService, never()).modifyCustomCounter(eq("query.singleflight.collapsed"), eq(1.0), anyMapOf(String.class, String.class));
+    }
+
+    private DefaultTSDBService createQueryService(long maxWaitMillis) {
+        Properties props = new Properties();
+        String endpoint = "http://localhost:" + _server.getAddress().getPort();
+
+        props.setProperty(DefaultTSDBService.Property.TSD_ENDPOINT_READ.getName(), endpoint);
+        props.setProperty(DefaultTSDBService.Property.TSD_ENDPOINT_WRITE.getName(), endpoint);
+        props.setProperty(DefaultTSDBService.Property.TSD_CONNECTION_COUNT.getName(), "8");
+        props.setProperty(DefaultTSDBService.Property.TSD_QUERY_SINGLEFLIGHT_MAX_WAIT_MS.getName(), String.valueOf(maxWaitMillis));
+        return new DefaultTSDBService(new SystemConfiguration(props), _monitorService);
+    }
+
+    private static MetricQuery createQuery(String... tagPairs) {
+        return createQuery(1000L, 5000L, tagPairs);
+    }
+
+    private static MetricQuery createQuery(long startTimestamp, long endTimestamp, String... tagPairs) {
+        Map<String, String> tags = new LinkedHashMap<>();
+
+        for (int i = 0; i < tagPairs.length; i += 2) {
+            tags.put(tagPairs[i], tagPairs[i + 1]);
+        }
+        return new MetricQuery("scope", "metric", tags, startTimestamp, endTimestamp);
+    }
+
+    private DefaultTSDBService createService(int maxInFlight, int retries) {
+        return createService(maxInFlight, retries, 10);
+    }
+
+    private DefaultTSDBService createService(int maxInFlight, int retries, long backoffMillis) {
+        Properties props = new Properties();
+
+        props.setProperty(DefaultTSDBService.Property.TSD_ENDPOINT_READ.getName(), "http://localhost:1");
+        props.setProperty(DefaultTSDBService.Property.TSD_ENDPOINT_WRITE.getName(), "http://localhost:" + _server.getAddress().getPort());
+        props.setProperty(DefaultTSDBService.Property.TSD_CONNECTION_COUNT.getName(), "8");
+        props.setProperty(DefaultTSDBService.Property.TSD_WRITE_MAX_INFLIGHT_CHUNKS.getName(), String.valueOf(maxInFlight));
+        props.setProperty(DefaultTSDBService.Property.TSD_WRITE_RETRIES.getName(), String.valueOf(retries));
+        props.setProperty(DefaultTSDBService.Property.TSD_WRITE_RETRY_BACKOFF_MS.getName(), String.valueOf(backoffMillis));
+        return new DefaultTSDBService(new SystemConfiguration(props), _monitorService);
+    }
+
+    private static List<Metric> createMetrics(int count) {
+        List<Metric> metrics = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            Metric metric = new Metric("scope", "metric" + i);
+
+            metric.addDatapoint(1000L, String.valueOf(i));
+            metrics.add(metric);
+        }
+        return metrics;
+    }
+
+    private static class QueryHandler implements HttpHandler {
+
+        private static final String RESPONSE = "[{\"metric\":\"scope\",\"tags\":{\"metric\":\"metric\",\"host\":\"host1\"},"
+            + "\"aggregateTags\":[],\"dps\":{\"1000\":1,\"2000\":2},\"tsuids\":[\"000001\"]}]";
+
+        final AtomicInteger requests = new AtomicInteger();
+        volatile long delayMillis;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            try {
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+
+                byte[] bytes = RESPONSE.getBytes("UTF-8");
+
+                exchange.sendResponseHeaders(200, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static class StubHandler implements HttpHandler {
+
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        volatile long delayMillis;
+        volatile int failureStatus = 500;
+        volatile String failureBody = "{\"error\":{\"message\":\"stub failure\"}}";
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            int current = concurrent.incrementAndGet();
+
+            requests.incrementAndGet();
+            maxConcurrent.accumulateAndGet(current, Math::max);
+            try {
+                while (exchange.getRequestBody().read() != -1) { }
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                if (failures.getAndDecrement() > 0) {
+                    respond(exchange, failureStatus, failureBody);
+                } else {
+                    respond(exchange, 204, null);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        private void respond(HttpExchange exchange, int status, String body) throws IOException {
+            byte[] bytes = body == null ? new byte[0] : body.getBytes("UTF-8");
+
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.salesforce.dva.argus.entity.Metric;
+import org.junit.Test;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MetricCacheCodecTest {
+
+    private static final long START = 1463097600000L;
+
+    private static Metric createMetric(String metricName, Map<Long, String> datapoints) {
+        Metric metric = new Metric("scope", metricName);
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("host", "host1");
+        tags.put("device", "eth0");
+        metric.setTags(tags);
+        metric.setNamespace("namespace");
+        metric.setUnits("bytes");
+        metric.setDatapoints(datapoints);
+        return metric;
+    }
+
+    private static void assertRoundTrip(List<Metric> metrics) throws IOException {
+        List<Metric> decoded = MetricCacheCodec.decode(MetricCacheCodec.encode(metrics));
+
+        assertEquals(metrics.size(), decoded.size());
+        for (int i = 0; i < metrics.size(); i++) {
+            Metric expected = metrics.get(i);
+            Metric actual = decoded.get(i);
+
+            assertEquals(expected, actual);
+            assertEquals(expected.getNamespace(), actual.getNamespace());
+            assertEquals(expected.getDisplayName(), actual.getDisplayName());
+            assertEquals(expected.getUnits(), actual.getUnits());
+            assertEquals(expected.getTags(), actual.getTags());
+            assertEquals(expected.getDatapoints(), actual.getDatapoints());
+        }
+    }
+
+    @Test
+    public void testRoundTripDoubles() throws Exception {
+        Map<Long, String> datapoints = new TreeMap<>();
+        String[] values = { "1.5", "1.5", "1.75", "-0.0", "0.0", "NaN", "Infinity", "3.14159", "1.0E-10", "2.5E22" };
+
+        for (int i = 0; i < values.length; i++) {
+            datapoints.put(START + i * 60000L + (i % 3) * 17, values[i]);
+        }
+        assertRoundTrip(Arrays.asList(createMetric("doubles", datapoints)));
+    }
+
+    @Test
+    public void testRoundTripLongs() throws Exception {
+        Map<Long, String> datapoints = new TreeMap<>();
+
+        datapoints.put(START, "1");
+        datapoints.put(START + 1000, String.valueOf(Long.MAX_VALUE));
+        datapoints.put(START + 2000, String.valueOf(Long.MIN_VALUE));
+        datapoints.put(START + 9000, "-42");
+        assertRoundTrip(Arrays.asList(createMetric("longs", datapoints)));
+    }
+
+    @Test
+    public void testRoundTripPreservesValueText() throws Exception {
+        Map<Long, String> datapoints = new TreeMap<>();
+
+        datapoints.put(START, "1");
+        datapoints.put(START + 1000, "2.50");
+        datapoints.put(START + 2000, null);
+        datapoints.put(-5L, "1e3");
+        assertRoundTrip(Arrays.asList(createMetric("strings", datapoints)));
+    }
+
+    @Test
+    public void testRoundTripMultipleMetrics() throws Exception {
+        Map<Long, String> datapoints = new TreeMap<>();
+
+        datapoints.put(START, "10.0");
+
+        Metric empty = new Metric("scope", "empty");
+
+        empty.setDisplayName("Empty metric");
+
+        List<Metric> metrics = Arrays.asList(createMetric("first", datapoints), empty, createMetric("second", datapoints));
+
+        assertRoundTrip(metrics);
+        assertNull(MetricCacheCodec.decode(MetricCacheCodec.encode(metrics)).get(1).getNamespace());
+    }
+
+    @Test
+    public void testEncodingIsSmallerThanJson() throws Exception {
+        Map<Long, String> datapoints = new TreeMap<>();
+
+        for (int i = 0; i < 1440; i++) {
+            datapoints.put(START + i * 60000L, String.valueOf(100.0 + (i % 10) * 0.5));
+        }
+
+        List<Metric> metrics = Arrays.asList(createMetric("minutely", datapoints));
+        int binary = MetricCacheCodec.encode(metrics).length;
+        int json = new ObjectMapper().writeValueAsBytes(metrics).length;
+
+        assertTrue("Binary size " + binary + " vs JSON size " + json, binary * 4 < json);
+        assertRoundTrip(metrics);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeUnsupportedVersion() throws Exception {
+        byte[] bytes = MetricCacheCodec.encode(Arrays.asList(new Metric("scope", "metric")));
+
+        bytes[0] = (byte) (MetricCacheCodec.VERSION + 1);
+        MetricCacheCodec.decode(bytes);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeTruncated() throws Exception {
+        Map<Long, String> datapoints = new TreeMap<>();
+
+        datapoints.put(START, "1.5");
+        datapoints.put(START + 1000, "2.5");
+
+        byte[] bytes = MetricCacheCodec.encode(Arrays.asList(createMetric("truncated", datapoints)));
+
+        MetricCacheCodec.decode(Arrays.copyOf(bytes, bytes.length - 4));
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
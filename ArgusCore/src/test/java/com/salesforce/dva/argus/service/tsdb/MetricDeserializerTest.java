@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.service.tsdb;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.TSDBService;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetricDeserializerTest {
+
+    private static final String RESPONSE = "[{\"metric\":\"scope.name\",\"tags\":{\"metric\":\"metric.name\",\"host\":\"host1\"},"
+        + "\"aggregateTags\":[\"source\"],\"dps\":{\"1000\":1,\"2000\":2.50,\"3000\":-3.0E2},\"tsuids\":[\"000001\",\"000002\"]},"
+        + "{\"tsuids\":[\"000003\"],\"dps\":{\"4000\":4},\"tags\":{\"metric\":\"other\"},\"metric\":\"scope.name\"},"
+        + "{\"metric\":\"\",\"tags\":{},\"aggregateTags\":[],\"dps\":{},\"tsuids\":[\"000004\"]}]";
+
+    private ObjectMapper _mapper;
+
+    @Before
+    public void setUp() {
+        TSDBService tsdbService = mock(TSDBService.class);
+
+        when(tsdbService.getScopeFromTSDBMetric(anyString())).thenAnswer(invocation -> invocation.getArguments()[0]);
+        _mapper = new ObjectMapper();
+
+        SimpleModule module = new SimpleModule();
+
+        module.addDeserializer(Metric.class, new MetricTransform.Deserializer(tsdbService));
+        _mapper.registerModule(module);
+    }
+
+    @Test
+    public void testDeserializeFromStream() throws Exception {
+        List<Metric> metrics = _mapper.readValue(new ByteArrayInputStream(RESPONSE.getBytes("UTF-8")), new TypeReference<List<Metric>>() { });
+
+        assertEquals(3, metrics.size());
+
+        Metric first = metrics.get(0);
+        Map<Long, String> expected = new TreeMap<>();
+
+        expected.put(1000L, "1");
+        expected.put(2000L, "2.5");
+        expected.put(3000L, "-300.0");
+        assertEquals("scope.name", first.getScope());
+        assertEquals("metric.name", first.getMetric());
+        assertEquals("host1", first.getTag("host"));
+        assertEquals(1, first.getTags().size());
+        assertEquals("000001", first.getUid());
+        assertEquals(expected, first.getDatapoints());
+
+        Metric second = metrics.get(1);
+
+        assertEquals("other", second.getMetric());
+        assertEquals("000003", second.getUid());
+        assertEquals("4", second.getDatapoints().get(4000L));
+        assertNull(metrics.get(2));
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
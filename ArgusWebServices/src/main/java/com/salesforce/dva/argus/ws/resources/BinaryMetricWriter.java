@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+	 
+package com.salesforce.dva.argus.ws.resources;
+
+import com.salesforce.dva.argus.entity.DatapointSeries;
+import com.salesforce.dva.argus.entity.Metric;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes metrics using the compact binary columnar format negotiated as {@link #MEDIA_TYPE}. The format is decoded by
+ * <tt>com.salesforce.dva.argus.client.BinaryMetricReader</tt>. All multi-byte quantities are big endian.
+ *
+ * <pre>
+ * stream    := magic:int32 version:int8 series* 0x00
+ * series    := 0x01 scope:ref metric:ref namespace:ref displayName:ref units:ref tagCount:varint (key:ref value:ref)*
+ *              pointCount:varint timestamp:zigzag* value:float64*
+ * ref       := varint  0 is null, n &gt; 0 refers to dictionary entry n - 1. If n - 1 equals the dictionary size, the entry follows as
+ *              length:varint utf8-bytes and is appended to the dictionary.
+ * </pre>
+ *
+ * <p>The first timestamp of a series is written as is and every following one as the difference to its predecessor, both zigzag and variable
+ * length encoded. Values are written as doubles. Null and non-numeric values are written as <tt>NaN</tt>. Since the dictionary is built while
+ * writing, series can be written as soon as they are available.</p>
+ *
+ * @author  Tom Valine (tvaline@salesforce.com)
+ */
+final class BinaryMetricWriter {
+
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    /** The media type of the binary format. */
+    static final String MEDIA_TYPE = "application/x-argus-metrics";
+    static final int MAGIC = 0x41524742;
+    static final byte VERSION = 1;
+
+    //~ Instance fields ******************************************************************************************************************************
+
+    private final DataOutputStream _out;
+    private final Map<String, Integer> _dictionary = new HashMap<>();
+
+    //~ Constructors *********************************************************************************************************************************
+
+    /**
+     * Creates a new writer and writes the stream header.
+     *
+     * @param   out  The stream to write to. Cannot be null.
+     *
+     * @throws  IOException  If the header cannot be written.
+     */
+    BinaryMetricWriter(OutputStream out) throws IOException {
+        _out = new DataOutputStream(new BufferedOutputStream(out));
+        _out.writeInt(MAGIC);
+        _out.writeByte(VERSION);
+    }
+
+    //~ Methods **************************************************************************************************************************************
+
+    /**
+     * Writes a single series.
+     *
+     * @param   metric  The metric to write. Cannot be null.
+     *
+     * @throws  IOException  If the series cannot be written.
+     */
+    void write(Metric metric) throws IOException {
+        _out.writeByte(1);
+        _writeRef(metric.getScope());
+        _writeRef(metric.getMetric());
+        _writeRef(metric.getNamespace());
+        _writeRef(metric.getDisplayName());
+        _writeRef(metric.getUnits());
+
+        Map<String, String> tags = new TreeMap<>(metric.getTags());
+
+        _writeVarLong(tags.size());
+        for (Map.Entry<String, String> tag : tags.entrySet()) {
+            _writeRef(tag.getKey());
+            _writeRef(tag.getValue());
+        }
+
+        DatapointSeries series = metric.getDatapointSeries();
+        int size = series.size();
+        long previous = 0;
+
+        _writeVarLong(size);
+        for (int i = 0; i < size; i++) {
+            long timestamp = series.getTimestamp(i);
+
+            _writeVarLong(_zigzag(timestamp - previous));
+            previous = timestamp;
+        }
+
+        boolean numeric = size > 0 && _isNumeric(series);
+
+        for (int i = 0; i < size; i++) {
+            _out.writeDouble(numeric ? series.getDoubleValue(i) : _parseValue(series.getValue(i)));
+        }
+    }
+
+    /**
+     * Flushes the series written so far to the underlying stream.
+     *
+     * @throws  IOException  If the stream cannot be flushed.
+     */
+    void flush() throws IOException {
+        _out.flush();
+    }
+
+    /**
+     * Writes the end of stream marker and closes the underlying stream.
+     *
+     * @throws  IOException  If the stream cannot be written or closed.
+     */
+    void close() throws IOException {
+        _out.writeByte(0);
+        _out.close();
+    }
+
+    /* The numeric column of a series is parsed once and not retained if a value is not numeric, so this is checked once per series. */
+    private static boolean _isNumeric(DatapointSeries series) {
+        try {
+            series.getDoubleValue(0);
+            return true;
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    private static double _parseValue(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    private void _writeRef(String value) throws IOException {
+        if (value == null) {
+            _writeVarLong(0);
+            return;
+        }
+
+        Integer index = _dictionary.get(value);
+
+        if (index != null) {
+            _writeVarLong(index + 1);
+            return;
+        }
+        index = _dictionary.size();
+        _dictionary.put(value, index);
+        _writeVarLong(index + 1);
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        _writeVarLong(bytes.length);
+        _out.write(bytes);
+    }
+
+    private void _writeVarLong(long value) throws IOException {
+        long remaining = value;
+
+        while ((remaining & ~0x7FL) != 0) {
+            _out.writeByte((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        _out.writeByte((int) remaining);
+    }
+
+    private static long _zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
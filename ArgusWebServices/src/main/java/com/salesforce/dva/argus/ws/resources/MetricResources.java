@@ -31,27 +31,42 @@
 	 
 package com.salesforce.dva.argus.ws.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.salesforce.dva.argus.entity.DatapointSeries;
 import com.salesforce.dva.argus.entity.Metric;
 import com.salesforce.dva.argus.service.MetricService;
 import com.salesforce.dva.argus.service.MonitorService;
+import com.salesforce.dva.argus.service.metric.MetricReader;
 import com.salesforce.dva.argus.service.tsdb.MetricQuery;
 import com.salesforce.dva.argus.system.SystemAssert;
 import com.salesforce.dva.argus.ws.annotation.Description;
 import com.salesforce.dva.argus.ws.dto.MetricDto;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map.Entry;
-import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
 
 /**
  * Provides methods to query and transform metrics.
@@ -62,6 +77,11 @@ import javax.ws.rs.core.Response.Status;
 @Description("Provides methods to query and transform metrics.")
 public class MetricResources extends AbstractResource {
 
+    //~ Static fields/initializers *******************************************************************************************************************
+
+    private static final ObjectMapper DEFAULT_MAPPER = new ObjectMapper();
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
     //~ Instance fields ******************************************************************************************************************************
 
     private final String COMMA = ",";
@@ -71,9 +91,18 @@ public class MetricResources extends AbstractResource {
     //~ Methods **************************************************************************************************************************************
 
     /**
-     * Performs a metric query using the given expression.
+     * Performs a metric query using the given expression. The resulting metrics are streamed to the client as a JSON array, writing the metrics of
+     * each expression as soon as that expression has been evaluated rather than buffering the complete response. The response is gzip encoded if
+     * the client accepts it.
+     *
+     * <p>The expressions are validated and the first one is evaluated before the response is committed, so that invalid expressions and
+     * evaluation failures of the first expression are reported with the appropriate status code. A failure while evaluating a subsequent
+     * expression aborts the response.</p>
+     *
+     * <p>The metrics are serialized with the mapper the JSON provider would use, so the output matches that of a non streamed response.</p>
      *
      * @param   req          The HttpServlet request object. Cannot be null.
+     * @param   providers    The registered JAX-RS providers, used to locate a configured object mapper.
      * @param   expressions  The expressions to evaluate.
      *
      * @return  The resulting metrics.
@@ -81,15 +110,77 @@ public class MetricResources extends AbstractResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON + ";qs=2")
     @Description("Performs a metric query using the given expression.")
-    public List<MetricDto> getMetricsJSON(@Context HttpServletRequest req,
+    public Response getMetricsJSON(@Context HttpServletRequest req, @Context Providers providers,
+        @QueryParam("expression") List<String> expressions) {
+        return _streamMetrics(req, expressions, locateMapper(providers));
+    }
+
+    /**
+     * Performs a metric query using the given expression and streams the resulting metrics in a compact binary columnar format. Each series is
+     * written as a delta encoded timestamp column followed by a column of double values, with scopes, metric names and tags shared through a
+     * string dictionary. This representation is intended for machine consumers and is selected by requesting the
+     * <tt>application/x-argus-metrics</tt> media type. Values that are not numeric are transferred as <tt>NaN</tt>.
+     *
+     * @param   req          The HttpServlet request object. Cannot be null.
+     * @param   expressions  The expressions to evaluate.
+     *
+     * @return  The resulting metrics.
+     */
+    @GET
+    @Produces(BinaryMetricWriter.MEDIA_TYPE + ";qs=0.5")
+    @Description("Performs a metric query using the given expression and returns the result in a compact binary format.")
+    public Response getMetricsBinary(@Context HttpServletRequest req,
         @QueryParam("expression") List<String> expressions) {
-        List<Metric> metrics = _getMetrics(req, expressions);
+        return _streamMetrics(req, expressions, null);
+    }
+
+    /* Streams the metrics as JSON using the given mapper, or in the binary format if the mapper is null. */
+    private Response _streamMetrics(HttpServletRequest req, final List<String> expressions, final ObjectMapper mapper) {
+        validateAndGetOwner(req, null);
+        SystemAssert.requireArgument(expressions != null && !expressions.isEmpty(), "Expression list cannot be null or empty");
+        SystemAssert.requireArgument(MetricReader.isValid(expressions), "Illegal metric expression found: " + expressions);
+
+        final MetricService metricService = system.getServiceFactory().getMetricService();
+        final List<Metric> first;
+
+        try {
+            first = metricService.getMetrics(expressions.get(0));
+        } catch (RuntimeException ex) {
+            metricService.dispose();
+            throw ex;
+        }
+
+        final boolean gzip = _acceptsGzip(req);
+        final boolean binary = mapper == null;
+        StreamingOutput output = new StreamingOutput() {
+
+            @Override
+            public void write(OutputStream out) throws IOException {
+                OutputStream stream = gzip ? new GZIPOutputStream(out, GZIP_BUFFER_SIZE) : out;
+
+                try {
+                    if (binary) {
+                        _writeMetricsBinary(stream, metricService, expressions, first);
+                    } else {
+                        writeMetricsJSON(mapper, stream, metricService, expressions, first);
+                    }
+                } finally {
+                    metricService.dispose();
+                }
+            }
+        };
+        ResponseBuilder response = Response.ok(output, binary ? BinaryMetricWriter.MEDIA_TYPE : MediaType.APPLICATION_JSON).header(HttpHeaders.VARY,
+            HttpHeaders.ACCEPT_ENCODING);
 
-        return MetricDto.transformToDto(metrics);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.build();
     }
 
     /**
-     * Download the metric data for one or more metric expressions.
+     * Download the metric data for one or more metric expressions. Rows are written while merging the sorted data points of all series in
+     * timestamp order, so the document is never held in memory and is sent using chunked transfer encoding.
      *
      * @param   req          HTTPServlet request. Cannot be null.
      * @param   expressions  Expressions for metrics. Cannot be null but may be empty.
@@ -104,9 +195,18 @@ public class MetricResources extends AbstractResource {
         ResponseBuilder response = null;
 
         try {
-            List<Metric> metrics = _getMetrics(req, expressions);
+            final List<Metric> metrics = _getMetrics(req, expressions);
+
+            response = Response.ok(new StreamingOutput() {
 
-            response = Response.ok(_convertToCSV(metrics));
+                    @Override
+                    public void write(OutputStream out) throws IOException {
+                        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+
+                        _writeCSV(metrics, writer);
+                        writer.flush();
+                    }
+                });
         } catch (Exception ex) {
             response = Response.status(Status.INTERNAL_SERVER_ERROR).encoding(ex.getMessage());
         }
@@ -139,37 +239,119 @@ public class MetricResources extends AbstractResource {
         return metrics;
     }
 
-    private String _convertToCSV(List<Metric> metrics) {
-        if (metrics == null || metrics.size() == 0) {
-            return EMPTY;
+    /**
+     * Locates the object mapper the same way the Jackson JSON provider does: a context resolver registered for the mapper type takes precedence
+     * over the default mapper.
+     *
+     * @param   providers  The registered JAX-RS providers. May be null.
+     *
+     * @return  The object mapper to serialize metrics with. Never null.
+     */
+    static ObjectMapper locateMapper(Providers providers) {
+        ContextResolver<ObjectMapper> resolver = providers == null ? null
+                                                                   : providers.getContextResolver(ObjectMapper.class, MediaType.APPLICATION_JSON_TYPE);
+        ObjectMapper mapper = resolver == null ? null : resolver.getContext(MetricDto.class);
+
+        return mapper == null ? DEFAULT_MAPPER : mapper;
+    }
+
+    /**
+     * Writes the metrics of each expression in turn as a single JSON array, flushing after every expression. Each metric is converted to its DTO
+     * only when written.
+     *
+     * @param   mapper         The object mapper to serialize the metrics with. Cannot be null.
+     * @param   out            The stream to write to. Cannot be null.
+     * @param   metricService  The metric service used to evaluate all but the first expression. Cannot be null.
+     * @param   expressions    The expressions to evaluate. Cannot be null.
+     * @param   first          The already evaluated metrics of the first expression. Cannot be null.
+     *
+     * @throws  IOException  If the metrics cannot be written.
+     */
+    static void writeMetricsJSON(ObjectMapper mapper, OutputStream out, MetricService metricService, List<String> expressions, List<Metric> first)
+        throws IOException {
+        try(JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+            if (mapper.isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+                generator.useDefaultPrettyPrinter();
+            }
+            generator.writeStartArray();
+            for (int i = 0; i < expressions.size(); i++) {
+                List<Metric> metrics = i == 0 ? first : metricService.getMetrics(expressions.get(i));
+
+                for (Metric metric : metrics) {
+                    generator.writeObject(MetricDto.transformToDto(metric));
+                }
+                generator.flush();
+            }
+            generator.writeEndArray();
         }
+    }
 
-        StringBuilder result = new StringBuilder();
+    private void _writeMetricsBinary(OutputStream out, MetricService metricService, List<String> expressions, List<Metric> first)
+        throws IOException {
+        BinaryMetricWriter writer = new BinaryMetricWriter(out);
 
-        result.append("Timestamp");
-        result.append(COMMA);
-        for (Metric metric : metrics) {
-            result.append(_getMetricExpression(metric));
-            result.append(COMMA);
+        for (int i = 0; i < expressions.size(); i++) {
+            List<Metric> metrics = i == 0 ? first : metricService.getMetrics(expressions.get(i));
+
+            for (Metric metric : metrics) {
+                writer.write(metric);
+            }
+            writer.flush();
         }
-        result.deleteCharAt(result.length() - 1);
+        writer.close();
+    }
 
-        TreeSet<Long> timestamps = new TreeSet<Long>();
+    private boolean _acceptsGzip(HttpServletRequest req) {
+        String encoding = req.getHeader(HttpHeaders.ACCEPT_ENCODING);
 
+        return encoding != null && encoding.toLowerCase().contains("gzip");
+    }
+
+    /*
+     * Writes one row per distinct timestamp across all series. A cursor per series walks its sorted data points, so each row is produced by
+     * comparing the head timestamps of the cursors instead of building a sorted set of all timestamps up front.
+     */
+    private void _writeCSV(List<Metric> metrics, Writer writer) throws IOException {
+        if (metrics == null || metrics.size() == 0) {
+            writer.write(EMPTY);
+            return;
+        }
+        writer.write("Timestamp");
         for (Metric metric : metrics) {
-            timestamps.addAll(metric.getDatapoints().keySet());
+            writer.write(COMMA);
+            writer.write(_getMetricExpression(metric));
         }
-        for (Long timestamp : timestamps) {
-            result.append(NEW_LINE);
-            result.append(timestamp);
-            result.append(COMMA);
-            for (Metric metric : metrics) {
-                result.append(metric.getDatapoints().get(timestamp) != null ? metric.getDatapoints().get(timestamp) : EMPTY);
-                result.append(COMMA);
+
+        DatapointSeries[] series = new DatapointSeries[metrics.size()];
+        int[] cursors = new int[series.length];
+
+        for (int i = 0; i < series.length; i++) {
+            series[i] = metrics.get(i).getDatapointSeries();
+        }
+        while (true) {
+            long timestamp = Long.MAX_VALUE;
+            boolean found = false;
+
+            for (int i = 0; i < series.length; i++) {
+                if (cursors[i] < series[i].size() && (!found || series[i].getTimestamp(cursors[i]) < timestamp)) {
+                    timestamp = series[i].getTimestamp(cursors[i]);
+                    found = true;
+                }
+            }
+            if (!found) {
+                return;
+            }
+            writer.write(NEW_LINE);
+            writer.write(String.valueOf(timestamp));
+            for (int i = 0; i < series.length; i++) {
+                writer.write(COMMA);
+                if (cursors[i] < series[i].size() && series[i].getTimestamp(cursors[i]) == timestamp) {
+                    String value = series[i].getValue(cursors[i]++);
+
+                    writer.write(value != null ? value : EMPTY);
+                }
             }
-            result.deleteCharAt(result.length() - 1);
         }
-        return result.toString();
     }
 
     private String _getMetricExpression(Metric metric) {
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.ws.resources;
+
+import com.salesforce.dva.argus.client.BinaryMetricReader;
+import com.salesforce.dva.argus.entity.Metric;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BinaryMetricWriterTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Metric numeric = new Metric("scope", "metric");
+        Map<String, String> tags = new HashMap<>();
+        TreeMap<Long, String> datapoints = new TreeMap<>();
+
+        tags.put("host", "a");
+        tags.put("type", "b");
+        numeric.setTags(tags);
+        numeric.setNamespace("namespace");
+        numeric.setDisplayName("display name");
+        numeric.setUnits("units");
+        datapoints.put(1476000000000L, "1.5");
+        datapoints.put(1476000060000L, null);
+        datapoints.put(1476000000500L, "-2.0");
+        datapoints.put(-1000L, "3.0E10");
+        numeric.setDatapoints(datapoints);
+
+        Metric mixed = new Metric("scope", "other");
+
+        mixed.setTags(tags);
+        mixed.addDatapoint(1000L, "4.0");
+        mixed.addDatapoint(2000L, "not a number");
+        mixed.addDatapoint(3000L, "5.0");
+
+        Metric empty = new Metric("scope", "empty");
+        List<Metric> actual = BinaryMetricReader.read(new ByteArrayInputStream(_write(numeric, mixed, empty)));
+
+        assertEquals(3, actual.size());
+        _assertMetric(numeric, actual.get(0));
+        assertEquals(numeric.getDatapoints(), actual.get(0).getDatapoints());
+        _assertMetric(mixed, actual.get(1));
+
+        Map<Long, String> expected = new TreeMap<>();
+
+        expected.put(1000L, "4.0");
+        expected.put(2000L, null);
+        expected.put(3000L, "5.0");
+        assertEquals(expected, actual.get(1).getDatapoints());
+        _assertMetric(empty, actual.get(2));
+        assertTrue(actual.get(2).getDatapoints().isEmpty());
+    }
+
+    @Test
+    public void testLargeNonNumericSeries() throws IOException {
+        Metric metric = new Metric("scope", "metric");
+        int size = 100000;
+
+        metric.addDatapoint(0L, "not a number");
+        for (int i = 1; i < size; i++) {
+            metric.addDatapoint(i * 1000L, String.valueOf(i));
+        }
+
+        List<Metric> actual = BinaryMetricReader.read(new ByteArrayInputStream(_write(metric)));
+
+        assertEquals(size, actual.get(0).getDatapoints().size());
+        assertNull(actual.get(0).getDatapoints().get(0L));
+        assertEquals("99999.0", actual.get(0).getDatapoints().get(99999000L));
+    }
+
+    private static byte[] _write(Metric... metrics) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryMetricWriter writer = new BinaryMetricWriter(bytes);
+
+        for (Metric metric : Arrays.asList(metrics)) {
+            writer.write(metric);
+        }
+        writer.close();
+        return bytes.toByteArray();
+    }
+
+    private static void _assertMetric(Metric expected, Metric actual) {
+        assertEquals(expected.getScope(), actual.getScope());
+        assertEquals(expected.getMetric(), actual.getMetric());
+        assertEquals(expected.getNamespace(), actual.getNamespace());
+        assertEquals(expected.getDisplayName(), actual.getDisplayName());
+        assertEquals(expected.getUnits(), actual.getUnits());
+        assertEquals(expected.getTags(), actual.getTags());
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */
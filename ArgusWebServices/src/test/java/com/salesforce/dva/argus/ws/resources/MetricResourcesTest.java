@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2016, Salesforce.com, Inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Salesforce.com nor the names of its contributors may
+ * be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+     
+package com.salesforce.dva.argus.ws.resources;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.salesforce.dva.argus.entity.Metric;
+import com.salesforce.dva.argus.service.MetricService;
+import com.salesforce.dva.argus.ws.dto.MetricDto;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.ext.ContextResolver;
+import javax.ws.rs.ext.Providers;
+
+import static org.junit.Assert.*;
+
+public class MetricResourcesTest {
+
+    private static final List<String> EXPRESSIONS = Arrays.asList("-1h:scope:first:avg", "-1h:scope:empty:avg", "-1h:scope:second:avg");
+
+    @Test
+    public void testStreamedJSONMatchesProviderSerialization() throws IOException {
+        Map<String, List<Metric>> results = _results();
+
+        assertEquals(_serializeWithProvider(new JacksonJsonProvider(), results),
+            _stream(MetricResources.locateMapper(null), results));
+    }
+
+    @Test
+    public void testRegisteredMapperIsUsed() throws IOException {
+        Map<String, List<Metric>> results = _results();
+        ObjectMapper configured = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        ObjectMapper located = MetricResources.locateMapper(_providers(configured));
+
+        assertSame(configured, located);
+        assertEquals(_serializeWithProvider(new JacksonJsonProvider(configured), results), _stream(located, results));
+        assertSame(MetricResources.locateMapper(null), MetricResources.locateMapper(_providers(null)));
+    }
+
+    private Map<String, List<Metric>> _results() {
+        Metric first = new Metric("scope", "first");
+        Map<String, String> tags = new HashMap<>();
+
+        tags.put("host", "a");
+        tags.put("dc", "b");
+        first.setTags(tags);
+        first.setNamespace("namespace");
+        first.setDisplayName("display \"name\"");
+        first.setUnits("units");
+        first.addDatapoint(1000L, "1.5");
+        first.addDatapoint(2000L, "not a number");
+
+        Metric second = new Metric("scope", "second");
+
+        second.addDatapoint(3000L, "2.0");
+
+        Metric third = new Metric("scope", "third");
+        Map<String, List<Metric>> results = new HashMap<>();
+
+        results.put(EXPRESSIONS.get(0), Collections.singletonList(first));
+        results.put(EXPRESSIONS.get(1), Collections.<Metric>emptyList());
+        results.put(EXPRESSIONS.get(2), Arrays.asList(second, third));
+        return results;
+    }
+
+    private String _stream(ObjectMapper mapper, final Map<String, List<Metric>> results) throws IOException {
+        MetricService metricService = (MetricService) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { MetricService.class },
+            (proxy, method, args) -> {
+                assertEquals("getMetrics", method.getName());
+                assertFalse("The first expression is evaluated before streaming.", EXPRESSIONS.get(0).equals(args[0]));
+                return results.get(args[0]);
+            });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        MetricResources.writeMetricsJSON(mapper, out, metricService, EXPRESSIONS, results.get(EXPRESSIONS.get(0)));
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /* Serializes the metrics the way the resource did before streaming: as one list of DTOs written by the JSON provider. */
+    private String _serializeWithProvider(JacksonJsonProvider provider, Map<String, List<Metric>> results) throws IOException {
+        List<Metric> metrics = new ArrayList<>();
+
+        for (String expression : EXPRESSIONS) {
+            metrics.addAll(results.get(expression));
+        }
+
+        List<MetricDto> dtos = MetricDto.transformToDto(metrics);
+        Type type = new GenericType<List<MetricDto>>() { }.getType();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        provider.writeTo(dtos, List.class, type, new Annotation[0], MediaType.APPLICATION_JSON_TYPE, new MultivaluedHashMap<String, Object>(), out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private Providers _providers(final ObjectMapper mapper) {
+        final ContextResolver<ObjectMapper> resolver = type -> mapper;
+
+        return (Providers) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Providers.class }, (proxy, method, args) -> {
+            assertEquals("getContextResolver", method.getName());
+            return args[0] == ObjectMapper.class ? resolver : null;
+        });
+    }
+}
+/* Copyright (c) 2016, Salesforce.com, Inc.  All rights reserved. */